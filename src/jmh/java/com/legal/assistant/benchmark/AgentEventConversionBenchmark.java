@@ -0,0 +1,104 @@
+package com.legal.assistant.benchmark;
+
+import com.legal.assistant.agents.impl.InteractiveCoordinatorAgent;
+import com.legal.assistant.agents.impl.LegalConsultationAgent;
+import com.legal.assistant.dto.response.StreamChatResponse;
+import io.agentscope.core.agent.Event;
+import io.agentscope.core.agent.EventType;
+import io.agentscope.core.message.ContentBlock;
+import io.agentscope.core.message.Msg;
+import io.agentscope.core.message.MsgRole;
+import io.agentscope.core.message.TextBlock;
+import io.agentscope.core.message.ThinkingBlock;
+import io.agentscope.core.message.ToolResultBlock;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agent 事件 -> SSE 帧转换（每个增量 token 执行一次）
+ * 1. ReactLegalAgent.convertEventToResponse：文本 / 思考 / 工具结果片段
+ * 2. InteractiveCoordinatorAgent.convertEventToResponse：子 Agent 报告片段需对 ToolResultBlock 中的事件 JSON 做一次 readTree
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AgentEventConversionBenchmark {
+
+    private static final MethodHandle CONSULTATION_CONVERT = BenchmarkSupport.method(LegalConsultationAgent.class,
+            "convertEventToResponse", Event.class, Long.class, Long.class);
+    private static final MethodHandle COORDINATOR_CONVERT = BenchmarkSupport.method(InteractiveCoordinatorAgent.class,
+            "convertEventToResponse", Event.class, Long.class, Long.class);
+    private static final MethodHandle PARSE_SUB_AGENT_JSON = BenchmarkSupport.method(InteractiveCoordinatorAgent.class,
+            "parseSubAgentEventJson", String.class);
+
+    private static final Long MESSAGE_ID = 123456L;
+    private static final Long CONVERSATION_ID = 7890L;
+
+    private final LegalConsultationAgent consultationAgent = new LegalConsultationAgent();
+    private final InteractiveCoordinatorAgent coordinatorAgent = new InteractiveCoordinatorAgent();
+
+    private Event textEvent;
+    private Event thinkingEvent;
+    private Event toolResultEvent;
+    private Event subAgentChunkEvent;
+    private String subAgentJson;
+
+    @Setup
+    public void setup() {
+        textEvent = event(EventType.REASONING, TextBlock.builder().text("根据《民法典》").build());
+        thinkingEvent = event(EventType.REASONING, ThinkingBlock.builder().thinking("用户询问的是合同违约").build());
+        toolResultEvent = event(EventType.TOOL_RESULT, ToolResultBlock.builder()
+                .id("call_1")
+                .name("getFileContent")
+                .output(List.of(TextBlock.builder().text(BenchmarkSupport.legalText(2000, true)).build()))
+                .build());
+        subAgentJson = "{\"type\":\"REASONING\",\"isLast\":false,\"message\":{\"id\":\"msg_1\",\"name\":\"report_generation\","
+                + "\"role\":\"ASSISTANT\",\"content\":[{\"type\":\"text\",\"text\":\"## 风险等级：中\\n根据合同第八条约定\"}]}}";
+        subAgentChunkEvent = event(EventType.TOOL_RESULT, ToolResultBlock.builder()
+                .id("call_2")
+                .name("report_generation")
+                .output(List.of(TextBlock.builder().text(subAgentJson).build()))
+                .build());
+    }
+
+    private static Event event(EventType type, ContentBlock block) {
+        Msg msg = Msg.builder().role(MsgRole.ASSISTANT).content(List.of(block)).build();
+        return new Event(type, msg, false);
+    }
+
+    @Benchmark
+    public StreamChatResponse consultationText() throws Throwable {
+        return (StreamChatResponse) CONSULTATION_CONVERT.invoke(consultationAgent, textEvent, MESSAGE_ID, CONVERSATION_ID);
+    }
+
+    @Benchmark
+    public StreamChatResponse consultationThinking() throws Throwable {
+        return (StreamChatResponse) CONSULTATION_CONVERT.invoke(consultationAgent, thinkingEvent, MESSAGE_ID, CONVERSATION_ID);
+    }
+
+    @Benchmark
+    public StreamChatResponse consultationToolResult() throws Throwable {
+        return (StreamChatResponse) CONSULTATION_CONVERT.invoke(consultationAgent, toolResultEvent, MESSAGE_ID, CONVERSATION_ID);
+    }
+
+    @Benchmark
+    public StreamChatResponse coordinatorText() throws Throwable {
+        return (StreamChatResponse) COORDINATOR_CONVERT.invoke(coordinatorAgent, textEvent, MESSAGE_ID, CONVERSATION_ID);
+    }
+
+    @Benchmark
+    public StreamChatResponse coordinatorSubAgentChunk() throws Throwable {
+        return (StreamChatResponse) COORDINATOR_CONVERT.invoke(coordinatorAgent, subAgentChunkEvent, MESSAGE_ID, CONVERSATION_ID);
+    }
+
+    @Benchmark
+    public String coordinatorParseSubAgentJson() throws Throwable {
+        return (String) PARSE_SUB_AGENT_JSON.invoke(coordinatorAgent, subAgentJson);
+    }
+}
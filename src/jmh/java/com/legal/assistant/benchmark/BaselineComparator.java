@@ -0,0 +1,69 @@
+package com.legal.assistant.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 对比两次 JMH 结果（-rf json），按 benchmark + 参数逐项输出变化，超出阈值的退化以非零退出码结束
+ * <p>
+ * 用法：mvn -Pjmh test-compile exec:exec -Djmh.main=com.legal.assistant.benchmark.BaselineComparator
+ * -Djmh.args="src/jmh/baselines/hot-paths.json target/jmh-result.json 15"
+ */
+public class BaselineComparator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("用法: BaselineComparator <baseline.json> <current.json> [阈值百分比，默认 10]");
+            System.exit(2);
+        }
+        Map<String, JsonNode> baseline = load(new File(args[0]));
+        Map<String, JsonNode> current = load(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        int regressions = 0;
+        System.out.printf("%-90s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode now = entry.getValue();
+            JsonNode before = baseline.get(entry.getKey());
+            String unit = now.path("primaryMetric").path("scoreUnit").asText();
+            double score = now.path("primaryMetric").path("score").asDouble();
+            if (before == null) {
+                System.out.printf("%-90s %14s %14s %9s%n", entry.getKey(), "-", format(score, unit), "new");
+                continue;
+            }
+            double base = before.path("primaryMetric").path("score").asDouble();
+            double change = base == 0 ? 0 : (score - base) / base * 100;
+            // 吞吐模式越大越好，其余模式（耗时）越小越好
+            boolean higherIsBetter = "thrpt".equals(now.path("mode").asText());
+            boolean regressed = higherIsBetter ? change < -threshold : change > threshold;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-90s %14s %14s %+8.1f%%%s%n", entry.getKey(), format(base, unit), format(score, unit),
+                    change, regressed ? "  <-- 退化" : "");
+        }
+        System.out.printf("%n共 %d 项，退化 %d 项（阈值 %.0f%%）%n", current.size(), regressions, threshold);
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    private static Map<String, JsonNode> load(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            String name = result.path("benchmark").asText().replace("com.legal.assistant.benchmark.", "");
+            Map<String, String> params = new TreeMap<>();
+            result.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+            results.put(params.isEmpty() ? name : name + params, result);
+        }
+        return results;
+    }
+
+    private static String format(double score, String unit) {
+        return String.format("%.2f %s", score, unit);
+    }
+}
@@ -0,0 +1,61 @@
+package com.legal.assistant.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * 基准测试公共工具：访问被测类的非公开方法与字段（不为基准测试放宽生产代码的可见性），以及生成测试文本
+ */
+final class BenchmarkSupport {
+
+    static final String LEGAL_PARAGRAPH = "根据《中华人民共和国民法典》第五百七十七条的规定，当事人一方不履行合同义务或者履行合同义务不符合约定的，"
+            + "应当承担继续履行、采取补救措施或者赔偿损失等违约责任。";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 获取声明在 type 上的方法句柄（含 private / protected），声明为 static final 字段后调用开销可被 JIT 消除
+     */
+    static MethodHandle method(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = type.getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法访问方法: " + type.getSimpleName() + "." + name, e);
+        }
+    }
+
+    /**
+     * 设置字段值（替代 Spring 注入的 @Value / @Autowired 字段）
+     */
+    static void setField(Object target, String name, Object value) {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                // 继续查找父类
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("无法设置字段: " + name, e);
+            }
+        }
+        throw new IllegalStateException("字段不存在: " + target.getClass().getSimpleName() + "." + name);
+    }
+
+    /**
+     * 生成约 chars 个字符的法律文本，lineBreaks 为 false 时不含换行
+     */
+    static String legalText(int chars, boolean lineBreaks) {
+        StringBuilder text = new StringBuilder(chars + LEGAL_PARAGRAPH.length() + 1);
+        while (text.length() < chars) {
+            text.append(LEGAL_PARAGRAPH).append(lineBreaks ? "\n" : " ");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package com.legal.assistant.benchmark;
+
+import com.legal.assistant.utils.JwtUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT 校验（AuthInterceptor 对每个 /api 请求执行 validateToken + getUserIdFromToken）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JwtValidationBenchmark {
+
+    private final JwtUtils jwtUtils = new JwtUtils();
+    private String validToken;
+    private String tamperedToken;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.setField(jwtUtils, "secret", "legal-assistant-jwt-secret-key-2024-very-long-and-random-string-for-security");
+        BenchmarkSupport.setField(jwtUtils, "expiration", 86400000L);
+        BenchmarkSupport.setField(jwtUtils, "refreshExpiration", 604800000L);
+        validToken = jwtUtils.generateToken(10001L, "13800000000");
+        char last = validToken.charAt(validToken.length() - 1);
+        tamperedToken = validToken.substring(0, validToken.length() - 1) + (last == 'A' ? 'B' : 'A');
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return jwtUtils.validateToken(validToken);
+    }
+
+    @Benchmark
+    public Long validateAndGetUserId() {
+        return jwtUtils.validateToken(validToken) ? jwtUtils.getUserIdFromToken(validToken) : null;
+    }
+
+    @Benchmark
+    public boolean rejectTamperedToken() {
+        return jwtUtils.validateToken(tamperedToken);
+    }
+}
@@ -0,0 +1,43 @@
+package com.legal.assistant.benchmark;
+
+import com.legal.assistant.enums.FileType;
+import com.legal.assistant.service.FileService;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上传文件提取文本后的 Markdown 转换（multiline：保留原格式；singleLine：按句号正则切分段落）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MarkdownConversionBenchmark {
+
+    private static final MethodHandle CONVERT = BenchmarkSupport.method(FileService.class,
+            "convertToMarkdown", String.class, FileType.class, String.class);
+
+    @Param({"1", "4"})
+    public int sizeMb;
+
+    @Param({"multiline", "singleLine"})
+    public String layout;
+
+    private final FileService fileService = new FileService();
+    private String text;
+
+    @Setup
+    public void setup() {
+        // 按 UTF-16 字符计，约 sizeMb 兆字符
+        text = BenchmarkSupport.legalText(sizeMb * 1024 * 1024, "multiline".equals(layout));
+    }
+
+    @Benchmark
+    public String convertToMarkdown() throws Throwable {
+        return (String) CONVERT.invoke(fileService, text, FileType.PDF, "房屋租赁合同.pdf");
+    }
+}
@@ -0,0 +1,67 @@
+package com.legal.assistant.benchmark;
+
+import com.legal.assistant.config.MessageFileListTypeHandler;
+import com.legal.assistant.dto.response.MessageFileItem;
+import org.apache.ibatis.type.JdbcType;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * message.files 列的解析与序列化（会话历史每条消息各执行一次）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageFileListBenchmark {
+
+    private static final MethodHandle PARSE = BenchmarkSupport.method(MessageFileListTypeHandler.class, "parse", String.class);
+
+    @Param({"1", "5"})
+    public int files;
+
+    private final MessageFileListTypeHandler handler = new MessageFileListTypeHandler();
+    private List<MessageFileItem> items;
+    private String json;
+    private PreparedStatement statement;
+    private String written;
+
+    @Setup
+    public void setup() throws Exception {
+        items = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            items.add(new MessageFileItem(1000L + i, "房屋租赁合同（第" + i + "版）.pdf", "pdf", 1048576L + i,
+                    "http://localhost:8080/api/file/download/" + (1000 + i)));
+        }
+        // 只记录 setString 的参数，隔离 JDBC 驱动开销
+        statement = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    if ("setString".equals(method.getName())) {
+                        written = (String) args[1];
+                    }
+                    return null;
+                });
+        handler.setNonNullParameter(statement, 1, items, JdbcType.VARCHAR);
+        json = written;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<MessageFileItem> parse() throws Throwable {
+        return (List<MessageFileItem>) PARSE.invoke(json);
+    }
+
+    @Benchmark
+    public String serialize() throws Exception {
+        handler.setNonNullParameter(statement, 1, items, JdbcType.VARCHAR);
+        return written;
+    }
+}
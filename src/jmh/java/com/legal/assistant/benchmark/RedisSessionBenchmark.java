@@ -0,0 +1,177 @@
+package com.legal.assistant.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.legal.assistant.session.RedisSession;
+import io.agentscope.core.state.SessionKey;
+import io.agentscope.core.state.SimpleSessionKey;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话保存 / 加载：逐条命令（改造前的写法）vs 单次脚本写入、单次脚本读取
+ * 需要本地 Redis（-Dredis.host / -Dredis.port，默认 localhost:6379），使用 db 15；
+ * 每个参数组合结束时打印每次操作在服务端执行的命令数：逐条写法下即网络往返数；
+ * 批量写入为 1 次往返（EVALSHA，脚本内的命令也计入），批量读取为 1 次往返（EVALSHA）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RedisSessionBenchmark {
+
+    private static final String LEGACY_PREFIX = "agentscope:session:bench-legacy:";
+    private static final long EXPIRE_SECONDS = 3600;
+
+    @Param({"10", "60"})
+    public int messages;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private RedisSession session;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SessionKey sessionKey = SimpleSessionKey.of("bench-batched");
+    private List<BenchMessage> memory;
+    private BenchMeta meta;
+    private long operations;
+    private long commandsAtStart;
+
+    /**
+     * 模拟一条记忆消息
+     */
+    public static class BenchMessage implements io.agentscope.core.state.State {
+        public String id;
+        public String role;
+        public String text;
+    }
+
+    /**
+     * 模拟 Agent 的单值状态
+     */
+    public static class BenchMeta implements io.agentscope.core.state.State {
+        public String name;
+        public int iterations;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379));
+        configuration.setDatabase(15);
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        session = new RedisSession(redisTemplate, EXPIRE_SECONDS, new SimpleMeterRegistry());
+
+        memory = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            BenchMessage message = new BenchMessage();
+            message.id = "msg-" + i;
+            message.role = i % 2 == 0 ? "USER" : "ASSISTANT";
+            message.text = BenchmarkSupport.legalText(400, false);
+            memory.add(message);
+        }
+        meta = new BenchMeta();
+        meta.name = "legal_consultation";
+        meta.iterations = 3;
+
+        legacySave();
+        session.writeBatch(sessionKey, this::saveTo);
+        commandsAtStart = commandsProcessed();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long commands = commandsProcessed() - commandsAtStart;
+        System.out.printf("%n[redis] messages=%d, 服务端命令数/次操作=%.1f%n", messages,
+                operations > 0 ? (double) commands / operations : 0);
+        session.delete(sessionKey);
+        redisTemplate.delete(List.of(LEGACY_PREFIX + "_keys", LEGACY_PREFIX + "agent_meta",
+                LEGACY_PREFIX + "memory_messages:list"));
+        connectionFactory.destroy();
+    }
+
+    private void saveTo() {
+        session.save(sessionKey, "agent_meta", meta);
+        session.save(sessionKey, "memory_messages", memory);
+    }
+
+    private long commandsProcessed() {
+        Properties stats = redisTemplate.execute(connection -> connection.serverCommands().info("stats"), true);
+        // INFO 命令本身也会计数
+        return stats != null ? Long.parseLong(stats.getProperty("total_commands_processed", "0")) + 1 : 0;
+    }
+
+    /**
+     * 改造前的写法：SET/EXPIRE/SADD/EXPIRE 与 DEL、逐条 RPUSH、EXPIRE、SADD、EXPIRE
+     */
+    private void legacySave() throws Exception {
+        String index = LEGACY_PREFIX + "_keys";
+        String metaKey = LEGACY_PREFIX + "agent_meta";
+        redisTemplate.opsForValue().set(metaKey, objectMapper.writeValueAsString(meta));
+        redisTemplate.expire(metaKey, EXPIRE_SECONDS, TimeUnit.SECONDS);
+        redisTemplate.opsForSet().add(index, "agent_meta");
+        redisTemplate.expire(index, EXPIRE_SECONDS, TimeUnit.SECONDS);
+
+        String listKey = LEGACY_PREFIX + "memory_messages:list";
+        redisTemplate.delete(listKey);
+        for (BenchMessage message : memory) {
+            redisTemplate.opsForList().rightPush(listKey, objectMapper.writeValueAsString(message));
+        }
+        redisTemplate.expire(listKey, EXPIRE_SECONDS, TimeUnit.SECONDS);
+        redisTemplate.opsForSet().add(index, "memory_messages:list");
+        redisTemplate.expire(index, EXPIRE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void saveLegacy() throws Exception {
+        legacySave();
+        operations++;
+    }
+
+    @Benchmark
+    public void saveBatched() {
+        session.writeBatch(sessionKey, this::saveTo);
+        operations++;
+    }
+
+    /**
+     * 改造前的读取：SCARD 判断存在，再逐项 GET / LRANGE
+     */
+    @Benchmark
+    public List<BenchMessage> loadLegacy() throws Exception {
+        operations++;
+        Long size = redisTemplate.opsForSet().size(LEGACY_PREFIX + "_keys");
+        if (size == null || size == 0) {
+            return null;
+        }
+        objectMapper.readValue(redisTemplate.opsForValue().get(LEGACY_PREFIX + "agent_meta"), BenchMeta.class);
+        List<BenchMessage> result = new ArrayList<>();
+        for (String json : redisTemplate.opsForList().range(LEGACY_PREFIX + "memory_messages:list", 0, -1)) {
+            result.add(objectMapper.readValue(json, BenchMessage.class));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<BenchMessage> loadBatched() {
+        operations++;
+        return session.readBatch(sessionKey, () -> {
+            if (!session.exists(sessionKey)) {
+                return null;
+            }
+            session.get(sessionKey, "agent_meta", BenchMeta.class);
+            return session.getList(sessionKey, "memory_messages", BenchMessage.class);
+        });
+    }
+}
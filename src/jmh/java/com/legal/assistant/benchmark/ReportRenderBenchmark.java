@@ -0,0 +1,69 @@
+package com.legal.assistant.benchmark;
+
+import com.legal.assistant.common.MarkdownRenderPolicy;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 风险评估报告 Markdown 渲染到 Word（MarkdownRenderPolicy），每次调用使用新的空白文档
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReportRenderBenchmark {
+
+    private static final MethodHandle RENDER = BenchmarkSupport.method(MarkdownRenderPolicy.class,
+            "renderMarkdown", XWPFDocument.class, XWPFParagraph.class, String.class);
+
+    @Param({"20", "200"})
+    public int reportKb;
+
+    private final MarkdownRenderPolicy policy = new MarkdownRenderPolicy();
+    private String markdown;
+    private XWPFDocument document;
+    private XWPFParagraph paragraph;
+
+    @Setup(Level.Trial)
+    public void buildReport() {
+        StringBuilder report = new StringBuilder("# 法律风险评估报告\n\n");
+        for (int section = 1; report.length() < reportKb * 1024 / 3; section++) {
+            report.append("## ").append(section).append("、风险点分析\n\n")
+                    .append("**风险等级**：中。").append(BenchmarkSupport.LEGAL_PARAGRAPH).append("\n\n")
+                    .append("### 依据\n\n")
+                    .append("- 《中华人民共和国民法典》第五百七十七条\n")
+                    .append("- 《最高人民法院关于审理买卖合同纠纷案件适用法律问题的解释》第十八条\n\n")
+                    .append("### 建议\n\n")
+                    .append("1. 固定合同、付款凭证、沟通记录等*关键证据*\n")
+                    .append("2. 书面催告对方在合理期限内履行\n")
+                    .append("3. 协商不成的，依约申请仲裁或提起诉讼\n\n")
+                    .append("```\n违约金 = 合同总价 × 日万分之五 × 逾期天数\n```\n\n");
+        }
+        markdown = report.toString();
+    }
+
+    @Setup(Level.Invocation)
+    public void newDocument() {
+        document = new XWPFDocument();
+        paragraph = document.createParagraph();
+        paragraph.createRun();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeDocument() throws IOException {
+        document.close();
+    }
+
+    @Benchmark
+    public XWPFDocument render() throws Throwable {
+        RENDER.invoke(policy, document, paragraph, markdown);
+        return document;
+    }
+}
@@ -0,0 +1,110 @@
+package com.legal.assistant.benchmark;
+
+import com.legal.assistant.session.FramedStateCodec;
+import io.agentscope.core.message.Msg;
+import io.agentscope.core.message.MsgRole;
+import io.agentscope.core.message.TextBlock;
+import io.agentscope.core.message.ToolResultBlock;
+import io.agentscope.core.message.ToolUseBlock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话状态编解码：单条记忆消息的编码 / 解码耗时与存储字节数
+ * 每个参数组合结束时打印编码后的字节数及相对纯 JSON 的比例
+ * 1. question：用户提问（低于压缩阈值，只有格式差异）
+ * 2. toolResult：携带整份文件内容的工具结果（记忆中体积最大的一类消息）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateCodecBenchmark {
+
+    private static final String[] CLAUSES = {
+            "甲方应于收到乙方开具的合法有效发票后%d个工作日内支付合同价款的%d%%。",
+            "乙方逾期交付的，每逾期一日应按合同总价的%d‰向甲方支付违约金，违约金总额不超过合同总价的%d%%。",
+            "因不可抗力导致本合同无法履行的，受影响一方应在%d日内书面通知对方，并在%d日内提供相关证明。",
+            "任何一方违反本合同第%d条约定的保密义务，应赔偿守约方因此遭受的全部损失，包括但不限于诉讼费、律师费%d元。",
+            "本合同有效期为%d年，期满前%d日内双方均未书面提出异议的，本合同自动续期一年。",
+            "双方因履行本合同发生争议的，应协商解决；协商不成的，提交%d仲裁委员会按照其现行有效的仲裁规则仲裁，仲裁费为%d元。",
+    };
+
+    @Param({"JSON", "SMILE", "SMILE_ZSTD", "JSON_ZSTD"})
+    public String codec;
+
+    @Param({"question", "toolResult"})
+    public String message;
+
+    private FramedStateCodec stateCodec;
+    private Msg msg;
+    private byte[] encoded;
+    private int jsonLength;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        FramedStateCodec.Format format = codec.startsWith("SMILE")
+                ? FramedStateCodec.Format.SMILE : FramedStateCodec.Format.JSON;
+        FramedStateCodec.Compression compression = codec.endsWith("ZSTD")
+                ? FramedStateCodec.Compression.ZSTD : FramedStateCodec.Compression.NONE;
+        stateCodec = new FramedStateCodec(format, compression, 1024, 3, registry);
+        msg = "question".equals(message) ? question() : toolResult();
+        encoded = stateCodec.encode(msg);
+        jsonLength = new FramedStateCodec().encode(msg).length;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n[codec] codec=%s, message=%s, JSON 字节数=%d, 编码后字节数=%d, 相对 JSON=%.1f%%%n",
+                codec, message, jsonLength, encoded.length, 100.0 * encoded.length / jsonLength);
+    }
+
+    private static Msg question() {
+        return Msg.builder()
+                .role(MsgRole.USER)
+                .content(List.of(TextBlock.builder()
+                        .text("我和房东签了两年的租房合同，现在房东要提前收回房子，只愿意退押金，我能要求他赔偿搬家费用和违约金吗？")
+                        .build()))
+                .build();
+    }
+
+    /**
+     * 约 60KB 的合同全文，条款随机组合、数字随机，避免重复文本夸大压缩效果
+     */
+    private static Msg toolResult() {
+        Random random = new Random(42);
+        StringBuilder content = new StringBuilder();
+        int article = 1;
+        while (content.length() < 20_000) {
+            content.append("第").append(article++).append("条 ");
+            String clause = CLAUSES[random.nextInt(CLAUSES.length)];
+            content.append(String.format(clause, 1 + random.nextInt(90), 1 + random.nextInt(30))).append('\n');
+        }
+        return Msg.builder()
+                .role(MsgRole.TOOL)
+                .content(List.of(
+                        ToolUseBlock.builder().id("call_1").name("getFileContent")
+                                .input(Map.of("fileId", "1874123456789012345")).build(),
+                        ToolResultBlock.builder().id("call_1").name("getFileContent")
+                                .output(List.of(TextBlock.builder().text(content.toString()).build())).build()))
+                .build();
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return stateCodec.encode(msg);
+    }
+
+    @Benchmark
+    public Msg decode() throws Exception {
+        return stateCodec.decode(encoded, Msg.class);
+    }
+}
@@ -0,0 +1,54 @@
+package com.legal.assistant.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.legal.assistant.common.CompactStreamEncoder;
+import com.legal.assistant.dto.response.StreamChatResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE 帧编码对比：现有 Jackson 全量序列化 vs 紧凑编码
+ * 每个参数组合结束时打印单帧 data 字节数；每帧分配量通过 -prof gc 观察 gc.alloc.rate.norm
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StreamEncodingBenchmark {
+
+    @Param({"根据", "根据《中华人民共和国民法典》第五百七十七条的规定，当事人一方不履行合同义务"})
+    public String content;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CompactStreamEncoder encoder = new CompactStreamEncoder();
+    private StreamChatResponse frame;
+
+    @Setup
+    public void setup() {
+        frame = StreamChatResponse.message(123456L, 7890L, content, "message");
+        encoder.encodeHeader(frame.getMessageId(), frame.getConversationId());
+    }
+
+    @TearDown(Level.Trial)
+    public void reportFrameBytes() throws JsonProcessingException {
+        int jacksonBytes = objectMapper.writeValueAsString(frame).getBytes(StandardCharsets.UTF_8).length;
+        int compactBytes = encoder.encodeDelta(frame).getBytes(StandardCharsets.UTF_8).length;
+        System.out.printf("%n[frame bytes] content=%d chars, jackson=%d, compact=%d%n",
+                content.length(), jacksonBytes, compactBytes);
+    }
+
+    @Benchmark
+    public String jackson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(frame);
+    }
+
+    @Benchmark
+    public String compact() {
+        return encoder.encodeDelta(frame);
+    }
+}
@@ -0,0 +1,424 @@
+package com.legal.assistant.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 端到端流式压测：按场景以 N 个并发用户调用 /api/chat/completion，统计 TTFT、帧率、时延分位与服务端堆内存、线程数
+ * <p>
+ * 1. 场景定义见 loadtest-scenarios.json（可用 --scenarios 指定文件），每个场景可携带 mock 配置，开始前推送到模拟模型服务
+ * 2. 每个虚拟用户使用独立 userId 的 JWT（按压测服务的 jwt.secret 本地签发），避免触发单用户令牌桶；
+ *    签名密钥不内置，须通过 --jwtSecret、系统属性 loadtest.jwtSecret 或环境变量 LOADTEST_JWT_SECRET 提供，
+ *    loadtest profile 下服务端的 jwt.secret 也取自 LOADTEST_JWT_SECRET
+ * 3. 压测期间每秒从管理端口（--managementUrl，默认 http://localhost:8081）采样 /actuator/metrics 中的 jvm.memory.used(area=heap) 与 jvm.threads.live
+ * 4. 结果打印为表格，并写入 target/loadtest/report-时间戳.json
+ * <p>
+ * 启动：先以 loadtest profile 启动服务（spring.profiles.active=loadtest）与 MockDashScopeServer，再执行
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--baseUrl=http://localhost:8080 --only=consult-50"
+ */
+public class LoadTestRunner {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final String baseUrl;
+    private final String managementUrl;
+    private final String mockUrl;
+    private final String jwtSecret;
+    private final HttpClient httpClient;
+
+    public LoadTestRunner(String baseUrl, String managementUrl, String mockUrl, String jwtSecret) {
+        this.baseUrl = baseUrl;
+        this.managementUrl = managementUrl;
+        this.mockUrl = mockUrl;
+        this.jwtSecret = jwtSecret;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newCachedThreadPool())
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        LoadTestRunner runner = new LoadTestRunner(
+                options.getOrDefault("baseUrl", "http://localhost:8080"),
+                options.getOrDefault("managementUrl", "http://localhost:8081"),
+                options.getOrDefault("mockUrl", "http://localhost:18080"),
+                resolveJwtSecret(options));
+
+        JsonNode scenarios = loadScenarios(options.get("scenarios"));
+        String only = options.get("only");
+        ArrayNode report = MAPPER.createArrayNode();
+        for (JsonNode scenario : scenarios) {
+            if (only != null && !List.of(only.split(",")).contains(scenario.path("name").asText())) {
+                continue;
+            }
+            ObjectNode result = runner.run(scenario);
+            report.add(result);
+            printResult(result);
+        }
+
+        Path outputDir = Path.of(options.getOrDefault("output", "target/loadtest"));
+        Files.createDirectories(outputDir);
+        Path reportFile = outputDir.resolve("report-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        MAPPER.writeValue(reportFile.toFile(), report);
+        System.out.println("压测报告已写入: " + reportFile.toAbsolutePath());
+        System.exit(0);
+    }
+
+    private static JsonNode loadScenarios(String file) throws IOException {
+        if (file != null) {
+            return MAPPER.readTree(Path.of(file).toFile());
+        }
+        try (InputStream inputStream = LoadTestRunner.class.getResourceAsStream("/loadtest-scenarios.json")) {
+            return MAPPER.readTree(inputStream);
+        }
+    }
+
+    /**
+     * 按 --jwtSecret、系统属性 loadtest.jwtSecret、环境变量 LOADTEST_JWT_SECRET 的顺序取签名密钥，均未提供时直接失败
+     */
+    private static String resolveJwtSecret(Map<String, String> options) {
+        String secret = options.get("jwtSecret");
+        if (secret == null || secret.isBlank()) {
+            secret = System.getProperty("loadtest.jwtSecret");
+        }
+        if (secret == null || secret.isBlank()) {
+            secret = System.getenv("LOADTEST_JWT_SECRET");
+        }
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("未提供 JWT 签名密钥：请通过 --jwtSecret、-Dloadtest.jwtSecret 或环境变量 LOADTEST_JWT_SECRET 指定，"
+                    + "须与压测服务的 jwt.secret 一致");
+        }
+        return secret;
+    }
+
+    /**
+     * 执行单个场景
+     */
+    public ObjectNode run(JsonNode scenario) throws Exception {
+        String name = scenario.path("name").asText();
+        int users = scenario.path("users").asInt(10);
+        int requestsPerUser = scenario.path("requestsPerUser").asInt(1);
+        long rampUpMillis = scenario.path("rampUpSeconds").asLong(0) * 1000;
+        long timeoutSeconds = scenario.path("timeoutSeconds").asLong(180);
+        long baseUserId = scenario.path("baseUserId").asLong(900000);
+        System.out.println("开始场景: " + name + "，并发用户=" + users + "，每用户请求=" + requestsPerUser);
+
+        if (scenario.has("mock")) {
+            post(mockUrl + "/mock/config", scenario.get("mock").toString(), null);
+        }
+
+        ConcurrentLinkedQueue<Sample> samples = new ConcurrentLinkedQueue<>();
+        ServerSampler sampler = new ServerSampler();
+        Thread samplerThread = new Thread(sampler, "loadtest-sampler");
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        CountDownLatch done = new CountDownLatch(users);
+        long startedAt = System.nanoTime();
+        for (int u = 0; u < users; u++) {
+            long userId = baseUserId + u;
+            long delay = users > 1 ? rampUpMillis * u / (users - 1) : 0;
+            executor.execute(() -> {
+                try {
+                    Thread.sleep(delay);
+                    String token = token(userId);
+                    for (int r = 0; r < requestsPerUser; r++) {
+                        samples.add(chat(scenario, token, timeoutSeconds));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsedNanos = System.nanoTime() - startedAt;
+        executor.shutdownNow();
+        sampler.stop();
+        samplerThread.join(2000);
+
+        return summarize(name, users, new ArrayList<>(samples), elapsedNanos, sampler);
+    }
+
+    /**
+     * 发起一次流式对话并解析 SSE
+     */
+    private Sample chat(JsonNode scenario, String token, long timeoutSeconds) {
+        ObjectNode body = MAPPER.createObjectNode();
+        body.put("question", scenario.path("question").asText("合同对方逾期交货，我可以要求解除合同并赔偿损失吗？"));
+        body.put("agentType", scenario.path("agentType").asText("LEGAL_CONSULTATION"));
+        body.put("modelType", scenario.path("modelType").asText("QWEN_PLUS"));
+        body.put("deepThinking", scenario.path("deepThinking").asBoolean(false));
+        body.put("compactStream", scenario.path("compactStream").asBoolean(false));
+        body.put("autoGenerateTitle", scenario.path("autoGenerateTitle").asBoolean(false));
+        body.set("fileIds", scenario.has("fileIds") ? scenario.get("fileIds") : MAPPER.createArrayNode());
+
+        Sample sample = new Sample();
+        long start = System.nanoTime();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/chat/completion"))
+                .timeout(Duration.ofSeconds(timeoutSeconds))
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .header("Authorization", "Bearer " + token)
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+        try {
+            HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+            if (response.statusCode() != 200) {
+                sample.outcome = "http_" + response.statusCode();
+                response.body().close();
+            } else {
+                try (Stream<String> lines = response.body()) {
+                    lines.forEach(line -> onLine(sample, line, start));
+                }
+                if (sample.outcome == null) {
+                    sample.outcome = "incomplete";
+                }
+            }
+        } catch (Exception e) {
+            sample.outcome = "exception";
+        }
+        sample.latencyNanos = System.nanoTime() - start;
+        return sample;
+    }
+
+    private static void onLine(Sample sample, String line, long start) {
+        if (!line.startsWith("data:")) {
+            return;
+        }
+        JsonNode frame;
+        try {
+            frame = MAPPER.readTree(line.substring(5).trim());
+        } catch (IOException e) {
+            return;
+        }
+        long now = System.nanoTime();
+        // 兼容标准帧（status/content）与紧凑帧（s/t）
+        String status = frame.has("status") ? frame.path("status").asText() : frame.path("s").asText("message");
+        String content = frame.has("content") ? frame.path("content").asText("") : frame.path("t").asText("");
+        if ("queued".equals(status)) {
+            sample.queued = true;
+            return;
+        }
+        if (!content.isEmpty() && !"error".equals(status)) {
+            if (sample.firstFrameNanos == 0) {
+                sample.firstFrameNanos = now;
+                sample.ttftNanos = now - start;
+            }
+            sample.lastFrameNanos = now;
+            sample.frames++;
+        }
+        if ("completed".equals(status)) {
+            sample.outcome = "completed";
+        } else if ("error".equals(status)) {
+            sample.outcome = content.contains("排队") || content.contains("频繁") ? "rejected" : "error";
+        }
+    }
+
+    private String token(long userId) {
+        Date now = new Date();
+        return Jwts.builder()
+                .claims(Map.of("userId", userId, "phone", "loadtest-" + userId))
+                .issuedAt(now)
+                .expiration(new Date(now.getTime() + TimeUnit.HOURS.toMillis(6)))
+                .signWith(Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+    }
+
+    private String post(String url, String json, String token) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    // ==================== 服务端采样 ====================
+
+    /**
+     * 每秒读取服务端堆内存与线程数，记录最大值与均值
+     */
+    private class ServerSampler implements Runnable {
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final AtomicLong maxHeapBytes = new AtomicLong();
+        private final AtomicLong maxThreads = new AtomicLong();
+        private final List<Double> heapSamples = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void run() {
+            while (running.get()) {
+                double heap = metric("jvm.memory.used?tag=area:heap");
+                double threads = metric("jvm.threads.live");
+                if (heap >= 0) {
+                    heapSamples.add(heap);
+                    maxHeapBytes.accumulateAndGet((long) heap, Math::max);
+                }
+                if (threads >= 0) {
+                    maxThreads.accumulateAndGet((long) threads, Math::max);
+                }
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        void stop() {
+            running.set(false);
+        }
+
+        private double metric(String path) {
+            try {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(managementUrl + "/actuator/metrics/" + path))
+                        .timeout(Duration.ofSeconds(2))
+                        .GET()
+                        .build();
+                JsonNode root = MAPPER.readTree(httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+                return root.path("measurements").path(0).path("value").asDouble(-1);
+            } catch (Exception e) {
+                return -1;
+            }
+        }
+    }
+
+    // ==================== 统计 ====================
+
+    private static class Sample {
+        String outcome;
+        boolean queued;
+        long ttftNanos;
+        long firstFrameNanos;
+        long lastFrameNanos;
+        long latencyNanos;
+        int frames;
+
+        double framesPerSecond() {
+            long span = lastFrameNanos - firstFrameNanos;
+            return frames > 1 && span > 0 ? (frames - 1) * 1e9 / span : 0;
+        }
+    }
+
+    private static ObjectNode summarize(String name, int users, List<Sample> samples, long elapsedNanos, ServerSampler sampler) {
+        List<Double> ttft = new ArrayList<>();
+        List<Double> latency = new ArrayList<>();
+        List<Double> framesPerSecond = new ArrayList<>();
+        Map<String, Integer> outcomes = new HashMap<>();
+        int queued = 0;
+        long frames = 0;
+        for (Sample sample : samples) {
+            outcomes.merge(sample.outcome, 1, Integer::sum);
+            if (sample.queued) {
+                queued++;
+            }
+            if ("completed".equals(sample.outcome)) {
+                ttft.add(sample.ttftNanos / 1e6);
+                latency.add(sample.latencyNanos / 1e6);
+                framesPerSecond.add(sample.framesPerSecond());
+            }
+            frames += sample.frames;
+        }
+        double elapsedSeconds = elapsedNanos / 1e9;
+
+        ObjectNode result = MAPPER.createObjectNode();
+        result.put("scenario", name);
+        result.put("users", users);
+        result.put("requests", samples.size());
+        result.set("outcomes", MAPPER.valueToTree(outcomes));
+        result.put("queued", queued);
+        result.put("elapsedSeconds", round(elapsedSeconds));
+        result.put("throughputRps", round(samples.size() / elapsedSeconds));
+        result.put("aggregateFramesPerSecond", round(frames / elapsedSeconds));
+        result.set("ttftMs", percentiles(ttft));
+        result.set("latencyMs", percentiles(latency));
+        result.set("framesPerSecondPerStream", percentiles(framesPerSecond));
+        List<Double> heap = new ArrayList<>(sampler.heapSamples);
+        result.put("heapMaxMb", round(sampler.maxHeapBytes.get() / 1048576.0));
+        result.put("heapAvgMb", round(heap.stream().mapToDouble(Double::doubleValue).average().orElse(0) / 1048576.0));
+        result.put("threadsMax", sampler.maxThreads.get());
+        return result;
+    }
+
+    private static ObjectNode percentiles(List<Double> values) {
+        ObjectNode node = MAPPER.createObjectNode();
+        if (values.isEmpty()) {
+            return node;
+        }
+        Collections.sort(values);
+        node.put("p50", round(percentile(values, 0.50)));
+        node.put("p90", round(percentile(values, 0.90)));
+        node.put("p99", round(percentile(values, 0.99)));
+        node.put("max", round(values.get(values.size() - 1)));
+        node.put("mean", round(values.stream().mapToDouble(Double::doubleValue).average().orElse(0)));
+        return node;
+    }
+
+    private static double percentile(List<Double> sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static void printResult(JsonNode result) {
+        System.out.printf("%n== %s ==%n", result.path("scenario").asText());
+        System.out.printf("请求=%d 结果=%s 排队=%d 用时=%.1fs 吞吐=%.2f req/s 总帧率=%.1f 帧/s%n",
+                result.path("requests").asInt(), result.path("outcomes"), result.path("queued").asInt(),
+                result.path("elapsedSeconds").asDouble(), result.path("throughputRps").asDouble(),
+                result.path("aggregateFramesPerSecond").asDouble());
+        System.out.printf("TTFT(ms)   p50=%s p90=%s p99=%s%n", result.path("ttftMs").path("p50"),
+                result.path("ttftMs").path("p90"), result.path("ttftMs").path("p99"));
+        System.out.printf("时延(ms)   p50=%s p90=%s p99=%s%n", result.path("latencyMs").path("p50"),
+                result.path("latencyMs").path("p90"), result.path("latencyMs").path("p99"));
+        System.out.printf("单流帧率   p50=%s p99=%s%n", result.path("framesPerSecondPerStream").path("p50"),
+                result.path("framesPerSecondPerStream").path("p99"));
+        System.out.printf("服务端     堆峰值=%sMB 堆均值=%sMB 线程峰值=%s%n", result.path("heapMaxMb"),
+                result.path("heapAvgMb"), result.path("threadsMax"));
+    }
+}
@@ -0,0 +1,399 @@
+package com.legal.assistant.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地模拟 DashScope 模型服务（压测用，不消耗真实 token）
+ * <p>
+ * 1. POST /api/v1/services/aigc/{text|multimodal}-generation/generation：DashScope 原生流式协议（Agent 模型，ai.dashscope.base-url）
+ * 2. POST /compatible-mode/v1/chat/completions：OpenAI 兼容协议，支持流式与非流式（LlmGateway，agent.llm.base-url）
+ * 3. POST /mock/config：运行时修改行为（JSON，字段同 {@link MockConfig}）；GET /mock/stats：请求计数
+ * <p>
+ * 行为：首 token 延迟 ttftMs，之后按 tokensPerSecond 输出；开启深度思考时先输出 thinkingTokens 个思考 token；
+ * toolScript 指定的工具出现在请求的 tools 中、且本轮尚未有工具结果时，先返回该工具调用（参数按工具 schema 自动填充）；
+ * errorRate / stallRate / disconnectRate 分别注入 HTTP 错误、首包前卡住、中途断开。
+ * <p>
+ * 启动：mvn -Ploadtest test-compile exec:exec -Dloadtest.main=com.legal.assistant.loadtest.MockDashScopeServer -Dloadtest.args="--port=18080 --ttftMs=800"
+ */
+public class MockDashScopeServer {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String ANSWER_TEXT = "根据《中华人民共和国民法典》第五百七十七条的规定，当事人一方不履行合同义务或者履行合同义务不符合约定的，"
+            + "应当承担继续履行、采取补救措施或者赔偿损失等违约责任。结合您描述的情况，建议先固定合同、付款凭证、沟通记录等证据，"
+            + "再通过书面函件催告对方履行；协商不成的，可以依据合同约定的争议解决方式申请仲裁或向人民法院提起诉讼。";
+    private static final String THINKING_TEXT = "用户询问的是合同违约问题，需要先明确合同约定、履行情况和违约事实，再判断可主张的违约责任与救济途径。";
+
+    private final MockConfig config;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong toolCalls = new AtomicLong();
+    private final AtomicLong faults = new AtomicLong();
+    private HttpServer server;
+
+    public MockDashScopeServer(MockConfig config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws IOException {
+        MockConfig config = new MockConfig();
+        int port = 18080;
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                continue;
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if ("port".equals(key)) {
+                port = Integer.parseInt(value);
+            } else {
+                config.apply(MAPPER.createObjectNode().put(key, value));
+            }
+        }
+        new MockDashScopeServer(config).start(port);
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/api/v1/services/aigc/", exchange -> handle(exchange, true));
+        server.createContext("/compatible-mode/v1/chat/completions", exchange -> handle(exchange, false));
+        server.createContext("/mock/config", this::handleConfig);
+        server.createContext("/mock/stats", this::handleStats);
+        server.start();
+        System.out.println("模拟模型服务已启动: http://localhost:" + port + "，配置: " + MAPPER.writeValueAsString(config));
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    // ==================== 控制接口 ====================
+
+    private void handleConfig(HttpExchange exchange) throws IOException {
+        if ("POST".equals(exchange.getRequestMethod())) {
+            config.apply(MAPPER.readTree(exchange.getRequestBody()));
+        }
+        writeJson(exchange, 200, MAPPER.valueToTree(config));
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        writeJson(exchange, 200, MAPPER.createObjectNode()
+                .put("requests", requests.get())
+                .put("toolCalls", toolCalls.get())
+                .put("faults", faults.get()));
+    }
+
+    // ==================== 模型接口 ====================
+
+    private void handle(HttpExchange exchange, boolean nativeProtocol) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+            MockConfig snapshot = config.copy();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            if (random.nextDouble() < snapshot.getErrorRate()) {
+                faults.incrementAndGet();
+                writeJson(exchange, snapshot.getErrorStatus(), MAPPER.createObjectNode()
+                        .put("code", snapshot.getErrorStatus() == 429 ? "Throttling" : "InternalError")
+                        .put("message", "mock injected fault")
+                        .put("request_id", UUID.randomUUID().toString()));
+                return;
+            }
+            if (random.nextDouble() < snapshot.getStallRate()) {
+                faults.incrementAndGet();
+                sleep(snapshot.getStallMs());
+            }
+
+            JsonNode messages = nativeProtocol ? request.path("input").path("messages") : request.path("messages");
+            JsonNode tools = nativeProtocol ? request.path("parameters").path("tools") : request.path("tools");
+            boolean stream = nativeProtocol || request.path("stream").asBoolean(false);
+            boolean incremental = !nativeProtocol || request.path("parameters").path("incremental_output").asBoolean(false);
+            boolean thinking = request.path("parameters").path("enable_thinking").asBoolean(false)
+                    || request.path("enable_thinking").asBoolean(false);
+            String model = request.path("model").asText("mock");
+
+            ObjectNode toolCall = planToolCall(snapshot, messages, tools);
+            if (!stream) {
+                sleep(snapshot.getTtftMs());
+                writeJson(exchange, 200, completion(model, text(ANSWER_TEXT, snapshot.getAnswerTokens())));
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream;charset=UTF-8");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            SseWriter writer = new SseWriter(out, nativeProtocol, incremental, model);
+            sleep(snapshot.getTtftMs());
+
+            long chunkDelayMs = Math.max(0, Math.round(1000.0 * snapshot.getChunkTokens() / Math.max(1, snapshot.getTokensPerSecond())));
+            boolean disconnect = random.nextDouble() < snapshot.getDisconnectRate();
+            if (thinking && snapshot.getThinkingTokens() > 0) {
+                writer.emitText(text(THINKING_TEXT, snapshot.getThinkingTokens()), true,
+                        snapshot.getChunkTokens(), chunkDelayMs);
+            }
+            if (toolCall != null) {
+                toolCalls.incrementAndGet();
+                writer.emitToolCall(toolCall);
+                return;
+            }
+            String answer = text(ANSWER_TEXT, snapshot.getAnswerTokens());
+            if (disconnect) {
+                faults.incrementAndGet();
+                // 输出一半后直接断开，不发送结束帧
+                writer.emitText(answer.substring(0, answer.length() / 2), false, snapshot.getChunkTokens(), chunkDelayMs);
+                return;
+            }
+            writer.emitText(answer, false, snapshot.getChunkTokens(), chunkDelayMs);
+            writer.finish();
+        } catch (IOException e) {
+            // 客户端断开（取消或超时），忽略
+        }
+    }
+
+    /**
+     * 按脚本决定本次是否返回工具调用：脚本中的工具在请求 tools 中，且最后一条用户消息之后还没有工具结果
+     */
+    private ObjectNode planToolCall(MockConfig snapshot, JsonNode messages, JsonNode tools) {
+        String toolName = snapshot.getToolScript();
+        if (toolName == null || toolName.isEmpty() || "none".equals(toolName) || !tools.isArray()) {
+            return null;
+        }
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            String role = messages.get(i).path("role").asText();
+            if ("tool".equals(role)) {
+                return null;
+            }
+            if ("user".equals(role)) {
+                break;
+            }
+        }
+        for (JsonNode tool : tools) {
+            JsonNode function = tool.path("function");
+            if (toolName.equals(function.path("name").asText())) {
+                ObjectNode arguments = MAPPER.createObjectNode();
+                Iterator<Map.Entry<String, JsonNode>> properties = function.path("parameters").path("properties").fields();
+                while (properties.hasNext()) {
+                    Map.Entry<String, JsonNode> property = properties.next();
+                    String type = property.getValue().path("type").asText("string");
+                    if ("integer".equals(type) || "number".equals(type)) {
+                        arguments.put(property.getKey(), snapshot.getFileId());
+                    } else {
+                        arguments.put(property.getKey(), "甲方与乙方签订买卖合同，乙方逾期交货三十日，甲方要求解除合同并赔偿损失。");
+                    }
+                }
+                ObjectNode call = MAPPER.createObjectNode();
+                call.put("index", 0);
+                call.put("id", "call_" + UUID.randomUUID().toString().replace("-", "").substring(0, 16));
+                call.put("type", "function");
+                call.putObject("function")
+                        .put("name", toolName)
+                        .put("arguments", arguments.toString());
+                return call;
+            }
+        }
+        return null;
+    }
+
+    private static ObjectNode completion(String model, String content) {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("id", "chatcmpl-" + UUID.randomUUID());
+        root.put("object", "chat.completion");
+        root.put("model", model);
+        ObjectNode choice = root.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.putObject("message").put("role", "assistant").put("content", content);
+        choice.put("finish_reason", "stop");
+        root.putObject("usage").put("prompt_tokens", 100).put("completion_tokens", content.length())
+                .put("total_tokens", 100 + content.length());
+        return root;
+    }
+
+    /**
+     * 按“一个字符约一个 token”重复样例文本到指定长度
+     */
+    private static String text(String sample, int tokens) {
+        StringBuilder builder = new StringBuilder(tokens);
+        while (builder.length() < tokens) {
+            builder.append(sample);
+        }
+        return builder.substring(0, tokens);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    // ==================== SSE 输出 ====================
+
+    /**
+     * 按协议输出流式帧：原生协议每帧为完整的 output.choices 结构（非增量模式时内容为累计值），兼容协议为 choices[].delta
+     */
+    private static class SseWriter {
+        private final OutputStream out;
+        private final boolean nativeProtocol;
+        private final boolean incremental;
+        private final String model;
+        private final String requestId = UUID.randomUUID().toString();
+        private final StringBuilder content = new StringBuilder();
+        private final StringBuilder reasoning = new StringBuilder();
+        private int seq;
+
+        SseWriter(OutputStream out, boolean nativeProtocol, boolean incremental, String model) {
+            this.out = out;
+            this.nativeProtocol = nativeProtocol;
+            this.incremental = incremental;
+            this.model = model;
+        }
+
+        void emitText(String text, boolean thinking, int chunkTokens, long chunkDelayMs) throws IOException {
+            int step = Math.max(1, chunkTokens);
+            for (int i = 0; i < text.length(); i += step) {
+                String piece = text.substring(i, Math.min(text.length(), i + step));
+                (thinking ? reasoning : content).append(piece);
+                ObjectNode message = MAPPER.createObjectNode().put("role", "assistant");
+                if (thinking) {
+                    message.put("content", incremental ? "" : content.toString());
+                    message.put("reasoning_content", incremental ? piece : reasoning.toString());
+                } else {
+                    message.put("content", incremental ? piece : content.toString());
+                }
+                write(message, null);
+                if (i + step < text.length()) {
+                    sleep(chunkDelayMs);
+                }
+            }
+        }
+
+        void emitToolCall(ObjectNode toolCall) throws IOException {
+            ObjectNode message = MAPPER.createObjectNode().put("role", "assistant").put("content", "");
+            message.putArray("tool_calls").add(toolCall);
+            write(message, "tool_calls");
+            done();
+        }
+
+        void finish() throws IOException {
+            ObjectNode message = MAPPER.createObjectNode().put("role", "assistant").put("content", incremental ? "" : content.toString());
+            write(message, "stop");
+            done();
+        }
+
+        private void write(ObjectNode message, String finishReason) throws IOException {
+            seq++;
+            ObjectNode root = MAPPER.createObjectNode();
+            StringBuilder frame = new StringBuilder();
+            if (nativeProtocol) {
+                ObjectNode choice = root.putObject("output").putArray("choices").addObject();
+                choice.set("message", message);
+                choice.put("finish_reason", finishReason != null ? finishReason : "null");
+                root.putObject("usage").put("input_tokens", 100)
+                        .put("output_tokens", content.length() + reasoning.length())
+                        .put("total_tokens", 100 + content.length() + reasoning.length());
+                root.put("request_id", requestId);
+                frame.append("id:").append(seq).append('\n')
+                        .append("event:result\n")
+                        .append(":HTTP_STATUS/200\n");
+            } else {
+                root.put("id", "chatcmpl-" + requestId);
+                root.put("object", "chat.completion.chunk");
+                root.put("model", model);
+                ArrayNode choices = root.putArray("choices");
+                ObjectNode choice = choices.addObject();
+                choice.put("index", 0);
+                message.remove("role");
+                choice.set("delta", message);
+                if (finishReason != null) {
+                    choice.put("finish_reason", finishReason);
+                } else {
+                    choice.putNull("finish_reason");
+                }
+            }
+            frame.append("data:").append(MAPPER.writeValueAsString(root)).append("\n\n");
+            out.write(frame.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        private void done() throws IOException {
+            if (!nativeProtocol) {
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+    }
+
+    // ==================== 配置 ====================
+
+    /**
+     * 模拟行为配置，可通过启动参数（--key=value）或 POST /mock/config 修改
+     */
+    @Data
+    public static class MockConfig {
+        /** 首 token 延迟（毫秒） */
+        private long ttftMs = 800;
+        /** 输出速率（token/秒） */
+        private int tokensPerSecond = 40;
+        /** 每帧 token 数 */
+        private int chunkTokens = 2;
+        /** 回答 token 数 */
+        private int answerTokens = 300;
+        /** 深度思考 token 数（请求开启 enable_thinking 时输出） */
+        private int thinkingTokens = 120;
+        /** 工具调用脚本：none 或工具名（如 getFileContent、generate_risk_assessment_report） */
+        private String toolScript = "none";
+        /** 工具参数中整数字段的取值（如 fileId） */
+        private long fileId = 1;
+        /** 返回 HTTP 错误的概率 */
+        private double errorRate = 0;
+        /** 注入错误时的 HTTP 状态码 */
+        private int errorStatus = 500;
+        /** 首包前卡住的概率 */
+        private double stallRate = 0;
+        /** 卡住时长（毫秒） */
+        private long stallMs = 30000;
+        /** 输出到一半时断开连接的概率 */
+        private double disconnectRate = 0;
+
+        synchronized void apply(JsonNode patch) throws IOException {
+            MAPPER.readerForUpdating(this).readValue(patch);
+        }
+
+        synchronized MockConfig copy() {
+            return MAPPER.convertValue(this, MockConfig.class);
+        }
+    }
+}
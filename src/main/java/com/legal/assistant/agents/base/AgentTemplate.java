@@ -0,0 +1,55 @@
+package com.legal.assistant.agents.base;
+
+import com.legal.assistant.enums.AgentType;
+import com.legal.assistant.enums.ModelType;
+import io.agentscope.core.model.DashScopeChatModel;
+import io.agentscope.core.tool.Toolkit;
+import lombok.Getter;
+
+/**
+ * Agent 模板：同一 (AgentType, ModelType, deepThinking, 温度档位) 下可在会话间共享的不可变部分
+ * 包括模型客户端、已注册工具的工具集、原始系统提示词等；记忆与 AgentContext 在实例化时按会话创建，
+ * 工具集在实例化时复制一份，模板中的工具集本身不交给任何 Agent 使用。
+ */
+@Getter
+public class AgentTemplate {
+
+    private final AgentType agentType;
+    private final ModelType modelType;
+    private final boolean deepThinking;
+    private final Double temperature;
+
+    private final DashScopeChatModel model;
+
+    /**
+     * 已注册工具的工具集原型；工具集带有激活分组、块回调等可变状态，实例化时通过 {@link Toolkit#copy()} 各自复制，
+     * 依赖会话上下文的工具（如子 Agent）注册到副本上
+     */
+    private final Toolkit toolkit;
+
+    private final int maxIters;
+
+    /**
+     * 未注入当前时间的系统提示词
+     */
+    private final String systemPrompt;
+
+    /**
+     * 子 Agent 模板（如风险评估协调器调用的报告生成 Agent），没有时为空
+     */
+    private final AgentTemplate subAgentTemplate;
+
+    public AgentTemplate(AgentType agentType, ModelType modelType, boolean deepThinking, Double temperature,
+                         DashScopeChatModel model, Toolkit toolkit, int maxIters, String systemPrompt,
+                         AgentTemplate subAgentTemplate) {
+        this.agentType = agentType;
+        this.modelType = modelType;
+        this.deepThinking = deepThinking;
+        this.temperature = temperature;
+        this.model = model;
+        this.toolkit = toolkit;
+        this.maxIters = maxIters;
+        this.systemPrompt = systemPrompt;
+        this.subAgentTemplate = subAgentTemplate;
+    }
+}
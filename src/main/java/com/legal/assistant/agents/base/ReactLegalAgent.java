@@ -2,6 +2,7 @@ package com.legal.assistant.agents.base;
 
 import com.legal.assistant.agents.context.AgentContext;
 import com.legal.assistant.agents.tools.FileToolService;
+import com.legal.assistant.common.ChatMetrics;
 import com.legal.assistant.dto.response.StreamChatResponse;
 import com.legal.assistant.enums.AgentType;
 import com.legal.assistant.enums.ModelType;
@@ -20,14 +21,21 @@ import io.agentscope.core.tool.ToolExecutionContext;
 import io.agentscope.core.tool.Toolkit;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ReAct法律Agent基类
@@ -38,6 +46,10 @@ public abstract class ReactLegalAgent {
     @Value("${ai.dashscope.api-key}")
     protected String apiKey;
 
+    // 模型服务地址，为空时使用 SDK 默认地址；压测时指向本地模拟服务
+    @Value("${ai.dashscope.base-url:}")
+    protected String dashscopeBaseUrl;
+
     @Value("${agent.legal-consultation.max-iterations:5}")
     protected int maxIterations;
 
@@ -57,8 +69,38 @@ public abstract class ReactLegalAgent {
     @Autowired(required = false)
     protected FileToolService fileToolService;
 
+    // 增量片段合并配置（全局默认值，可按 Agent 类型覆盖：agent.stream.coalesce.<agent-type>.window-ms）
+    @Value("${agent.stream.coalesce.window-ms:0}")
+    protected long coalesceWindowMs;
+
+    @Value("${agent.stream.coalesce.max-bytes:512}")
+    protected int coalesceMaxBytes;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private ChatMetrics chatMetrics;
+
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+    /**
+     * 文件工具使用说明：引导模型按需分段读取，避免整篇文件进入上下文和记忆
+     */
+    private static final String FILE_TOOL_GUIDE = """
+
+            # 文件读取方式
+            用户上传的文件可能很长，请按需读取，不要一次读取全文：
+            1. 先调用 getFileOutline 查看文件的标题结构、页数和估算 token 数
+            2. 查找具体条款、金额、日期、当事人等信息时，调用 searchFile 检索相关段落
+            3. 需要完整阅读某一部分时，调用 getFileSection 按偏移或页码读取，可根据返回的下一段偏移继续读取
+            4. 仅当大纲显示文件很短时，才调用 getFileContent 读取全文
+            5. 提示词中已直接提供内容的附件无需再读取
+            """;
+
     /**
      * 将当前时间注入到系统提示词中
      * 替换提示词中的占位符 {current_time}
@@ -89,28 +131,35 @@ public abstract class ReactLegalAgent {
      * 配置并创建Agent
      */
     public ReActAgent configure(ModelType modelType, Double temperature, AgentContext agentContext) {
-        String modelName = modelType.getCode();
         boolean enableThinking = Boolean.TRUE.equals(agentContext != null ? agentContext.getDeepThinking() : null);
+        return instantiate(buildTemplate(modelType, temperature, enableThinking), agentContext);
+    }
 
-        GenerateOptions options = enableThinking
-                ? GenerateOptions.builder().temperature(temperature).thinkingBudget(5000).build()
-                : GenerateOptions.builder().temperature(temperature).build();
+    /**
+     * 构建可共享的 Agent 模板：模型客户端、工具集（含反射扫描注册）与原始系统提示词
+     */
+    public AgentTemplate buildTemplate(ModelType modelType, Double temperature, boolean enableThinking) {
+        DashScopeChatModel model = createModel(modelType, temperature, enableThinking);
+        return new AgentTemplate(getAgentType(), modelType, enableThinking, temperature,
+                model, createToolkit(), maxIterations, getSystemPromptWithToolGuide(), null);
+    }
 
-        DashScopeChatModel model = enableThinking
-                ? DashScopeChatModel.builder().apiKey(apiKey).defaultOptions(options).modelName(modelName).enableThinking(true).build()
-                : DashScopeChatModel.builder().apiKey(apiKey).defaultOptions(options).modelName(modelName).build();
+    /**
+     * 系统提示词；注册了文件工具时追加文件读取方式说明
+     */
+    protected String getSystemPromptWithToolGuide() {
+        return fileToolService != null ? getSystemPrompt() + FILE_TOOL_GUIDE : getSystemPrompt();
+    }
 
+    /**
+     * 基于模板为会话创建 Agent，仅记忆、工具集副本、工具执行上下文和注入时间后的提示词按会话创建
+     */
+    public ReActAgent instantiate(AgentTemplate template, AgentContext agentContext) {
         // 创建记忆
-        Memory memory = createMemory(model);
-
-        // 创建工具集并注册工具
-        Toolkit toolkit = new Toolkit();
-        if (fileToolService != null) {
-            toolkit.registerTool(fileToolService);
-        }
+        Memory memory = createMemory(template.getModel());
 
         // 获取系统提示词并注入当前时间
-        String systemPrompt = injectCurrentTime(getSystemPrompt());
+        String systemPrompt = injectCurrentTime(template.getSystemPrompt());
 
         ToolExecutionContext context = ToolExecutionContext.builder()
                 .register(agentContext)
@@ -118,14 +167,43 @@ public abstract class ReactLegalAgent {
         return ReActAgent.builder()
                 .name(getAgentType().name())
                 .sysPrompt(systemPrompt)
-                .model(model)
+                .model(template.getModel())
                 .memory(memory)
-                .maxIters(maxIterations)
-                .toolkit(toolkit)
+                .maxIters(template.getMaxIters())
+                .toolkit(template.getToolkit().copy())
                 .toolExecutionContext(context)
                 .build();
     }
 
+    /**
+     * 创建模型客户端
+     */
+    protected DashScopeChatModel createModel(ModelType modelType, Double temperature, boolean enableThinking) {
+        String modelName = modelType.getCode();
+        GenerateOptions options = enableThinking
+                ? GenerateOptions.builder().temperature(temperature).thinkingBudget(5000).build()
+                : GenerateOptions.builder().temperature(temperature).build();
+
+        DashScopeChatModel.Builder builder = DashScopeChatModel.builder().apiKey(apiKey).defaultOptions(options).modelName(modelName);
+        if (dashscopeBaseUrl != null && !dashscopeBaseUrl.isEmpty()) {
+            builder.baseUrl(dashscopeBaseUrl);
+        }
+        return enableThinking
+                ? builder.enableThinking(true).build()
+                : builder.build();
+    }
+
+    /**
+     * 创建工具集并注册工具，子类可覆盖以注册更多工具
+     */
+    protected Toolkit createToolkit() {
+        Toolkit toolkit = new Toolkit();
+        if (fileToolService != null) {
+            toolkit.registerTool(fileToolService);
+        }
+        return toolkit;
+    }
+
     /**
      * 创建记忆实例
      */
@@ -194,16 +272,104 @@ public abstract class ReactLegalAgent {
                 getAgentType().name(), messageId, conversationId);
 
         // 执行流式推理并转换为 StreamChatResponse
-        return agent.stream(userMsg, streamOptions)
+        Flux<StreamChatResponse> frames = agent.stream(userMsg, streamOptions)
                 .filter(event -> event != null && event.getMessage() != null)
-                .flatMap(event -> Mono.justOrEmpty(convertEventToResponse(event, messageId, conversationId)))
-                .filter(response -> response.getContent() != null && !response.getContent().isEmpty())
+                .flatMap(event -> Mono.justOrEmpty(convertEventToResponse(event, messageId, conversationId)));
+        return coalesceFrames(frames)
                 .doOnError(error -> log.error("流式对话错误: agentType={}, messageId={}, error={}",
                         getAgentType().name(), messageId, error.getMessage()))
                 .doOnComplete(() -> log.info("流式对话完成: agentType={}, messageId={}",
                         getAgentType().name(), messageId));
     }
 
+    /**
+     * 合并时间窗口内连续同状态的增量片段，并统计每个 token 片段对应的输出帧数
+     * 窗口与字节阈值按 Agent 类型读取：agent.stream.coalesce.<agent-type>.window-ms / max-bytes，未配置时使用全局值
+     * <p>
+     * 工具调用/结果帧内容为空，但需要参与迭代次数统计并触发合并器冲刷，因此在合并之后才过滤掉空内容帧
+     */
+    protected Flux<StreamChatResponse> coalesceFrames(Flux<StreamChatResponse> frames) {
+        String prefix = "agent.stream.coalesce." + getAgentType().name().toLowerCase().replace('_', '-');
+        long windowMs = environment.getProperty(prefix + ".window-ms", Long.class, coalesceWindowMs);
+        int maxBytes = environment.getProperty(prefix + ".max-bytes", Integer.class, coalesceMaxBytes);
+        Flux<StreamChatResponse> relevant = frames.filter(frame -> hasContent(frame) || frame.getToolCall() != null);
+        if (meterRegistry == null) {
+            return StreamChunkCoalescer.coalesce(relevant, Duration.ofMillis(windowMs), maxBytes)
+                    .filter(ReactLegalAgent::hasContent);
+        }
+
+        String agentType = getAgentType().name();
+        AtomicLong tokenFrames = new AtomicLong();
+        AtomicLong outputFrames = new AtomicLong();
+        return StreamChunkCoalescer.coalesce(instrumentTurn(relevant).doOnNext(frame -> {
+                            if (hasContent(frame)) {
+                                tokenFrames.incrementAndGet();
+                            }
+                        }), Duration.ofMillis(windowMs), maxBytes)
+                .filter(ReactLegalAgent::hasContent)
+                .doOnNext(frame -> outputFrames.incrementAndGet())
+                .doFinally(signal -> {
+                    long tokens = tokenFrames.get();
+                    if (tokens > 0) {
+                        meterRegistry.counter("chat.stream.frames.in", "agentType", agentType).increment(tokens);
+                        meterRegistry.counter("chat.stream.frames.out", "agentType", agentType).increment(outputFrames.get());
+                        DistributionSummary.builder("chat.stream.frames.per.token")
+                                .description("每个增量 token 片段对应的 SSE 帧数")
+                                .tag("agentType", agentType)
+                                .register(meterRegistry)
+                                .record((double) outputFrames.get() / tokens);
+                    }
+                });
+    }
+
+    /**
+     * 记录单轮的首片段耗时（TTFT）、增量片段速率与 ReAct 迭代次数
+     * 标签取自 ChatService 写入 Reactor Context 的 agentType / modelType / deepThinking，未写入时仅带 agentType
+     */
+    private Flux<StreamChatResponse> instrumentTurn(Flux<StreamChatResponse> frames) {
+        if (chatMetrics == null) {
+            return frames;
+        }
+        return Flux.deferContextual(context -> {
+            Tags tags = ChatMetrics.turnTags(context, Tags.of("agentType", getAgentType().name()));
+            long subscribedAt = System.nanoTime();
+            AtomicLong firstFrameAt = new AtomicLong();
+            AtomicLong lastFrameAt = new AtomicLong();
+            AtomicLong tokenFrames = new AtomicLong();
+            AtomicInteger toolRounds = new AtomicInteger();
+            AtomicInteger inToolResult = new AtomicInteger();
+            return frames
+                    .doOnNext(frame -> {
+                        if (hasContent(frame)) {
+                            long now = System.nanoTime();
+                            if (firstFrameAt.compareAndSet(0, now)) {
+                                chatMetrics.recordTtft(tags, now - subscribedAt);
+                            }
+                            lastFrameAt.set(now);
+                            tokenFrames.incrementAndGet();
+                        }
+                        // 连续的 tool_result 帧属于同一轮工具调用（并行调用多个工具时只计一次）
+                        boolean toolResult = "tool_result".equals(frame.getStatus());
+                        if (toolResult && inToolResult.getAndSet(1) == 0) {
+                            toolRounds.incrementAndGet();
+                        } else if (!toolResult) {
+                            inToolResult.set(0);
+                        }
+                    })
+                    .doFinally(signal -> {
+                        if (firstFrameAt.get() == 0) {
+                            return;
+                        }
+                        chatMetrics.recordTokenRate(tags, tokenFrames.get(), lastFrameAt.get() - firstFrameAt.get());
+                        chatMetrics.recordIterations(tags, toolRounds.get() + 1);
+                    });
+        });
+    }
+
+    private static boolean hasContent(StreamChatResponse frame) {
+        return frame.getContent() != null && !frame.getContent().isEmpty();
+    }
+
     /**
      * 创建流式选项
      * 子类可以覆盖此方法来自定义流式选项
@@ -0,0 +1,150 @@
+package com.legal.assistant.agents.base;
+
+import com.legal.assistant.dto.response.StreamChatResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 流式增量片段合并器
+ * 将时间窗口内连续、同状态的文本片段合并为一帧，减少 SSE 帧数与序列化开销。
+ * 状态切换、工具调用/结果、完成与错误帧会立即冲刷已缓冲的内容，保证顺序与实时性；
+ * 上游以错误结束时先输出已缓冲的内容再传递错误。
+ */
+public final class StreamChunkCoalescer {
+
+    private static final Object TICK = new Object();
+    private static final Object END = new Object();
+
+    private StreamChunkCoalescer() {
+    }
+
+    /**
+     * 对流应用合并
+     *
+     * @param frames   原始增量帧
+     * @param window   合并时间窗口，为零或负数时不合并
+     * @param maxBytes 缓冲内容达到该字节数（UTF-8）时立即冲刷，0 表示不限制
+     */
+    public static Flux<StreamChatResponse> coalesce(Flux<StreamChatResponse> frames, Duration window, int maxBytes) {
+        if (window == null || window.isZero() || window.isNegative()) {
+            return frames;
+        }
+        return Flux.defer(() -> {
+            Buffer buffer = new Buffer(maxBytes);
+            // 上游帧与定时 tick 合并为单一串行信号源，END 标记上游完成，上游错误转为 UpstreamError 信号
+            return Flux.merge(
+                            frames.cast(Object.class)
+                                    .onErrorResume(error -> Mono.just(new UpstreamError(error)))
+                                    .concatWith(Mono.just(END)),
+                            Flux.interval(window).map(tick -> TICK))
+                    .takeUntil(signal -> signal == END)
+                    .concatMap(signal -> signal instanceof UpstreamError upstreamError
+                            ? Flux.fromIterable(buffer.accept(END)).concatWith(Flux.error(upstreamError.error()))
+                            : Flux.fromIterable(buffer.accept(signal)));
+        });
+    }
+
+    /**
+     * 上游错误，在输出已缓冲的内容之后传递
+     */
+    private record UpstreamError(Throwable error) {
+    }
+
+    /**
+     * 合并缓冲区，仅在串行信号下访问
+     */
+    private static final class Buffer {
+        private final int maxBytes;
+        private StreamChatResponse pending;
+        private StringBuilder content;
+        private int bytes;
+
+        Buffer(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        List<StreamChatResponse> accept(Object signal) {
+            if (signal == TICK || signal == END) {
+                StreamChatResponse flushed = flush();
+                return flushed != null ? Collections.singletonList(flushed) : Collections.emptyList();
+            }
+
+            StreamChatResponse frame = (StreamChatResponse) signal;
+            if (!isMergeable(frame)) {
+                // 工具调用、完成、错误等帧不合并，先冲刷已缓冲内容再原样输出
+                List<StreamChatResponse> out = new ArrayList<>(2);
+                StreamChatResponse flushed = flush();
+                if (flushed != null) {
+                    out.add(flushed);
+                }
+                out.add(frame);
+                return out;
+            }
+
+            List<StreamChatResponse> out = Collections.emptyList();
+            if (pending != null && !pending.getStatus().equals(frame.getStatus())) {
+                // 状态切换立即冲刷
+                out = new ArrayList<>(2);
+                out.add(flush());
+            }
+            if (pending == null) {
+                pending = frame;
+                content = new StringBuilder(frame.getContent());
+                bytes = utf8Length(frame.getContent());
+            } else {
+                content.append(frame.getContent());
+                bytes += utf8Length(frame.getContent());
+            }
+
+            if (maxBytes > 0 && bytes >= maxBytes) {
+                if (out.isEmpty()) {
+                    out = new ArrayList<>(1);
+                }
+                out.add(flush());
+            }
+            return out;
+        }
+
+        private StreamChatResponse flush() {
+            if (pending == null) {
+                return null;
+            }
+            StreamChatResponse merged = StreamChatResponse.message(
+                    pending.getMessageId(), pending.getConversationId(), content.toString(), pending.getStatus());
+            pending = null;
+            content = null;
+            bytes = 0;
+            return merged;
+        }
+
+        private static boolean isMergeable(StreamChatResponse frame) {
+            return frame.getToolCall() == null
+                    && !Boolean.TRUE.equals(frame.getFinished())
+                    && frame.getStatus() != null
+                    && frame.getContent() != null;
+        }
+
+        private static int utf8Length(String text) {
+            int length = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    length += 1;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c)) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+    }
+}
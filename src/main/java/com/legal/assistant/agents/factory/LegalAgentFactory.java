@@ -1,17 +1,26 @@
 package com.legal.assistant.agents.factory;
 
+import com.legal.assistant.agents.base.AgentTemplate;
 import com.legal.assistant.agents.context.AgentContext;
 import com.legal.assistant.enums.AgentType;
 import com.legal.assistant.enums.ModelType;
 import com.legal.assistant.agents.base.ReactLegalAgent;
 import com.legal.assistant.agents.impl.*;
 import io.agentscope.core.ReActAgent;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * 法律Agent工厂
+ * 按 (AgentType, ModelType, deepThinking, 温度档位) 缓存 Agent 模板，新会话只需基于模板创建记忆与上下文
  */
+@Slf4j
 @Component
 public class LegalAgentFactory {
 
@@ -30,12 +39,73 @@ public class LegalAgentFactory {
     @Autowired
     private CaseAnalysisAgent caseAnalysisAgent;
 
+    @Value("${agent.template.prewarm-enabled:true}")
+    private boolean prewarmEnabled;
+
+    /**
+     * 启动时预热的温度（未传温度的请求总会预热）
+     */
+    @Value("${agent.template.prewarm-temperatures:0.7}")
+    private double[] prewarmTemperatures;
+
+    private final ConcurrentHashMap<TemplateKey, AgentTemplate> templates = new ConcurrentHashMap<>();
+
+    /**
+     * 模板缓存键，温度按 0.1 取整分档
+     */
+    private record TemplateKey(AgentType agentType, ModelType modelType, boolean deepThinking, Double temperature) {
+    }
+
     /**
      * 创建Agent
      */
     public ReActAgent createAgent(AgentType agentType, ModelType modelType, Double temperature, AgentContext agentContext) {
-        ReactLegalAgent agent = getAgentImpl(agentType);
-        return agent.configure(modelType, temperature,agentContext);
+        boolean deepThinking = Boolean.TRUE.equals(agentContext != null ? agentContext.getDeepThinking() : null);
+        AgentTemplate template = getTemplate(agentType, modelType, deepThinking, temperature);
+        return getAgentImpl(agentType).instantiate(template, agentContext);
+    }
+
+    /**
+     * 获取（必要时构建）Agent 模板
+     */
+    public AgentTemplate getTemplate(AgentType agentType, ModelType modelType, boolean deepThinking, Double temperature) {
+        Double bucket = temperatureBucket(temperature);
+        return templates.computeIfAbsent(new TemplateKey(agentType, modelType, deepThinking, bucket), key -> {
+            long start = System.currentTimeMillis();
+            AgentTemplate template = getAgentImpl(agentType).buildTemplate(modelType, bucket, deepThinking);
+            log.info("构建 Agent 模板: agentType={}, modelType={}, deepThinking={}, temperature={}, 耗时={}ms",
+                    agentType, modelType, deepThinking, bucket, System.currentTimeMillis() - start);
+            return template;
+        });
+    }
+
+    /**
+     * 启动完成后预热常用模板，避免首条消息承担构建开销
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarmTemplates() {
+        if (!prewarmEnabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        for (AgentType agentType : AgentType.values()) {
+            for (ModelType modelType : ModelType.values()) {
+                for (boolean deepThinking : new boolean[]{false, true}) {
+                    if (deepThinking && !modelType.isSupportsThinking()) {
+                        continue;
+                    }
+                    try {
+                        getTemplate(agentType, modelType, deepThinking, null);
+                        for (double temperature : prewarmTemperatures) {
+                            getTemplate(agentType, modelType, deepThinking, temperature);
+                        }
+                    } catch (Exception e) {
+                        log.warn("预热 Agent 模板失败: agentType={}, modelType={}, error={}", agentType, modelType, e.getMessage());
+                    }
+                }
+            }
+        }
+        log.info("Agent 模板预热完成: 模板数={}, 耗时={}ms", templates.size(), System.currentTimeMillis() - start);
     }
 
     /**
@@ -57,4 +127,11 @@ public class LegalAgentFactory {
             case CASE_ANALYSIS -> caseAnalysisAgent;
         };
     }
+
+    private static Double temperatureBucket(Double temperature) {
+        if (temperature == null) {
+            return null;
+        }
+        return Math.round(temperature * 10) / 10.0;
+    }
 }
@@ -2,6 +2,7 @@ package com.legal.assistant.agents.impl;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.legal.assistant.agents.base.AgentTemplate;
 import com.legal.assistant.agents.base.ReactLegalAgent;
 import com.legal.assistant.agents.context.AgentContext;
 import com.legal.assistant.agents.tools.ReportSaveToolService;
@@ -15,7 +16,6 @@ import io.agentscope.core.agent.StreamOptions;
 import io.agentscope.core.memory.Memory;
 import io.agentscope.core.message.*;
 import io.agentscope.core.model.DashScopeChatModel;
-import io.agentscope.core.model.GenerateOptions;
 import io.agentscope.core.tool.ToolExecutionContext;
 import io.agentscope.core.tool.Toolkit;
 import io.agentscope.core.tool.subagent.SubAgentConfig;
@@ -52,35 +52,37 @@ public class InteractiveCoordinatorAgent extends ReactLegalAgent {
         return COORDINATOR_SYSTEM_PROMPT;
     }
 
+    /**
+     * 模板中预注册报告保存等工具，并预构建报告生成子 Agent 的模板；子 Agent 工具绑定会话上下文，在实例化时注册到工具集副本上
+     */
     @Override
-    public ReActAgent configure(ModelType modelType, Double temperature, AgentContext agentContext) {
-        String modelName = modelType.getCode();
-        boolean enableThinking = Boolean.TRUE.equals(agentContext != null ? agentContext.getDeepThinking() : null);
-        GenerateOptions options = enableThinking
-                ? GenerateOptions.builder().temperature(temperature).thinkingBudget(5000).build()
-                : GenerateOptions.builder().temperature(temperature).build();
-        DashScopeChatModel model = enableThinking
-                ? DashScopeChatModel.builder().apiKey(apiKey).defaultOptions(options).modelName(modelName).enableThinking(true).build()
-                : DashScopeChatModel.builder().apiKey(apiKey).defaultOptions(options).modelName(modelName).build();
-
-        // 创建记忆
-        Memory memory = createMemory(model);
-
-        // 创建工具集并注册工具
-        Toolkit toolkit = new Toolkit();
-
-        // 注册基础工具
-        if (fileToolService != null) {
-            toolkit.registerTool(fileToolService);
-        }
+    public AgentTemplate buildTemplate(ModelType modelType, Double temperature, boolean enableThinking) {
+        DashScopeChatModel model = createModel(modelType, temperature, enableThinking);
+        Toolkit toolkit = createToolkit();
         if (reportSaveToolService != null) {
             toolkit.registerTool(reportSaveToolService);
         }
+        AgentTemplate reportTemplate = reportGenerationAgent != null
+                ? reportGenerationAgent.buildTemplate(modelType, temperature, enableThinking)
+                : null;
+        // 增加迭代次数，确保有足够的机会调用工具
+        return new AgentTemplate(getAgentType(), modelType, enableThinking, temperature,
+                model, toolkit, 5, getSystemPromptWithToolGuide(), reportTemplate);
+    }
+
+    @Override
+    public ReActAgent instantiate(AgentTemplate template, AgentContext agentContext) {
+        // 创建记忆
+        Memory memory = createMemory(template.getModel());
+
+        // 复制模板中已注册工具的工具集
+        Toolkit toolkit = template.getToolkit().copy();
 
-        // 注册报告生成Agent作为子Agent工具
-        if (reportGenerationAgent != null) {
+        // 注册报告生成Agent作为子Agent工具（由模板快速创建，共享模型客户端）
+        AgentTemplate reportTemplate = template.getSubAgentTemplate();
+        if (reportGenerationAgent != null && reportTemplate != null) {
             toolkit.registration()
-                    .subAgent(() -> reportGenerationAgent.configure(modelType, temperature, agentContext),
+                    .subAgent(() -> reportGenerationAgent.instantiate(reportTemplate, agentContext),
                             SubAgentConfig.builder()
                                     .toolName("generate_risk_assessment_report")
                                     .description("【重要工具】生成专业的风险评估报告。当收集到完整的案件信息后，必须调用此工具来生成风险评估报告。工具接收案件描述文本，分析后生成包含风险等级、评分、分析和建议的完整报告。")
@@ -95,14 +97,14 @@ public class InteractiveCoordinatorAgent extends ReactLegalAgent {
                 .build();
 
         // 获取系统提示词并注入当前时间
-        String systemPrompt = injectCurrentTime(getSystemPrompt());
+        String systemPrompt = injectCurrentTime(template.getSystemPrompt());
 
         return ReActAgent.builder()
                 .name(getAgentType().name())
                 .sysPrompt(systemPrompt)
-                .model(model)
+                .model(template.getModel())
                 .memory(memory)
-                .maxIters(5)  // 增加迭代次数，确保有足够的机会调用工具
+                .maxIters(template.getMaxIters())
                 .toolkit(toolkit)
                 .toolExecutionContext(context)
                 .build();
@@ -151,14 +153,14 @@ public class InteractiveCoordinatorAgent extends ReactLegalAgent {
                 messageId, conversationId);
 
         // 执行流式推理并转换为 StreamChatResponse
-        return agent.stream(userMsg, streamOptions)
+        Flux<StreamChatResponse> frames = agent.stream(userMsg, streamOptions)
                 .filter(event -> event != null && event.getMessage() != null)
                 .flatMap(event -> {
                     // 转换事件为响应（包括主Agent消息和子Agent报告）
                     StreamChatResponse response = convertEventToResponse(event, messageId, conversationId);
                     return Mono.justOrEmpty(response);
-                })
-                .filter(response -> response.getContent() != null && !response.getContent().isEmpty())
+                });
+        return coalesceFrames(frames)
                 .doOnError(error -> log.error("InteractiveCoordinatorAgent 流式对话错误: messageId={}, error={}",
                         messageId, error.getMessage()))
                 .doOnComplete(() -> log.info("InteractiveCoordinatorAgent 流式对话完成: messageId={}", messageId));
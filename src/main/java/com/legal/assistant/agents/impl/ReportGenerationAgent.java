@@ -1,5 +1,6 @@
 package com.legal.assistant.agents.impl;
 
+import com.legal.assistant.agents.base.AgentTemplate;
 import com.legal.assistant.agents.base.ReactLegalAgent;
 import com.legal.assistant.agents.context.AgentContext;
 import com.legal.assistant.dto.response.StreamChatResponse;
@@ -13,7 +14,6 @@ import io.agentscope.core.message.Msg;
 import io.agentscope.core.message.MsgRole;
 import io.agentscope.core.message.TextBlock;
 import io.agentscope.core.model.DashScopeChatModel;
-import io.agentscope.core.model.GenerateOptions;
 import io.agentscope.core.tool.ToolExecutionContext;
 import io.agentscope.core.tool.Toolkit;
 
@@ -219,38 +219,31 @@ public class ReportGenerationAgent extends ReactLegalAgent {
     }
 
     @Override
-    public ReActAgent configure(ModelType modelType, Double temperature, AgentContext agentContext) {
-        String modelName = modelType.getCode();
-        boolean enableThinking = Boolean.TRUE.equals(agentContext != null ? agentContext.getDeepThinking() : null);
-        GenerateOptions options = enableThinking
-                ? GenerateOptions.builder().temperature(temperature).thinkingBudget(5000).build()
-                : GenerateOptions.builder().temperature(temperature).build();
-        DashScopeChatModel model = enableThinking
-                ? DashScopeChatModel.builder().apiKey(apiKey).defaultOptions(options).modelName(modelName).enableThinking(true).build()
-                : DashScopeChatModel.builder().apiKey(apiKey).defaultOptions(options).modelName(modelName).build();
-
-        // 创建工具集
-        Toolkit toolkit = new Toolkit();
+    public AgentTemplate buildTemplate(ModelType modelType, Double temperature, boolean enableThinking) {
+        DashScopeChatModel model = createModel(modelType, temperature, enableThinking);
+        // 报告生成不使用工具
+        return new AgentTemplate(getAgentType(), modelType, enableThinking, temperature,
+                model, new Toolkit(), 3, getSystemPrompt(), null);
+    }
 
+    @Override
+    public ReActAgent instantiate(AgentTemplate template, AgentContext agentContext) {
         // 获取系统提示词并注入当前时间
-        String systemPrompt = injectCurrentTime(getSystemPrompt());
+        String systemPrompt = injectCurrentTime(template.getSystemPrompt());
 
         ToolExecutionContext context = ToolExecutionContext.builder()
                 .register(agentContext)
                 .build();
 
-        // 构建Agent，注册ReportSaveHook钩子
-        return  ReActAgent.builder()
+        // 构建Agent（作为子Agent调用，不需要持久化记忆）
+        return ReActAgent.builder()
                 .name(getAgentType().name())
                 .sysPrompt(systemPrompt)
-                .model(model)
-                .maxIters(3)
-                .toolkit(toolkit)
+                .model(template.getModel())
+                .maxIters(template.getMaxIters())
+                .toolkit(template.getToolkit().copy())
                 .toolExecutionContext(context)
                 .build();
-
-
-
     }
 
     @Override
@@ -283,10 +276,10 @@ public class ReportGenerationAgent extends ReactLegalAgent {
 
         // 执行流式推理并转换为 StreamChatResponse
         // 所有输出都标记为 artifact 状态
-        return agent.stream(userMsg, streamOptions)
+        Flux<StreamChatResponse> frames = agent.stream(userMsg, streamOptions)
                 .filter(event -> event != null && event.getMessage() != null)
-                .flatMap(event -> Mono.justOrEmpty(convertEventToArtifactResponse(event, messageId, conversationId)))
-                .filter(response -> response.getContent() != null && !response.getContent().isEmpty())
+                .flatMap(event -> Mono.justOrEmpty(convertEventToArtifactResponse(event, messageId, conversationId)));
+        return coalesceFrames(frames)
                 .doOnError(error -> log.error("ReportGenerationAgent 流式对话错误: messageId={}, error={}",
                         messageId, error.getMessage()))
                 .doOnComplete(() -> log.info("ReportGenerationAgent 流式对话完成: messageId={}", messageId));
@@ -1,18 +1,19 @@
 package com.legal.assistant.agents.tools;
 
+import com.legal.assistant.agents.context.AgentContext;
+import com.legal.assistant.common.ChatMetrics;
 import com.legal.assistant.entity.DocumentFile;
 import com.legal.assistant.mapper.DocumentFileMapper;
+import com.legal.assistant.service.DocumentIndexService;
+import com.legal.assistant.service.FileContentCache;
 import io.agentscope.core.tool.Tool;
 import io.agentscope.core.tool.ToolParam;
-import io.minio.GetObjectArgs;
-import io.minio.MinioClient;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
  * @author hcl
@@ -26,40 +27,78 @@ public class FileToolService {
     private DocumentFileMapper documentFileMapper;
 
     @Autowired
-    private MinioClient minioClient;
+    private FileContentCache fileContentCache;
 
-    @Value("${minio.bucket-name}")
-    private String bucketName;
-    @Tool(name = "getFileContent", description = "根据文件ID获取文件的内容")
-    public String getFileContent(@ToolParam(name = "fileId", description = "文件ID") Long fileId) {
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private DocumentIndexService documentIndexService;
+
+    @Value("${agent.file-prefetch.wait-ms:3000}")
+    private long prefetchWaitMs;
+
+    @Value("${agent.file-tools.full-content-max-tokens:8000}")
+    private int fullContentMaxTokens;
+
+    @Value("${agent.file-tools.section-default-tokens:1500}")
+    private int sectionDefaultTokens;
+
+    @Value("${agent.file-tools.section-max-tokens:4000}")
+    private int sectionMaxTokens;
+
+    @Value("${agent.file-tools.search-top-k:5}")
+    private int searchTopK;
+
+    @Value("${agent.file-tools.outline-max-headings:100}")
+    private int outlineMaxHeadings;
+
+    /**
+     * agentContext 由 ToolExecutionContext 按类型注入，不暴露给模型
+     */
+    @Tool(name = "getFileContent", description = "根据文件ID获取文件的全部内容（仅适用于小文件，超长时只返回开头部分；长文件请使用 getFileOutline、searchFile、getFileSection）")
+    public String getFileContent(@ToolParam(name = "fileId", description = "文件ID") Long fileId,
+                                 AgentContext agentContext) {
+        return chatMetrics.timeTool("getFileContent", () -> readFileContent(fileId, agentContext));
+    }
+
+    private String readFileContent(Long fileId, AgentContext agentContext) {
         log.info("开始获取文件内容: fileId={}", fileId);
-        // 1. 查询文件记录
+        // 1. 优先读取本会话的附件预取缓存
+        Long conversationId = agentContext != null ? agentContext.getConversationId() : null;
+        if (conversationId != null) {
+            FileContentCache.FileContent cached = fileContentCache.get(conversationId, fileId, prefetchWaitMs);
+            if (cached != null) {
+                log.info("命中附件内容缓存: fileId={}, fileName={}, 内容长度={}",
+                        fileId, cached.fileName(), cached.content().length());
+                return boundContent(fileId, cached.content());
+            }
+        }
+
+        // 2. 查询文件记录
         DocumentFile documentFile = documentFileMapper.selectById(fileId);
         if (documentFile == null) {
             log.warn("文件不存在: fileId={}", fileId);
             return "错误: 文件不存在，文件ID: " + fileId;
         }
 
-        // 2. 检查markdownPath是否为空
+        // 3. 检查markdownPath是否为空
         String markdownPath = documentFile.getMarkdownPath();
         if (markdownPath == null || markdownPath.isEmpty()) {
             log.warn("文件的Markdown路径为空: fileId={}", fileId);
             return "错误: 文件的Markdown内容尚未生成，文件ID: " + fileId;
         }
 
-        // 3. 从MinIO中下载Markdown文件内容
-        try (InputStream inputStream = minioClient.getObject(
-                GetObjectArgs.builder()
-                        .bucket(bucketName)
-                        .object(markdownPath)
-                        .build())) {
-
-            // 4. 读取文件内容
-            String content = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        // 4. 从MinIO中下载Markdown文件内容，并回填会话缓存
+        try {
+            String content = fileContentCache.readMarkdown(markdownPath);
             log.info("成功获取文件内容: fileId={}, fileName={}, 内容长度={}",
                     fileId, documentFile.getFileName(), content.length());
-
-            return content;
+            if (conversationId != null) {
+                fileContentCache.put(conversationId,
+                        new FileContentCache.FileContent(fileId, documentFile.getFileName(), content));
+            }
+            return boundContent(fileId, content);
 
         } catch (Exception e) {
             log.error("从MinIO获取文件内容失败: fileId={}, markdownPath={}",
@@ -68,4 +107,156 @@ public class FileToolService {
         }
     }
 
+    /**
+     * 全文超过 token 上限时只返回开头部分，并提示改用分段工具
+     */
+    private String boundContent(Long fileId, String content) {
+        if (FileContentCache.estimateTokens(content) <= fullContentMaxTokens) {
+            return content;
+        }
+        int end = DocumentIndexService.sliceEnd(content, 0, content.length(), fullContentMaxTokens);
+        log.info("文件内容超出全文上限，仅返回开头部分: fileId={}, 返回={}/{} 字符", fileId, end, content.length());
+        return content.substring(0, end)
+                + "\n\n【文件过长，以上仅为开头部分（字符 0-" + end + " / 共 " + content.length() + "）。"
+                + "请调用 getFileOutline 查看结构，用 searchFile 检索相关段落，或用 getFileSection 从偏移 " + end + " 继续读取】";
+    }
+
+    @Tool(name = "getFileOutline", description = "获取文件大纲：文件名、字符数、估算token数、页数以及各级标题及其偏移和页码。阅读长文件前应先调用")
+    public String getFileOutline(@ToolParam(name = "fileId", description = "文件ID") Long fileId) {
+        return chatMetrics.timeTool("getFileOutline", () -> {
+            DocumentIndexService.IndexedDocument document = loadDocument(fileId);
+            if (document == null) {
+                return "错误: 文件不存在或内容尚未生成，文件ID: " + fileId;
+            }
+            DocumentIndexService.DocumentIndex index = document.getIndex();
+            List<DocumentIndexService.Heading> headings = index.getHeadings();
+            StringBuilder outline = new StringBuilder();
+            outline.append("文件ID: ").append(fileId).append("\n");
+            outline.append("文件名: ").append(document.getFileName()).append("\n");
+            outline.append("字符数: ").append(index.getCharCount()).append("\n");
+            outline.append("估算token数: ").append(FileContentCache.estimateTokens(document.getMarkdown())).append("\n");
+            int pages = index.getPageOffsets() != null ? index.getPageOffsets().size() : 0;
+            outline.append("页数: ").append(pages > 0 ? String.valueOf(pages) : "无分页信息").append("\n");
+            outline.append("文本块数: ").append(index.getChunks().size()).append("\n");
+            outline.append("\n标题结构（偏移可用于 getFileSection）:\n");
+            if (headings.isEmpty()) {
+                outline.append("  （未识别到标题）\n");
+            }
+            for (int i = 0; i < headings.size() && i < outlineMaxHeadings; i++) {
+                DocumentIndexService.Heading heading = headings.get(i);
+                outline.append("  ".repeat(heading.getLevel())).append(heading.getTitle())
+                        .append("  [偏移 ").append(heading.getOffset());
+                Integer page = DocumentIndexService.pageOf(index, heading.getOffset());
+                if (page != null) {
+                    outline.append("，第 ").append(page).append(" 页");
+                }
+                outline.append("]\n");
+            }
+            if (headings.size() > outlineMaxHeadings) {
+                outline.append("  ……共 ").append(headings.size()).append(" 个标题，仅列出前 ")
+                        .append(outlineMaxHeadings).append(" 个\n");
+            }
+            return outline.toString();
+        });
+    }
+
+    @Tool(name = "getFileSection", description = "按字符偏移或页码范围读取文件的一段内容，单次返回长度受token上限约束；结果末尾给出下一段偏移，可继续读取")
+    public String getFileSection(
+            @ToolParam(name = "fileId", description = "文件ID") Long fileId,
+            @ToolParam(name = "offset", description = "起始字符偏移（来自大纲或检索结果），与页码二选一", required = false) Integer offset,
+            @ToolParam(name = "startPage", description = "起始页码（从1开始），与偏移二选一", required = false) Integer startPage,
+            @ToolParam(name = "endPage", description = "结束页码（含），默认与起始页相同", required = false) Integer endPage,
+            @ToolParam(name = "maxTokens", description = "本次最多返回的token数，默认1500", required = false) Integer maxTokens) {
+        return chatMetrics.timeTool("getFileSection", () -> {
+            DocumentIndexService.IndexedDocument document = loadDocument(fileId);
+            if (document == null) {
+                return "错误: 文件不存在或内容尚未生成，文件ID: " + fileId;
+            }
+            DocumentIndexService.DocumentIndex index = document.getIndex();
+            String markdown = document.getMarkdown();
+            List<Integer> pageOffsets = index.getPageOffsets();
+
+            int start;
+            int limit = markdown.length();
+            if (startPage != null) {
+                if (pageOffsets == null || pageOffsets.isEmpty()) {
+                    return "错误: 该文件没有分页信息，请使用偏移读取";
+                }
+                int lastPage = endPage != null ? endPage : startPage;
+                if (startPage < 1 || startPage > pageOffsets.size() || lastPage < startPage) {
+                    return "错误: 页码超出范围，文件共 " + pageOffsets.size() + " 页";
+                }
+                start = pageOffsets.get(startPage - 1);
+                limit = lastPage < pageOffsets.size() ? pageOffsets.get(lastPage) : markdown.length();
+            } else {
+                start = offset != null ? offset : 0;
+                if (start < 0 || start >= markdown.length()) {
+                    return "错误: 偏移超出范围，文件共 " + markdown.length() + " 个字符";
+                }
+            }
+
+            int budget = Math.min(maxTokens != null && maxTokens > 0 ? maxTokens : sectionDefaultTokens, sectionMaxTokens);
+            int end = DocumentIndexService.sliceEnd(markdown, start, limit, budget);
+            StringBuilder section = new StringBuilder();
+            section.append("【文件ID: ").append(fileId).append("，字符 ").append(start).append("-").append(end)
+                    .append(" / 共 ").append(markdown.length());
+            Integer page = DocumentIndexService.pageOf(index, start);
+            if (page != null) {
+                section.append("，第 ").append(page).append(" 页起");
+            }
+            section.append("】\n");
+            section.append(markdown, start, end);
+            section.append(end < markdown.length()
+                    ? "\n【下一段偏移: " + end + "】"
+                    : "\n【已到文件末尾】");
+            return section.toString();
+        });
+    }
+
+    @Tool(name = "searchFile", description = "在文件中按关键词检索（BM25），返回最相关的若干段落及其偏移和页码，适合查找条款、金额、日期、当事人等信息")
+    public String searchFile(
+            @ToolParam(name = "fileId", description = "文件ID") Long fileId,
+            @ToolParam(name = "query", description = "检索关键词或问题") String query,
+            @ToolParam(name = "topK", description = "返回段落数，默认5", required = false) Integer topK) {
+        return chatMetrics.timeTool("searchFile", () -> {
+            DocumentIndexService.IndexedDocument document = loadDocument(fileId);
+            if (document == null) {
+                return "错误: 文件不存在或内容尚未生成，文件ID: " + fileId;
+            }
+            int k = topK != null && topK > 0 ? Math.min(topK, searchTopK * 2) : searchTopK;
+            List<DocumentIndexService.Passage> passages = documentIndexService.search(document, query, k);
+            if (passages.isEmpty()) {
+                return "未检索到与“" + query + "”相关的内容，可调用 getFileOutline 查看文件结构";
+            }
+            StringBuilder result = new StringBuilder();
+            result.append("检索“").append(query).append("”，共 ").append(passages.size()).append(" 个相关段落：\n");
+            for (int i = 0; i < passages.size(); i++) {
+                DocumentIndexService.Passage passage = passages.get(i);
+                result.append("\n[").append(i + 1).append("] 偏移 ").append(passage.getOffset());
+                if (passage.getPage() != null) {
+                    result.append("，第 ").append(passage.getPage()).append(" 页");
+                }
+                result.append(String.format("，相关度 %.2f", passage.getScore())).append("\n");
+                result.append(passage.getText().strip()).append("\n");
+            }
+            return result.toString();
+        });
+    }
+
+    /**
+     * 加载文件 Markdown 与索引，文件不存在、内容未生成或读取失败时返回 null
+     */
+    private DocumentIndexService.IndexedDocument loadDocument(Long fileId) {
+        DocumentFile documentFile = documentFileMapper.selectById(fileId);
+        if (documentFile == null || documentFile.getMarkdownPath() == null || documentFile.getMarkdownPath().isEmpty()) {
+            log.warn("文件不存在或Markdown内容尚未生成: fileId={}", fileId);
+            return null;
+        }
+        try {
+            return documentIndexService.load(documentFile);
+        } catch (Exception e) {
+            log.error("加载文件索引失败: fileId={}", fileId, e);
+            return null;
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.legal.assistant.agents.tools;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.legal.assistant.common.ChatMetrics;
 import com.legal.assistant.entity.Report;
 import com.legal.assistant.mapper.ReportMapper;
 import com.legal.assistant.service.FileService;
@@ -31,10 +32,16 @@ public class ReportSaveToolService {
     @Autowired
     private FileService fileService;
 
+    @Autowired
+    private ChatMetrics chatMetrics;
 
     @Tool(name = "generate_download_link", description = "生成报告下载链接")
     public String generateDownloadLink(
             @ToolParam(name = "reportId", description = "报告编号") String reportId) {
+        return chatMetrics.timeTool("generate_download_link", () -> createDownloadLink(reportId));
+    }
+
+    private String createDownloadLink(String reportId) {
         if (reportId == null || reportId.trim().isEmpty()) {
             return "错误: 报告编号为空";
         }
@@ -0,0 +1,114 @@
+package com.legal.assistant.common;
+
+import com.legal.assistant.enums.AgentType;
+import com.legal.assistant.enums.ModelType;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 对话链路指标（通过管理端口上的 /actuator/prometheus 暴露）
+ * <p>
+ * 1. 单轮维度的直方图统一带 agentType / modelType / deepThinking 标签，标签经 Reactor Context 从 ChatService 传到 Agent 流
+ * 2. chat.stream.ttft：订阅 Agent 流到首个增量片段的耗时；chat.stream.tokens.rate：每秒增量片段数（近似 tokens/s）
+ * 3. chat.react.iterations：每轮 ReAct 迭代次数（工具调用轮次 + 1）；chat.turn：整轮耗时，outcome=completed/stopped/error/cancelled
+ * 4. chat.tool.latency：工具耗时，outcome=success/error；chat.session.load：从 Redis 恢复会话耗时（RedisSession 另记 chat.session.store）
+ */
+@Component
+public class ChatMetrics {
+
+    /**
+     * Reactor Context 中存放本轮指标标签的 key
+     */
+    public static final String CONTEXT_KEY = ChatMetrics.class.getName() + ".tags";
+
+    private static final String TOOL_ERROR_PREFIX = "错误";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 单轮对话的公共标签
+     */
+    public static Tags turnTags(AgentType agentType, ModelType modelType, Boolean deepThinking) {
+        return Tags.of(
+                "agentType", agentType != null ? agentType.name() : "unknown",
+                "modelType", modelType != null ? modelType.getCode() : "unknown",
+                "deepThinking", String.valueOf(Boolean.TRUE.equals(deepThinking)));
+    }
+
+    /**
+     * 从 Reactor Context 读取本轮标签，未设置时返回 fallback
+     */
+    public static Tags turnTags(ContextView context, Tags fallback) {
+        return context.getOrDefault(CONTEXT_KEY, fallback);
+    }
+
+    public void recordTtft(Tags tags, long nanos) {
+        meterRegistry.timer("chat.stream.ttft", tags).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录增量片段速率：片段数 / 首片段到末片段的时长
+     */
+    public void recordTokenRate(Tags tags, long tokenFrames, long nanos) {
+        if (tokenFrames < 2 || nanos <= 0) {
+            return;
+        }
+        DistributionSummary.builder("chat.stream.tokens.rate")
+                .baseUnit("tokens/s")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(tokenFrames * 1_000_000_000d / nanos);
+    }
+
+    public void recordIterations(Tags tags, int iterations) {
+        DistributionSummary.builder("chat.react.iterations")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(iterations);
+    }
+
+    public void recordTurn(Tags tags, String outcome, long nanos) {
+        meterRegistry.timer("chat.turn", tags.and("outcome", outcome)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 缓存未命中时从 Redis 恢复会话的耗时，found=是否存在已保存的会话
+     */
+    public void recordSessionLoad(Tags tags, boolean found, long nanos) {
+        meterRegistry.timer("chat.session.load", tags.and("found", String.valueOf(found)))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 停止请求计数，scope=local（本节点持有）/ remote（转发到其他节点）
+     */
+    public void recordStop(String scope) {
+        meterRegistry.counter("chat.stop", "scope", scope).increment();
+    }
+
+    /**
+     * 计时执行工具：抛出异常或返回“错误”前缀的结果均记为 error
+     */
+    public String timeTool(String tool, Supplier<String> invocation) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            String result = invocation.get();
+            if (result != null && !result.startsWith(TOOL_ERROR_PREFIX)) {
+                outcome = "success";
+            }
+            return result;
+        } finally {
+            meterRegistry.timer("chat.tool.latency", "tool", tool, "outcome", outcome)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
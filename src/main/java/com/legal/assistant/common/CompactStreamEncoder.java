@@ -0,0 +1,158 @@
+package com.legal.assistant.common;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.legal.assistant.dto.response.StreamChatResponse;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 紧凑型 SSE 流编码器（请求中 compactStream=true 时启用）
+ * <p>
+ * 1. 首个带 messageId 的帧之前发送 session 事件，只携带一次 messageId / conversationId：{"m":1,"c":2}
+ * 2. 每帧为 d 事件，使用短键并省略空值和默认值：
+ * s=状态（message 时省略）、t=内容、tl=生成的标题、f=1 表示结束、tc=工具调用 {n,a,r}、q=排队信息 {p,w}
+ * （排队帧出现在消息创建之前，因此位于 session 事件之前）
+ * 3. 每条流复用一个预分配的缓冲区直接拼接 JSON，不经过 Jackson 对象序列化
+ */
+public final class CompactStreamEncoder {
+
+    public static final String SESSION_EVENT = "session";
+    public static final String DELTA_EVENT = "d";
+
+    private static final String DEFAULT_STATUS = "message";
+    private static final int INITIAL_CAPACITY = 512;
+
+    private final StringBuilder buffer;
+    private boolean headerSent;
+
+    public CompactStreamEncoder() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public CompactStreamEncoder(int initialCapacity) {
+        this.buffer = new StringBuilder(initialCapacity);
+    }
+
+    /**
+     * 将标准流转换为紧凑格式，每个订阅者独立持有编码器
+     */
+    public static Flux<ServerSentEvent<String>> encode(Flux<ServerSentEvent<StreamChatResponse>> events) {
+        return Flux.defer(() -> {
+            CompactStreamEncoder encoder = new CompactStreamEncoder();
+            return events.concatMapIterable(encoder::encodeEvent);
+        });
+    }
+
+    /**
+     * 编码单个事件，首个事件前附带 session 头
+     */
+    public List<ServerSentEvent<String>> encodeEvent(ServerSentEvent<StreamChatResponse> event) {
+        StreamChatResponse response = event.data();
+        List<ServerSentEvent<String>> out = new ArrayList<>(2);
+        if (response == null) {
+            return out;
+        }
+        if (!headerSent && response.getMessageId() != null) {
+            headerSent = true;
+            out.add(ServerSentEvent.builder(encodeHeader(response.getMessageId(), response.getConversationId()))
+                    .event(SESSION_EVENT)
+                    .build());
+        }
+        out.add(ServerSentEvent.builder(encodeDelta(response))
+                .id(event.id())
+                .event(DELTA_EVENT)
+                .build());
+        return out;
+    }
+
+    /**
+     * 编码 session 头
+     */
+    public String encodeHeader(Long messageId, Long conversationId) {
+        buffer.setLength(0);
+        buffer.append('{');
+        boolean first = appendNumber("m", messageId, true);
+        appendNumber("c", conversationId, first);
+        buffer.append('}');
+        return buffer.toString();
+    }
+
+    /**
+     * 编码增量帧
+     */
+    public String encodeDelta(StreamChatResponse response) {
+        buffer.setLength(0);
+        buffer.append('{');
+        boolean first = true;
+        String status = response.getStatus();
+        if (status != null && !DEFAULT_STATUS.equals(status)) {
+            first = appendString("s", status, first);
+        }
+        String content = response.getContent();
+        if (content != null && !content.isEmpty()) {
+            first = appendString("t", content, first);
+        }
+        if (response.getGeneratedTitle() != null) {
+            first = appendString("tl", response.getGeneratedTitle(), first);
+        }
+        if (Boolean.TRUE.equals(response.getFinished())) {
+            first = appendKey("f", first);
+            buffer.append('1');
+        }
+        StreamChatResponse.ToolCallInfo toolCall = response.getToolCall();
+        if (toolCall != null) {
+            appendKey("tc", first);
+            buffer.append('{');
+            boolean toolFirst = appendString("n", toolCall.getToolName(), true);
+            if (toolCall.getToolArgs() != null) {
+                toolFirst = appendString("a", toolCall.getToolArgs(), toolFirst);
+            }
+            if (toolCall.getToolResult() != null) {
+                appendString("r", toolCall.getToolResult(), toolFirst);
+            }
+            buffer.append('}');
+            first = false;
+        }
+        StreamChatResponse.QueueInfo queue = response.getQueue();
+        if (queue != null) {
+            appendKey("q", first);
+            buffer.append('{');
+            boolean queueFirst = appendNumber("p", queue.getPosition() != null ? queue.getPosition().longValue() : null, true);
+            appendNumber("w", queue.getEstimatedWaitSeconds(), queueFirst);
+            buffer.append('}');
+        }
+        buffer.append('}');
+        return buffer.toString();
+    }
+
+    private boolean appendKey(String key, boolean first) {
+        if (!first) {
+            buffer.append(',');
+        }
+        buffer.append('"').append(key).append("\":");
+        return false;
+    }
+
+    private boolean appendString(String key, String value, boolean first) {
+        if (value == null) {
+            return first;
+        }
+        appendKey(key, first);
+        buffer.append('"');
+        JsonStringEncoder.getInstance().quoteAsString(value, buffer);
+        buffer.append('"');
+        return false;
+    }
+
+    private boolean appendNumber(String key, Long value, boolean first) {
+        if (value == null) {
+            return first;
+        }
+        appendKey(key, first);
+        buffer.append(value.longValue());
+        return false;
+    }
+}
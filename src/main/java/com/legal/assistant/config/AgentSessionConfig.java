@@ -1,7 +1,13 @@
 package com.legal.assistant.config;
 
+import com.legal.assistant.mapper.AgentSessionArchiveMapper;
+import com.legal.assistant.session.FramedStateCodec;
+import com.legal.assistant.session.MinioColdSessionStore;
+import com.legal.assistant.session.MysqlColdSessionStore;
 import com.legal.assistant.session.RedisSession;
 import io.agentscope.core.session.Session;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.MinioClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,12 +22,55 @@ public class AgentSessionConfig {
     @Value("${agent.session.expire-days:7}")
     private int expireDays;
 
+    @Value("${agent.session.incremental-save:true}")
+    private boolean incrementalSave;
+
+    /**
+     * 默认与旧版本一致的纯 JSON，全部节点升级后再切换为 SMILE + ZSTD（见 application.yml）
+     */
+    @Value("${agent.session.codec.format:JSON}")
+    private FramedStateCodec.Format codecFormat;
+
+    @Value("${agent.session.codec.compression:NONE}")
+    private FramedStateCodec.Compression codecCompression;
+
+    @Value("${agent.session.codec.compress-threshold-bytes:1024}")
+    private int compressThresholdBytes;
+
+    @Value("${agent.session.codec.compress-level:3}")
+    private int compressLevel;
+
+    /**
+     * 冷存储类型：MINIO、MYSQL 或 NONE（不移出也不恢复）
+     */
+    @Value("${agent.session.tiering.store:MINIO}")
+    private String coldStore;
+
+    @Value("${agent.session.tiering.minio-prefix:agent-sessions/}")
+    private String minioPrefix;
+
+    @Value("${agent.session.tiering.archive-level:6}")
+    private int archiveLevel;
+
+    @Value("${minio.bucket-name}")
+    private String bucketName;
+
     /**
      * 创建基于 Redis 的 Session Bean
      */
     @Bean
-    public Session agentSession(StringRedisTemplate redisTemplate) {
+    public Session agentSession(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+                                MinioClient minioClient, AgentSessionArchiveMapper archiveMapper) {
         long expireSeconds = expireDays * 24 * 3600L;
-        return new RedisSession(redisTemplate, expireSeconds);
+        RedisSession session = new RedisSession(redisTemplate, expireSeconds, meterRegistry);
+        session.setIncrementalSave(incrementalSave);
+        session.setCodec(new FramedStateCodec(codecFormat, codecCompression, compressThresholdBytes,
+                compressLevel, meterRegistry));
+        if ("MINIO".equalsIgnoreCase(coldStore)) {
+            session.setColdStore(new MinioColdSessionStore(minioClient, bucketName, minioPrefix), archiveLevel);
+        } else if ("MYSQL".equalsIgnoreCase(coldStore)) {
+            session.setColdStore(new MysqlColdSessionStore(archiveMapper), archiveLevel);
+        }
+        return session;
     }
 }
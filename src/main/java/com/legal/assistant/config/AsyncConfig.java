@@ -21,4 +21,19 @@ public class AsyncConfig implements AsyncConfigurer {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * 记忆后台预压缩：最低线程优先级、小队列，积压时直接放弃（下一轮结束会再次尝试，或由记忆自身在轮内压缩）
+     */
+    @Bean(name = "compactionExecutor")
+    public Executor compactionExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(50);
+        executor.setThreadPriority(Thread.MIN_PRIORITY);
+        executor.setThreadNamePrefix("memory-compact-");
+        executor.initialize();
+        return executor;
+    }
 }
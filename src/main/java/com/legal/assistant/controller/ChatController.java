@@ -1,6 +1,7 @@
 package com.legal.assistant.controller;
 
 import com.legal.assistant.annotation.NoAuth;
+import com.legal.assistant.common.CompactStreamEncoder;
 import com.legal.assistant.common.Result;
 import com.legal.assistant.dto.request.ChatCompletionRequest;
 import com.legal.assistant.dto.response.StreamChatResponse;
@@ -13,12 +14,15 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 智能问答控制器
@@ -33,16 +37,37 @@ public class ChatController {
     @Autowired
     private ChatService chatService;
 
+    /**
+     * 受信任的反向代理地址，只有请求来自这些地址时才采信 X-Forwarded-For
+     */
+    @Value("${agent.admission.trusted-proxies:}")
+    private Set<String> trustedProxies;
+
     @PostMapping(value = "/completion", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @Operation(summary = "流式对话", description = "创建流式对话，使用SSE方式返回响应")
     @NoAuth
-    public Flux<StreamChatResponse> chatCompletion(
+    public Flux<ServerSentEvent<?>> chatCompletion(
             @Valid @RequestBody ChatCompletionRequest request,
             HttpServletRequest httpRequest) {
         Long userId = (Long) httpRequest.getAttribute("userId");
         log.info("收到对话请求: userId={}, agentType={}, question={}",
                 userId, request.getAgentType(), request.getQuestion());
-        return chatService.createChatStream(userId, request);
+        return toWireFormat(chatService.createChatStream(userId, getClientIp(httpRequest), request), request.getCompactStream());
+    }
+
+    @GetMapping(value = "/resume", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "续传对话", description = "断线后携带 Last-Event-ID 重新订阅正在生成的消息流，从断点继续接收；仅消息所属的登录用户可续传")
+    public Flux<ServerSentEvent<?>> resumeChat(
+            @Parameter(description = "消息ID", required = true)
+            @RequestParam Long messageId,
+            @Parameter(description = "已收到的最后一个事件序号")
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+            @Parameter(description = "是否使用紧凑流格式")
+            @RequestParam(required = false) Boolean compactStream,
+            HttpServletRequest httpRequest) {
+        Long userId = (Long) httpRequest.getAttribute("userId");
+        log.info("收到续传请求: userId={}, messageId={}, lastEventId={}", userId, messageId, lastEventId);
+        return toWireFormat(chatService.resumeChatStream(userId, messageId, lastEventId), compactStream);
     }
 
     @GetMapping("/stop")
@@ -58,6 +83,16 @@ public class ChatController {
         return Result.success();
     }
 
+    /**
+     * 按客户端协商的格式输出：默认保持原有 JSON 帧，compactStream=true 时使用紧凑编码
+     */
+    private Flux<ServerSentEvent<?>> toWireFormat(Flux<ServerSentEvent<StreamChatResponse>> stream, Boolean compactStream) {
+        if (Boolean.TRUE.equals(compactStream)) {
+            return CompactStreamEncoder.encode(stream).map(event -> event);
+        }
+        return stream.map(event -> event);
+    }
+
     @GetMapping("/suggested-questions")
     @Operation(summary = "获取建议问题列表", description = "根据当前会话的对话历史，生成3-5个建议性的下一轮问题供用户选择")
     @NoAuth
@@ -71,4 +106,24 @@ public class ChatController {
         return Result.success(response);
     }
 
+    /**
+     * 客户端地址，用于未登录请求的限流与公平排队
+     * X-Forwarded-For 可由客户端任意填写，仅在直连方是受信代理时采信：从右向左跳过受信代理，第一个其他地址即客户端
+     */
+    private String getClientIp(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded == null || forwarded.isEmpty() || !trustedProxies.contains(remoteAddr)) {
+            return remoteAddr;
+        }
+        String[] hops = forwarded.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (!hop.isEmpty() && !trustedProxies.contains(hop)) {
+                return hop;
+            }
+        }
+        return remoteAddr;
+    }
+
 }
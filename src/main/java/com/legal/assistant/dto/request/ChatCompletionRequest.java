@@ -45,4 +45,7 @@ public class ChatCompletionRequest {
 
     @Schema(description = "是否启用深度思考", example = "false")
     private Boolean deepThinking;
+
+    @Schema(description = "是否使用紧凑流格式（首帧 session 事件携带ID，后续 d 事件使用短键并省略空值）", example = "false")
+    private Boolean compactStream;
 }
@@ -32,4 +32,7 @@ public class ConversationResponse {
     
     @Schema(description = "消息数量", example = "10")
     private Integer messageCount;
+
+    @Schema(description = "最近一条消息的时间（时间戳，毫秒），没有消息时为空", example = "1705507200000")
+    private Long lastMessageAt;
 }
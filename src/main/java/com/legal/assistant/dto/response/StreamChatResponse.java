@@ -1,5 +1,6 @@
 package com.legal.assistant.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -19,7 +20,7 @@ public class StreamChatResponse {
     @Schema(description = "流式内容片段", example = "根据")
     private String content;
 
-    @Schema(description = "状态：thinking（模型深度思考，仅开启 enableThinking 时有）、reasoning（ReAct 推理步骤）、message（普通回复）、artifact（报告/文件输出）、tool_call（工具调用）、tool_result（工具结果）、completed（完成）、error（错误）", example = "message")
+    @Schema(description = "状态：thinking（模型深度思考，仅开启 enableThinking 时有）、reasoning（ReAct 推理步骤）、message（普通回复）、artifact（报告/文件输出）、tool_call（工具调用）、tool_result（工具结果）、title（异步生成的标题）、queued（排队中）、gap（续传时部分帧已超出回放缓冲区）、completed（完成）、error（错误）", example = "message")
     private String status;
 
     @Schema(description = "自动生成的标题（仅在首次对话时返回）", example = "关于合同纠纷的咨询")
@@ -31,13 +32,17 @@ public class StreamChatResponse {
     @Schema(description = "工具调用信息（仅当status为tool_call或tool_result时有值）")
     private ToolCallInfo toolCall;
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Schema(description = "排队信息（仅当status为queued时有值）")
+    private QueueInfo queue;
+
     // ==================== 工厂方法 ====================
 
     /**
      * 创建消息响应
      */
     public static StreamChatResponse message(Long messageId, Long conversationId, String content, String status) {
-        return new StreamChatResponse(messageId, conversationId, content, status, null, false, null);
+        return new StreamChatResponse(messageId, conversationId, content, status, null, false, null, null);
     }
 
     /**
@@ -45,21 +50,55 @@ public class StreamChatResponse {
      */
     public static StreamChatResponse toolCall(Long messageId, Long conversationId, ToolCallInfo toolInfo) {
         String status = Boolean.TRUE.equals(toolInfo.getIsToolCall()) ? "tool_call" : "tool_result";
-        return new StreamChatResponse(messageId, conversationId, "", status, null, false, toolInfo);
+        return new StreamChatResponse(messageId, conversationId, "", status, null, false, toolInfo, null);
     }
 
     /**
      * 创建完成响应
      */
     public static StreamChatResponse completed(Long messageId, Long conversationId, String generatedTitle) {
-        return new StreamChatResponse(messageId, conversationId, "", "completed", generatedTitle, true, null);
+        return new StreamChatResponse(messageId, conversationId, "", "completed", generatedTitle, true, null, null);
+    }
+
+    /**
+     * 创建标题响应（异步生成的会话标题就绪时推送，可能出现在完成帧之前或之后）
+     */
+    public static StreamChatResponse title(Long messageId, Long conversationId, String generatedTitle) {
+        return new StreamChatResponse(messageId, conversationId, "", "title", generatedTitle, false, null, null);
     }
 
     /**
      * 创建错误响应
      */
     public static StreamChatResponse error(Long messageId, Long conversationId, String errorMessage) {
-        return new StreamChatResponse(messageId, conversationId, errorMessage, "error", null, true, null);
+        return new StreamChatResponse(messageId, conversationId, errorMessage, "error", null, true, null, null);
+    }
+
+    /**
+     * 创建续传缺口响应：断点之后的部分帧已超出回放缓冲区，随后的帧不再连续，
+     * 客户端应丢弃该消息已显示的内容，待生成完成后重新拉取完整消息
+     */
+    public static StreamChatResponse gap(Long messageId, Long conversationId) {
+        return new StreamChatResponse(messageId, conversationId, "", "gap", null, false, null, null);
+    }
+
+    /**
+     * 创建排队响应（请求等待准入时定期推送，此时尚未创建消息）
+     */
+    public static StreamChatResponse queued(Long conversationId, int position, long estimatedWaitSeconds) {
+        return new StreamChatResponse(null, conversationId, "", "queued", null, false, null,
+                new QueueInfo(position, estimatedWaitSeconds));
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class QueueInfo {
+        @Schema(description = "当前排队位置（从1开始）", example = "3")
+        private Integer position;
+
+        @Schema(description = "预计等待秒数", example = "40")
+        private Long estimatedWaitSeconds;
     }
 
     @Data
@@ -0,0 +1,24 @@
+package com.legal.assistant.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 移出 Redis 的 Agent 会话归档（MySQL 冷存储）
+ */
+@Data
+@TableName("agent_session_archive")
+public class AgentSessionArchive {
+    @TableId(value = "session_id", type = IdType.INPUT)
+    private String sessionId;
+
+    @TableField("data")
+    private byte[] data;  // 压缩后的会话归档
+
+    @TableField("size")
+    private Integer size;
+
+    @TableField("archived_at")
+    private LocalDateTime archivedAt;
+}
@@ -23,6 +23,18 @@ public class Conversation {
     
     @TableField("is_pinned")
     private Boolean isPinned;
+
+    /**
+     * 未删除的消息数，随消息新增 / 删除原子增减（见 ConversationMapper），updateById 不写入，避免旧值覆盖
+     */
+    @TableField(value = "message_count", updateStrategy = FieldStrategy.NEVER)
+    private Integer messageCount;
+
+    /**
+     * 最近一条消息的创建时间
+     */
+    @TableField(value = "last_message_at", updateStrategy = FieldStrategy.NEVER)
+    private LocalDateTime lastMessageAt;
     
     @TableLogic
     @TableField("is_deleted")
@@ -34,6 +34,12 @@ public class DocumentFile {
     @TableField("markdown_path")
     private String markdownPath;
 
+    /**
+     * 分块检索索引（JSON）在 MinIO 中的路径
+     */
+    @TableField("index_path")
+    private String indexPath;
+
     private String status;
 
     @TableLogic
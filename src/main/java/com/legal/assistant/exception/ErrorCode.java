@@ -27,7 +27,16 @@ public enum ErrorCode {
     
     // 会话相关
     CONVERSATION_NOT_FOUND(4001, "会话不存在"),
-    CONVERSATION_DELETED(4002, "会话已删除");
+    CONVERSATION_DELETED(4002, "会话已删除"),
+
+    // 模型服务相关
+    LLM_UNAVAILABLE(5001, "模型服务暂不可用，请稍后重试"),
+    LLM_TIMEOUT(5002, "模型服务响应超时"),
+
+    // 对话准入相关
+    RATE_LIMITED(6001, "请求过于频繁，请稍后再试"),
+    QUEUE_FULL(6002, "当前排队人数过多，请稍后再试"),
+    QUEUE_TIMEOUT(6003, "排队等待超时，请稍后再试");
     
     private final Integer code;
     private final String message;
@@ -0,0 +1,16 @@
+package com.legal.assistant.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.legal.assistant.entity.AgentSessionArchive;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+@Mapper
+public interface AgentSessionArchiveMapper extends BaseMapper<AgentSessionArchive> {
+
+    @Insert("INSERT INTO agent_session_archive (session_id, data, size, archived_at) " +
+            "VALUES (#{sessionId}, #{data}, #{size}, NOW()) " +
+            "ON DUPLICATE KEY UPDATE data = VALUES(data), size = VALUES(size), archived_at = VALUES(archived_at)")
+    void upsert(@Param("sessionId") String sessionId, @Param("data") byte[] data, @Param("size") int size);
+}
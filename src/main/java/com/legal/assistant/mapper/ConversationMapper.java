@@ -3,7 +3,54 @@ package com.legal.assistant.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.legal.assistant.entity.Conversation;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 @Mapper
 public interface ConversationMapper extends BaseMapper<Conversation> {
+
+    /**
+     * 新增消息：消息数加一并记录最近消息时间
+     */
+    @Update("UPDATE conversation SET message_count = message_count + 1, last_message_at = #{messageAt} " +
+            "WHERE id = #{id}")
+    int incrementMessageCount(@Param("id") Long id, @Param("messageAt") LocalDateTime messageAt);
+
+    /**
+     * 侧边栏一次查询：全部置顶会话、今日更新的非置顶会话、历史会话的一页，
+     * 按置顶优先、更新时间倒序返回，各部分均走 idx_conversation_user_list
+     */
+    @Select("(SELECT * FROM conversation WHERE user_id = #{userId} AND is_deleted = 0 AND is_pinned = 1) " +
+            "UNION ALL " +
+            "(SELECT * FROM conversation WHERE user_id = #{userId} AND is_deleted = 0 AND is_pinned = 0 " +
+            "AND updated_at >= #{todayStart}) " +
+            "UNION ALL " +
+            "(SELECT * FROM conversation WHERE user_id = #{userId} AND is_deleted = 0 AND is_pinned = 0 " +
+            "AND updated_at < #{todayStart} ORDER BY updated_at DESC LIMIT #{size} OFFSET #{offset}) " +
+            "ORDER BY is_pinned DESC, updated_at DESC")
+    List<Conversation> selectSidebar(@Param("userId") Long userId, @Param("todayStart") LocalDateTime todayStart,
+                                     @Param("size") int size, @Param("offset") int offset);
+
+    @Select("SELECT COUNT(*) FROM conversation WHERE user_id = #{userId} AND is_deleted = 0 AND is_pinned = 0 " +
+            "AND updated_at < #{todayStart}")
+    long countHistory(@Param("userId") Long userId, @Param("todayStart") LocalDateTime todayStart);
+
+    /**
+     * 按消息表重算 id 在 [fromId, toId] 内会话的消息数与最近消息时间（回填）；
+     * 与 MessageMapper.countByConversationId 一致，统计全部消息行
+     */
+    @Update("UPDATE conversation c LEFT JOIN (" +
+            "SELECT conversation_id, COUNT(*) AS cnt, MAX(created_at) AS last_at FROM message " +
+            "WHERE conversation_id BETWEEN #{fromId} AND #{toId} GROUP BY conversation_id" +
+            ") m ON m.conversation_id = c.id " +
+            "SET c.message_count = COALESCE(m.cnt, 0), c.last_message_at = m.last_at " +
+            "WHERE c.id BETWEEN #{fromId} AND #{toId}")
+    int recountMessages(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    @Select("SELECT COALESCE(MAX(id), 0) FROM conversation")
+    long selectMaxId();
 }
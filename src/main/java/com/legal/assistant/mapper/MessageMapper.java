@@ -18,6 +18,10 @@ public interface MessageMapper extends BaseMapper<Message> {
     @Select("SELECT * FROM message WHERE conversation_id = #{conversationId} ORDER BY created_at ASC")
     List<Message> selectByConversationId(Long conversationId);
 
+    @Select("SELECT * FROM message WHERE conversation_id = #{conversationId} AND status = 'completed' " +
+            "ORDER BY id DESC LIMIT #{limit}")
+    List<Message> selectRecentCompleted(@Param("conversationId") Long conversationId, @Param("limit") int limit);
+
     @Update("UPDATE message SET answer = #{answer}, status = #{status}, updated_at = NOW() WHERE id = #{id}")
     void updateAnswerAndStatus(@Param("id") Long id, @Param("answer") String answer, @Param("status") String status);
 }
@@ -0,0 +1,35 @@
+package com.legal.assistant.service;
+
+import com.legal.assistant.enums.AgentType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * 答案缓存运维端点：管理端口（management.server.port，默认只监听本机）上的 DELETE /actuator/answercache 清除缓存
+ * 缓存条目由所有用户共享，清除不经过 API 端口，不提供给普通用户
+ */
+@Slf4j
+@Component
+@Endpoint(id = "answercache")
+public class AnswerCacheEndpoint {
+
+    @Autowired
+    private AnswerCacheService answerCacheService;
+
+    /**
+     * 清除答案缓存
+     *
+     * @param agentType 为空时不限 Agent 类型
+     * @param question  为空时清除全部；否则清除与该问题相同或近似重复的条目
+     * @return 清除的条目数
+     */
+    @DeleteOperation
+    public int purge(@Nullable AgentType agentType, @Nullable String question) {
+        log.info("收到清除答案缓存请求: agentType={}, question={}", agentType, question);
+        return answerCacheService.purge(agentType, question);
+    }
+}
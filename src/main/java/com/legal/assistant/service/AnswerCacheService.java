@@ -0,0 +1,405 @@
+package com.legal.assistant.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.legal.assistant.agents.context.AgentContext;
+import com.legal.assistant.agents.factory.LegalAgentFactory;
+import com.legal.assistant.dto.response.StreamChatResponse;
+import com.legal.assistant.entity.ConsultTemplates;
+import com.legal.assistant.enums.AgentType;
+import com.legal.assistant.enums.ModelType;
+import com.legal.assistant.mapper.ConsultTemplatesMapper;
+import io.agentscope.core.ReActAgent;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 常见问题答案缓存
+ * 默认关闭，仅对配置启用的 Agent 类型、会话首轮且不带文件的问题生效：问题经文本归一化后按精确匹配，
+ * 再用 64 位 SimHash（字符二元组特征）在进程内分段索引中查找近似重复问题；
+ * 命中时以可配置的节奏按普通 {@link StreamChatResponse} 帧回放缓存的答案。
+ */
+@Slf4j
+@Service
+public class AnswerCacheService {
+
+    /**
+     * SimHash 分为 8 段，每段 8 位：汉明距离不超过 7 时至少有一段完全相同。
+     * 二元组特征较少，几十字的问题改动一两个字距离即达 4~6，分段须能召回这一范围
+     */
+    private static final int BANDS = 8;
+    private static final int BAND_BITS = 64 / BANDS;
+
+    /**
+     * 归一化时去除的礼貌性前缀，不影响问题语义
+     */
+    private static final Pattern FILLER_PREFIX = Pattern.compile("^(你好|您好|请问|我想问一下|我想咨询一下|想咨询一下|咨询一下)+");
+
+    /**
+     * 中文数字，近似命中要求两个问题中的数字完全一致（年限、金额、天数不同的问题答案不同）
+     */
+    private static final String CN_NUMERALS = "零〇一二两三四五六七八九十百千万亿";
+
+    @Autowired
+    private ConsultTemplatesMapper consultTemplatesMapper;
+
+    @Autowired
+    private LegalAgentFactory agentFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${agent.answer-cache.enabled-agents:}")
+    private Set<AgentType> enabledAgents;
+
+    @Value("${agent.answer-cache.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${agent.answer-cache.max-entries:5000}")
+    private long maxEntries;
+
+    @Value("${agent.answer-cache.max-hamming-distance:5}")
+    private int maxHammingDistance;
+
+    @Value("${agent.answer-cache.min-question-chars:6}")
+    private int minQuestionChars;
+
+    @Value("${agent.answer-cache.replay.chunk-chars:12}")
+    private int replayChunkChars;
+
+    @Value("${agent.answer-cache.replay.interval-ms:20}")
+    private long replayIntervalMs;
+
+    @Value("${agent.answer-cache.prewarm.enabled:false}")
+    private boolean prewarmEnabled;
+
+    @Value("${agent.answer-cache.prewarm.model-types:QWEN_PLUS}")
+    private List<ModelType> prewarmModelTypes;
+
+    @Value("${agent.answer-cache.prewarm.timeout-seconds:120}")
+    private long prewarmTimeoutSeconds;
+
+    /**
+     * 缓存条目，id -> 答案；过期或淘汰时同步清理索引
+     */
+    private Cache<Long, CachedAnswer> entries;
+
+    /**
+     * 精确索引：scope|归一化问题 -> 条目 id
+     */
+    private final ConcurrentHashMap<String, Long> exactIndex = new ConcurrentHashMap<>();
+
+    /**
+     * SimHash 分段索引：scope|段号|段值 -> 条目 id 集合
+     */
+    private final ConcurrentHashMap<String, Set<Long>> bandIndex = new ConcurrentHashMap<>();
+
+    private final AtomicLong idGenerator = new AtomicLong();
+
+    private record CachedAnswer(long id, String scope, String normalized, long simHash, String answer) {
+    }
+
+    @PostConstruct
+    public void init() {
+        if (maxHammingDistance > BANDS - 1) {
+            log.warn("答案缓存汉明距离阈值超出分段索引可召回范围，按 {} 处理: configured={}", BANDS - 1, maxHammingDistance);
+            maxHammingDistance = BANDS - 1;
+        }
+        entries = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofHours(ttlHours))
+                .removalListener((Long id, CachedAnswer entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        unindex(entry);
+                    }
+                })
+                .build();
+        meterRegistry.gauge("chat.answer.cache.size", entries, Cache::estimatedSize);
+        log.info("答案缓存初始化: enabledAgents={}, ttlHours={}, maxEntries={}, maxHammingDistance={}",
+                enabledAgents, ttlHours, maxEntries, maxHammingDistance);
+    }
+
+    /**
+     * 是否可以使用答案缓存：启用的 Agent 类型、会话首轮、不带文件
+     */
+    public boolean isEligible(AgentType agentType, boolean firstTurn, List<Long> fileIds) {
+        return enabledAgents.contains(agentType) && firstTurn && (fileIds == null || fileIds.isEmpty());
+    }
+
+    /**
+     * 查找与问题相同或近似重复的缓存答案，未命中返回 null
+     */
+    public String lookup(AgentType agentType, ModelType modelType, String question) {
+        String normalized = normalize(question);
+        if (normalized.length() < minQuestionChars) {
+            return null;
+        }
+        String scope = scope(agentType, modelType);
+
+        Long exactId = exactIndex.get(scope + "|" + normalized);
+        CachedAnswer exact = exactId != null ? entries.getIfPresent(exactId) : null;
+        if (exact != null) {
+            recordLookup(agentType, "exact");
+            return exact.answer();
+        }
+
+        long simHash = simHash(normalized);
+        CachedAnswer best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (Long id : candidates(scope, simHash)) {
+            CachedAnswer candidate = entries.getIfPresent(id);
+            if (candidate == null || !isComparableLength(normalized, candidate.normalized())
+                    || !numbers(normalized).equals(numbers(candidate.normalized()))) {
+                continue;
+            }
+            int distance = Long.bitCount(simHash ^ candidate.simHash());
+            if (distance <= maxHammingDistance && distance < bestDistance) {
+                best = candidate;
+                bestDistance = distance;
+            }
+        }
+        if (best != null) {
+            log.info("答案缓存近似命中: agentType={}, distance={}, question={}", agentType, bestDistance, question);
+            recordLookup(agentType, "near");
+            return best.answer();
+        }
+        recordLookup(agentType, "miss");
+        return null;
+    }
+
+    /**
+     * 缓存一次完整生成的答案
+     */
+    public void put(AgentType agentType, ModelType modelType, String question, String answer) {
+        String normalized = normalize(question);
+        if (normalized.length() < minQuestionChars || answer == null || answer.isBlank()) {
+            return;
+        }
+        String scope = scope(agentType, modelType);
+        CachedAnswer entry = new CachedAnswer(idGenerator.incrementAndGet(), scope, normalized, simHash(normalized), answer);
+        Long previous = exactIndex.put(scope + "|" + normalized, entry.id());
+        if (previous != null) {
+            entries.invalidate(previous);
+        }
+        for (String bandKey : bandKeys(scope, entry.simHash())) {
+            bandIndex.computeIfAbsent(bandKey, k -> ConcurrentHashMap.newKeySet()).add(entry.id());
+        }
+        entries.put(entry.id(), entry);
+        log.debug("写入答案缓存: scope={}, question={}, answerLength={}", scope, question, answer.length());
+    }
+
+    /**
+     * 手动清除缓存
+     *
+     * @param agentType 为空时不限 Agent 类型
+     * @param question  为空时清除全部；否则清除与该问题相同或近似重复的条目
+     * @return 清除的条目数
+     */
+    public int purge(AgentType agentType, String question) {
+        String normalized = question != null ? normalize(question) : null;
+        long simHash = normalized != null ? simHash(normalized) : 0L;
+        List<Long> toRemove = entries.asMap().values().stream()
+                .filter(entry -> agentType == null || entry.scope().startsWith(agentType.name() + ":"))
+                .filter(entry -> normalized == null
+                        || entry.normalized().equals(normalized)
+                        || Long.bitCount(simHash ^ entry.simHash()) <= maxHammingDistance)
+                .map(CachedAnswer::id)
+                .collect(Collectors.toList());
+        entries.invalidateAll(toRemove);
+        log.info("清除答案缓存: agentType={}, question={}, count={}", agentType, question, toRemove.size());
+        return toRemove.size();
+    }
+
+    /**
+     * 以普通消息帧回放缓存的答案，按固定字数分片、固定间隔发出
+     */
+    public Flux<StreamChatResponse> replay(String answer, Long messageId, Long conversationId) {
+        List<String> chunks = new ArrayList<>();
+        int[] codePoints = answer.codePoints().toArray();
+        for (int i = 0; i < codePoints.length; i += replayChunkChars) {
+            chunks.add(new String(codePoints, i, Math.min(replayChunkChars, codePoints.length - i)));
+        }
+        Flux<StreamChatResponse> frames = Flux.fromIterable(chunks)
+                .map(chunk -> StreamChatResponse.message(messageId, conversationId, chunk, "message"));
+        return replayIntervalMs > 0 ? frames.delayElements(Duration.ofMillis(replayIntervalMs)) : frames;
+    }
+
+    /**
+     * 启动后按咨询模版预热：逐条以正常 Agent 流程生成答案并写入缓存（默认关闭，会消耗模型调用）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarmFromTemplates() {
+        if (!prewarmEnabled || enabledAgents.isEmpty()) {
+            return;
+        }
+        List<ConsultTemplates> templates = consultTemplatesMapper.selectList(new LambdaQueryWrapper<ConsultTemplates>()
+                .eq(ConsultTemplates::getStatus, 1)
+                .in(ConsultTemplates::getAgentType, enabledAgents.stream().map(Enum::name).collect(Collectors.toList())));
+        log.info("开始预热答案缓存: templates={}, modelTypes={}", templates.size(), prewarmModelTypes);
+
+        Flux.fromIterable(templates)
+                .flatMapIterable(template -> prewarmModelTypes.stream()
+                        .map(modelType -> Map.entry(template, modelType))
+                        .collect(Collectors.toList()))
+                .concatMap(pair -> prewarmOne(pair.getKey(), pair.getValue()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .count()
+                .subscribe(count -> log.info("答案缓存预热完成: 成功={}, 缓存条目={}", count, entries.estimatedSize()));
+    }
+
+    private Mono<Boolean> prewarmOne(ConsultTemplates template, ModelType modelType) {
+        AgentType agentType = AgentType.valueOf(template.getAgentType());
+        String question = template.getQuestion();
+        if (lookup(agentType, modelType, question) != null) {
+            return Mono.empty();
+        }
+        ReActAgent agent = agentFactory.createAgent(agentType, modelType, null, new AgentContext(0L, 0L));
+        return agentFactory.getAgentInstance(agentType)
+                .streamChat(agent, question, 0L, 0L)
+                .filter(response -> "message".equals(response.getStatus()) && response.getContent() != null)
+                .map(StreamChatResponse::getContent)
+                .collect(Collectors.joining())
+                .timeout(Duration.ofSeconds(prewarmTimeoutSeconds))
+                .doOnNext(answer -> put(agentType, modelType, question, answer))
+                .map(answer -> true)
+                .onErrorResume(error -> {
+                    log.warn("预热答案失败: templateId={}, error={}", template.getId(), error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 文本归一化：全半角统一、小写、去除空白与标点、去除礼貌性前缀
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String nfkc = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(nfkc.length());
+        nfkc.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .forEach(sb::appendCodePoint);
+        return FILLER_PREFIX.matcher(sb).replaceFirst("");
+    }
+
+    /**
+     * 64 位 SimHash，特征为相邻字符二元组（中文无分词时比单字更能区分语序）
+     */
+    static long simHash(String normalized) {
+        int[] weights = new int[64];
+        int length = normalized.length();
+        if (length == 1) {
+            accumulate(weights, hash64(normalized.charAt(0), (char) 0));
+        }
+        for (int i = 0; i + 1 < length; i++) {
+            accumulate(weights, hash64(normalized.charAt(i), normalized.charAt(i + 1)));
+        }
+        long fingerprint = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    private static void accumulate(int[] weights, long hash) {
+        for (int bit = 0; bit < 64; bit++) {
+            weights[bit] += ((hash >>> bit) & 1L) != 0 ? 1 : -1;
+        }
+    }
+
+    /**
+     * 二元组哈希：合并两个字符后做 64 位混淆（MurmurHash3 fmix64）
+     */
+    private static long hash64(char first, char second) {
+        long h = ((long) first << 16) | second;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private Set<Long> candidates(String scope, long simHash) {
+        Set<Long> ids = new HashSet<>();
+        for (String bandKey : bandKeys(scope, simHash)) {
+            Set<Long> band = bandIndex.get(bandKey);
+            if (band != null) {
+                ids.addAll(band);
+            }
+        }
+        return ids;
+    }
+
+    private static List<String> bandKeys(String scope, long simHash) {
+        List<String> keys = new ArrayList<>(BANDS);
+        for (int band = 0; band < BANDS; band++) {
+            long value = (simHash >>> (band * BAND_BITS)) & ((1L << BAND_BITS) - 1);
+            keys.add(scope + "|" + band + "|" + value);
+        }
+        return keys;
+    }
+
+    private void unindex(CachedAnswer entry) {
+        exactIndex.remove(entry.scope() + "|" + entry.normalized(), entry.id());
+        for (String bandKey : bandKeys(entry.scope(), entry.simHash())) {
+            bandIndex.computeIfPresent(bandKey, (k, ids) -> {
+                ids.remove(entry.id());
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    /**
+     * 长度相差过大的问题不视为近似重复（短问题的 SimHash 区分度有限）
+     */
+    private static boolean isComparableLength(String a, String b) {
+        int min = Math.min(a.length(), b.length());
+        int max = Math.max(a.length(), b.length());
+        return min * 5 >= max * 4;
+    }
+
+    /**
+     * 问题中依次出现的阿拉伯数字与中文数字
+     */
+    private static String numbers(String normalized) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isDigit(c) || CN_NUMERALS.indexOf(c) >= 0) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String scope(AgentType agentType, ModelType modelType) {
+        return agentType.name() + ":" + modelType.name();
+    }
+
+    private void recordLookup(AgentType agentType, String result) {
+        meterRegistry.counter("chat.answer.cache.lookups", "agentType", agentType.name(), "result", result).increment();
+    }
+}
@@ -0,0 +1,418 @@
+package com.legal.assistant.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.legal.assistant.enums.ModelType;
+import com.legal.assistant.exception.BusinessException;
+import com.legal.assistant.exception.ErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对话准入控制
+ * 1. 每个 ModelType 一个全局并发预算，超出时排队
+ * 2. 每个用户一个令牌桶，限制请求速率；未登录请求按客户端地址各自计算，不共用同一个桶
+ * 3. 排队按加权公平队列（WFQ）出队：每个请求的完成标签 = max(虚拟时间, 该用户上一个标签) + 成本，
+ * 按标签从小到大放行，单个用户的大量请求不会饿死其他用户
+ */
+@Slf4j
+@Service
+public class ChatAdmissionService {
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${agent.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${agent.admission.default-concurrency:16}")
+    private int defaultConcurrency;
+
+    @Value("${agent.admission.max-queue-per-model:200}")
+    private int maxQueuePerModel;
+
+    @Value("${agent.admission.max-wait-seconds:120}")
+    private long maxWaitSeconds;
+
+    @Value("${agent.admission.queue-update-interval-ms:1000}")
+    private long queueUpdateIntervalMs;
+
+    @Value("${agent.admission.user-bucket.capacity:5}")
+    private int bucketCapacity;
+
+    @Value("${agent.admission.user-bucket.refill-per-minute:10}")
+    private double bucketRefillPerMinute;
+
+    /**
+     * 令牌桶最多保留的用户/客户端数，超出时淘汰最久未使用的
+     */
+    @Value("${agent.admission.user-bucket.max-entries:100000}")
+    private long bucketMaxEntries;
+
+    /**
+     * 首次估算排队时间时使用的单次运行时长
+     */
+    @Value("${agent.admission.initial-run-seconds:20}")
+    private long initialRunSeconds;
+
+    private final Map<ModelType, ModelLane> lanes = new EnumMap<>(ModelType.class);
+
+    private Cache<String, TokenBucket> userBuckets;
+
+    private Timer waitTimer;
+
+    /**
+     * 排队状态：position 为当前排在第几位（从 1 开始），estimatedWaitSeconds 为预计等待秒数
+     */
+    public record QueueStatus(int position, long estimatedWaitSeconds) {
+    }
+
+    @PostConstruct
+    public void init() {
+        userBuckets = Caffeine.newBuilder()
+                .maximumSize(bucketMaxEntries)
+                .expireAfterAccess(Duration.ofMinutes(30))
+                .build();
+        waitTimer = meterRegistry.timer("chat.admission.wait");
+        for (ModelType modelType : ModelType.values()) {
+            int capacity = environment.getProperty("agent.admission.model-concurrency." + modelType.getCode(),
+                    Integer.class, defaultConcurrency);
+            ModelLane lane = new ModelLane(modelType, capacity);
+            lanes.put(modelType, lane);
+            Tags tags = Tags.of("modelType", modelType.getCode());
+            meterRegistry.gauge("chat.admission.queue.depth", tags, lane, ModelLane::queueDepth);
+            meterRegistry.gauge("chat.admission.running", tags, lane, ModelLane::runningCount);
+        }
+        log.info("对话准入控制初始化: enabled={}, defaultConcurrency={}, maxQueuePerModel={}, bucketCapacity={}, refillPerMinute={}",
+                enabled, defaultConcurrency, maxQueuePerModel, bucketCapacity, bucketRefillPerMinute);
+    }
+
+    /**
+     * 申请运行名额：令牌不足或队列已满时抛出异常，否则立即放行或进入公平队列
+     *
+     * @param clientIp 客户端地址，未登录请求（userId 为空或 -1）按其区分令牌桶与公平队列
+     * @param cost     本次请求的成本（如深度思考运行时间更长），用于公平队列计算
+     */
+    public Ticket acquire(Long userId, String clientIp, ModelType modelType, double cost) {
+        ModelLane lane = lanes.get(modelType);
+        Ticket ticket = new Ticket(lane, userId, clientKey(userId, clientIp), cost);
+        if (!enabled) {
+            ticket.grantWithoutLimit();
+            return ticket;
+        }
+        TokenBucket bucket = userBuckets.get(ticket.clientKey,
+                k -> new TokenBucket(bucketCapacity, bucketRefillPerMinute / 60_000.0));
+        if (!bucket.tryConsume()) {
+            reject(modelType, "rate_limited");
+            throw new BusinessException(ErrorCode.RATE_LIMITED.getCode(), ErrorCode.RATE_LIMITED.getMessage());
+        }
+        lane.enqueue(ticket);
+        ticket.startQueueTimeout();
+        return ticket;
+    }
+
+    /**
+     * 令牌桶与公平队列的归属：登录用户按用户ID，未登录请求按客户端地址
+     */
+    private static String clientKey(Long userId, String clientIp) {
+        if (userId != null && userId > 0) {
+            return "user:" + userId;
+        }
+        return "anonymous:" + (clientIp != null ? clientIp : "unknown");
+    }
+
+    private void reject(ModelType modelType, String reason) {
+        meterRegistry.counter("chat.admission.rejected", "modelType", modelType.getCode(), "reason", reason).increment();
+    }
+
+    /**
+     * 一次准入申请
+     */
+    public final class Ticket {
+        private final ModelLane lane;
+        private final Long userId;
+        private final String clientKey;
+        private final double cost;
+        private final long sequence;
+        private final long enqueuedAt = System.nanoTime();
+        private final Sinks.One<Permit> grant = Sinks.one();
+        private double finishTag;
+
+        /**
+         * QUEUED -> GRANTED -> STARTED；QUEUED/GRANTED -> CANCELLED
+         */
+        private State state = State.QUEUED;
+        private Permit permit;
+        private Disposable queueTimeout;
+
+        private Ticket(ModelLane lane, Long userId, String clientKey, double cost) {
+            this.lane = lane;
+            this.userId = userId;
+            this.clientKey = clientKey;
+            this.cost = cost;
+            this.sequence = lane.sequence.incrementAndGet();
+        }
+
+        /**
+         * 排队期间定期发出的排队状态，放行或排队超时后结束；立即放行时为空
+         */
+        public Flux<QueueStatus> queueUpdates() {
+            return Flux.interval(Duration.ZERO, Duration.ofMillis(queueUpdateIntervalMs))
+                    .map(i -> lane.statusOf(this))
+                    .takeWhile(status -> status.position() > 0)
+                    .distinctUntilChanged()
+                    .takeUntilOther(grant.asMono().map(p -> true).onErrorReturn(true));
+        }
+
+        /**
+         * 放行时发出运行许可；排队超过最长等待时间时以 QUEUE_TIMEOUT 错误结束
+         */
+        public Mono<Permit> granted() {
+            return grant.asMono()
+                    .map(p -> {
+                        synchronized (lane) {
+                            if (state == State.GRANTED) {
+                                state = State.STARTED;
+                            }
+                        }
+                        return p;
+                    });
+        }
+
+        /**
+         * 从入队时开始计算最长等待时间（而非从订阅 granted() 时），超时仍未放行则退出队列并以错误结束
+         */
+        private void startQueueTimeout() {
+            synchronized (lane) {
+                if (state != State.QUEUED) {
+                    return;
+                }
+                queueTimeout = Mono.delay(Duration.ofSeconds(maxWaitSeconds)).subscribe(i -> {
+                    if (cancel()) {
+                        reject(lane.modelType, "timeout");
+                        grant.tryEmitError(new BusinessException(ErrorCode.QUEUE_TIMEOUT.getCode(),
+                                ErrorCode.QUEUE_TIMEOUT.getMessage()));
+                    }
+                });
+            }
+        }
+
+        private void stopQueueTimeout() {
+            if (queueTimeout != null) {
+                queueTimeout.dispose();
+            }
+        }
+
+        /**
+         * 客户端在开始运行前离开：退出队列，或归还已分配但未使用的许可
+         *
+         * @return 是否由本次调用取消
+         */
+        public boolean cancel() {
+            Permit unused = null;
+            synchronized (lane) {
+                if (state == State.QUEUED) {
+                    lane.queue.remove(this);
+                    state = State.CANCELLED;
+                    stopQueueTimeout();
+                    return true;
+                }
+                if (state == State.GRANTED) {
+                    state = State.CANCELLED;
+                    unused = permit;
+                }
+            }
+            if (unused != null) {
+                unused.release();
+                return true;
+            }
+            return false;
+        }
+
+        private void grantWithoutLimit() {
+            state = State.GRANTED;
+            permit = new Permit(null);
+            grant.tryEmitValue(permit);
+        }
+    }
+
+    private enum State {
+        QUEUED, GRANTED, STARTED, CANCELLED
+    }
+
+    /**
+     * 运行许可，运行结束（完成、出错或被停止）时归还；重复归还无副作用
+     */
+    public final class Permit {
+        private final ModelLane lane;
+        private final long startedAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit(ModelLane lane) {
+            this.lane = lane;
+        }
+
+        public void release() {
+            if (lane != null && released.compareAndSet(false, true)) {
+                lane.release(System.nanoTime() - startedAt);
+            }
+        }
+    }
+
+    /**
+     * 单个模型的并发预算与公平队列
+     */
+    private final class ModelLane {
+        private final ModelType modelType;
+        private final int capacity;
+        private final AtomicLong sequence = new AtomicLong();
+        private final PriorityQueue<Ticket> queue = new PriorityQueue<>((a, b) -> {
+            int byTag = Double.compare(a.finishTag, b.finishTag);
+            return byTag != 0 ? byTag : Long.compare(a.sequence, b.sequence);
+        });
+        /**
+         * 各用户（未登录时为各客户端）最近一个请求的完成标签
+         */
+        private final Map<String, Double> lastFinishTags = new HashMap<>();
+        private final Counter admittedCounter;
+        private int running;
+        private double virtualTime;
+        /**
+         * 运行时长的指数移动平均，用于估算排队时间
+         */
+        private double avgRunMillis;
+
+        ModelLane(ModelType modelType, int capacity) {
+            this.modelType = modelType;
+            this.capacity = capacity;
+            this.avgRunMillis = TimeUnit.SECONDS.toMillis(initialRunSeconds);
+            this.admittedCounter = meterRegistry.counter("chat.admission.admitted", "modelType", modelType.getCode());
+        }
+
+        void enqueue(Ticket ticket) {
+            Permit permit = null;
+            synchronized (this) {
+                if (running < capacity && queue.isEmpty()) {
+                    permit = grantLocked(ticket);
+                } else if (queue.size() >= maxQueuePerModel) {
+                    reject(modelType, "queue_full");
+                    throw new BusinessException(ErrorCode.QUEUE_FULL.getCode(), ErrorCode.QUEUE_FULL.getMessage());
+                } else {
+                    double start = Math.max(virtualTime, lastFinishTags.getOrDefault(ticket.clientKey, 0.0));
+                    ticket.finishTag = start + ticket.cost;
+                    lastFinishTags.put(ticket.clientKey, ticket.finishTag);
+                    queue.add(ticket);
+                    log.info("对话请求排队: modelType={}, userId={}, queueDepth={}, running={}",
+                            modelType.getCode(), ticket.userId, queue.size(), running);
+                }
+            }
+            if (permit != null) {
+                ticket.grant.tryEmitValue(permit);
+            }
+        }
+
+        void release(long runNanos) {
+            Ticket next;
+            Permit permit;
+            synchronized (this) {
+                running--;
+                avgRunMillis = avgRunMillis * 0.8 + TimeUnit.NANOSECONDS.toMillis(runNanos) * 0.2;
+                next = queue.poll();
+                if (next == null) {
+                    if (running == 0) {
+                        // 空闲时清理标签，避免长期累积
+                        lastFinishTags.clear();
+                    }
+                    return;
+                }
+                virtualTime = next.finishTag;
+                permit = grantLocked(next);
+            }
+            next.grant.tryEmitValue(permit);
+        }
+
+        private Permit grantLocked(Ticket ticket) {
+            running++;
+            ticket.state = State.GRANTED;
+            ticket.stopQueueTimeout();
+            ticket.permit = new Permit(this);
+            admittedCounter.increment();
+            waitTimer.record(System.nanoTime() - ticket.enqueuedAt, TimeUnit.NANOSECONDS);
+            return ticket.permit;
+        }
+
+        synchronized QueueStatus statusOf(Ticket ticket) {
+            if (ticket.state != State.QUEUED) {
+                return new QueueStatus(0, 0);
+            }
+            int position = 1;
+            for (Ticket other : queue) {
+                if (queue.comparator().compare(other, ticket) < 0) {
+                    position++;
+                }
+            }
+            long waitMillis = (long) Math.ceil((double) position / capacity * avgRunMillis);
+            return new QueueStatus(position, TimeUnit.MILLISECONDS.toSeconds(waitMillis));
+        }
+
+        synchronized int queueDepth() {
+            return queue.size();
+        }
+
+        synchronized int runningCount() {
+            return running;
+        }
+    }
+
+    /**
+     * 用户令牌桶：按固定速率补充，容量即允许的突发请求数
+     */
+    private static final class TokenBucket {
+        private final int capacity;
+        private final double refillPerMilli;
+        private double tokens;
+        private long lastRefillMillis;
+
+        TokenBucket(int capacity, double refillPerMilli) {
+            this.capacity = capacity;
+            this.refillPerMilli = refillPerMilli;
+            this.tokens = capacity;
+            this.lastRefillMillis = System.currentTimeMillis();
+        }
+
+        synchronized boolean tryConsume() {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(capacity, tokens + (now - lastRefillMillis) * refillPerMilli);
+            lastRefillMillis = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.legal.assistant.service;
+
+import com.legal.assistant.entity.Message;
+import com.legal.assistant.entity.Report;
+import com.legal.assistant.mapper.MessageMapper;
+import com.legal.assistant.mapper.ReportMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 对话结果异步持久化管道
+ * 流式结束后的消息更新、报告写入和 Agent 会话保存不再阻塞响应流：
+ * 写入请求进入有界队列，同一 key 的重复写入在出队前合并，工作线程按批次以 JDBC batch 落库；
+ * 队列满时转交有界的溢出线程池写入，溢出线程池也满时丢弃并计数，提交线程（响应流信号线程、缓存淘汰回调）从不阻塞或执行写入。
+ */
+@Slf4j
+@Service
+public class ChatPersistenceService {
+
+    private static final String MESSAGE_KEY_PREFIX = "message:";
+    private static final String SESSION_KEY_PREFIX = "session:";
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private MessageMapper messageMapper;
+
+    @Autowired
+    private ReportMapper reportMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${agent.persistence.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${agent.persistence.workers:2}")
+    private int workerCount;
+
+    @Value("${agent.persistence.batch-size:100}")
+    private int batchSize;
+
+    @Value("${agent.persistence.overflow-threads:1}")
+    private int overflowThreads;
+
+    @Value("${agent.persistence.overflow-capacity:1000}")
+    private int overflowCapacity;
+
+    /**
+     * 待写入的 key 队列；同一 key 在出队前只入队一次
+     */
+    private BlockingQueue<String> queue;
+
+    /**
+     * 待写入内容，key -> 合并后的写入
+     */
+    private final ConcurrentHashMap<String, PendingWrite> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 会话最近一次提交的保存的完成信号，供下一轮对话在复用缓存前等待；
+     * 每次保存排在上一次之后完成，因此等待最新的信号即等待了此前提交的全部保存
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> sessionSaveFutures = new ConcurrentHashMap<>();
+
+    private ExecutorService workers;
+
+    /**
+     * 队列满时的溢出写入线程池，线程数与等待队列均有界
+     */
+    private ThreadPoolExecutor overflow;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    private Counter submittedCounter;
+    private Counter coalescedCounter;
+    private Counter overflowCounter;
+    private Counter droppedCounter;
+    private Counter failedCounter;
+    private Timer flushTimer;
+
+    /**
+     * 一次待写入：消息更新（可附带报告插入）或会话保存
+     */
+    private static final class PendingWrite {
+        final Message message;
+        final List<Report> reports;
+        final SessionSave sessionSave;
+
+        PendingWrite(Message message, List<Report> reports, SessionSave sessionSave) {
+            this.message = message;
+            this.reports = reports;
+            this.sessionSave = sessionSave;
+        }
+
+        /**
+         * 合并同一 key 的后续写入：消息与会话保存取最新，报告累加不丢失
+         */
+        PendingWrite merge(PendingWrite next) {
+            List<Report> mergedReports = reports;
+            if (!next.reports.isEmpty()) {
+                mergedReports = new ArrayList<>(reports);
+                mergedReports.addAll(next.reports);
+            }
+            return new PendingWrite(
+                    next.message != null ? next.message : message,
+                    mergedReports,
+                    sessionSave == null ? next.sessionSave
+                            : next.sessionSave == null ? sessionSave : sessionSave.merge(next.sessionSave));
+        }
+    }
+
+    /**
+     * 一次会话保存：在 after 完成（同一会话上一次提交的保存结束）后执行，执行结束时完成 done
+     */
+    private record SessionSave(Runnable save, CompletableFuture<Void> after, CompletableFuture<Void> done) {
+
+        /**
+         * 出队前合并的保存只执行最新一次，仍排在最早一次的前序保存之后；被合并的保存随之完成
+         */
+        SessionSave merge(SessionSave next) {
+            next.done.whenComplete((result, error) -> done.complete(null));
+            return new SessionSave(next.save, after, next.done);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        submittedCounter = meterRegistry.counter("chat.persistence.submitted");
+        coalescedCounter = meterRegistry.counter("chat.persistence.coalesced");
+        overflowCounter = meterRegistry.counter("chat.persistence.overflow");
+        droppedCounter = meterRegistry.counter("chat.persistence.dropped");
+        failedCounter = meterRegistry.counter("chat.persistence.failed");
+        flushTimer = meterRegistry.timer("chat.persistence.flush");
+        meterRegistry.gauge("chat.persistence.queue.depth", queue, BlockingQueue::size);
+
+        workers = Executors.newFixedThreadPool(workerCount, new CustomizableThreadFactory("chat-persist-"));
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::workerLoop);
+        }
+        overflow = new ThreadPoolExecutor(overflowThreads, overflowThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(overflowCapacity), new CustomizableThreadFactory("chat-persist-overflow-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("对话持久化管道启动: queueCapacity={}, workers={}, batchSize={}, overflowThreads={}, overflowCapacity={}",
+                queueCapacity, workerCount, batchSize, overflowThreads, overflowCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running.set(false);
+        workers.shutdown();
+        overflow.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+            if (!overflow.awaitTermination(10, TimeUnit.SECONDS)) {
+                overflow.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 停机时同步写完剩余内容
+        List<String> keys = new ArrayList<>();
+        queue.drainTo(keys);
+        flush(keys);
+        log.info("对话持久化管道已关闭: 剩余写入数={}", keys.size());
+    }
+
+    /**
+     * 提交消息更新，可附带新生成的报告
+     */
+    public void submitMessageUpdate(Message message, Report report) {
+        List<Report> reports = report != null ? List.of(report) : List.of();
+        submit(MESSAGE_KEY_PREFIX + message.getId(), new PendingWrite(message, reports, null));
+    }
+
+    /**
+     * 提交 Agent 会话保存
+     */
+    public void submitSessionSave(String sessionKey, Runnable save) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = sessionSaveFutures.put(sessionKey, done);
+        CompletableFuture<Void> after = previous != null ? previous : CompletableFuture.completedFuture(null);
+        submit(SESSION_KEY_PREFIX + sessionKey, new PendingWrite(null, List.of(), new SessionSave(save, after, done)));
+    }
+
+    /**
+     * 等待该会话尚未完成的保存，避免新一轮对话与后台序列化并发修改记忆
+     *
+     * @return 是否已无待完成的保存
+     */
+    public boolean awaitSessionSave(String sessionKey, long timeoutMs) {
+        CompletableFuture<Void> future = sessionSaveFutures.get(sessionKey);
+        if (future == null) {
+            return true;
+        }
+        try {
+            future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            log.warn("等待会话保存超时: sessionKey={}, timeoutMs={}", sessionKey, timeoutMs);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    private void submit(String key, PendingWrite write) {
+        submittedCounter.increment();
+        boolean[] coalesced = {false};
+        pending.compute(key, (k, existing) -> {
+            if (existing == null) {
+                return write;
+            }
+            coalesced[0] = true;
+            return existing.merge(write);
+        });
+        if (coalesced[0]) {
+            // 已在队列中，合并后等待出队
+            coalescedCounter.increment();
+            return;
+        }
+
+        if (!running.get()) {
+            // 已停机：工作线程不再出队，直接写入
+            flush(List.of(key));
+            return;
+        }
+        if (queue.offer(key)) {
+            return;
+        }
+        // 队列已满：提交线程可能是响应流信号线程或缓存淘汰回调，不能在其上阻塞或写库
+        try {
+            overflow.execute(() -> flush(List.of(key)));
+            overflowCounter.increment();
+            log.warn("持久化队列已满，转交溢出线程写入: key={}, queueSize={}", key, queue.size());
+        } catch (RejectedExecutionException e) {
+            droppedCounter.increment();
+            log.error("持久化队列与溢出线程均已满，丢弃写入: key={}, queueSize={}", key, queue.size());
+            discard(key);
+        }
+    }
+
+    /**
+     * 丢弃一个未入队的写入；会话保存的完成信号照常完成，避免下一轮对话等待超时
+     */
+    private void discard(String key) {
+        PendingWrite write = pending.remove(key);
+        if (write != null && write.sessionSave != null) {
+            String sessionKey = key.substring(SESSION_KEY_PREFIX.length());
+            sessionSaveFutures.remove(sessionKey, write.sessionSave.done());
+            write.sessionSave.done().complete(null);
+        }
+    }
+
+    private void workerLoop() {
+        List<String> keys = new ArrayList<>(batchSize);
+        while (running.get() || !queue.isEmpty()) {
+            try {
+                String first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                keys.add(first);
+                queue.drainTo(keys, batchSize - 1);
+                flush(keys);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("持久化工作线程异常", e);
+            } finally {
+                keys.clear();
+            }
+        }
+    }
+
+    /**
+     * 写入一批 key：会话逐个保存，消息更新与报告插入合并为一次 JDBC batch
+     */
+    private void flush(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        List<Message> messages = new ArrayList<>();
+        List<Report> reports = new ArrayList<>();
+        for (String key : keys) {
+            PendingWrite write = pending.remove(key);
+            if (write == null) {
+                continue;
+            }
+            if (write.sessionSave != null) {
+                runSessionSave(key.substring(SESSION_KEY_PREFIX.length()), write.sessionSave);
+            }
+            if (write.message != null) {
+                messages.add(write.message);
+            }
+            reports.addAll(write.reports);
+        }
+        if (!messages.isEmpty() || !reports.isEmpty()) {
+            writeBatch(messages, reports);
+        }
+        sample.stop(flushTimer);
+    }
+
+    /**
+     * 同一会话的保存按提交顺序串行：上一次保存仍在其他工作线程执行时，本次排在其后由该线程接着执行
+     */
+    private void runSessionSave(String sessionKey, SessionSave sessionSave) {
+        sessionSave.after().whenComplete((result, error) -> {
+            try {
+                sessionSave.save().run();
+            } catch (Exception e) {
+                failedCounter.increment();
+                log.error("异步保存 Agent 会话失败: sessionKey={}", sessionKey, e);
+            } finally {
+                // 期间又提交了新的保存时信号已被替换，只移除仍属于本次保存的信号
+                sessionSaveFutures.remove(sessionKey, sessionSave.done());
+                sessionSave.done().complete(null);
+            }
+        });
+    }
+
+    private void writeBatch(List<Message> messages, List<Report> reports) {
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+            ReportMapper batchReportMapper = session.getMapper(ReportMapper.class);
+            MessageMapper batchMessageMapper = session.getMapper(MessageMapper.class);
+            for (Report report : reports) {
+                batchReportMapper.insert(report);
+            }
+            for (Message message : messages) {
+                batchMessageMapper.updateById(message);
+            }
+            session.flushStatements();
+            session.commit();
+            log.debug("批量持久化完成: messages={}, reports={}", messages.size(), reports.size());
+        } catch (Exception e) {
+            log.error("批量持久化失败，改为逐条写入: messages={}, reports={}", messages.size(), reports.size(), e);
+            writeOneByOne(messages, reports);
+        }
+    }
+
+    private void writeOneByOne(List<Message> messages, List<Report> reports) {
+        for (Report report : reports) {
+            try {
+                reportMapper.insert(report);
+            } catch (Exception e) {
+                failedCounter.increment();
+                log.error("保存报告失败: reportId={}", report.getReportId(), e);
+            }
+        }
+        for (Message message : messages) {
+            try {
+                messageMapper.updateById(message);
+            } catch (Exception e) {
+                failedCounter.increment();
+                log.error("更新消息失败: messageId={}", message.getId(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.legal.assistant.service;
+
+import com.legal.assistant.dto.response.StreamChatResponse;
+import com.legal.assistant.exception.BusinessException;
+import com.legal.assistant.exception.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可续传的流式对话注册表
+ * 每条生成中的消息（messageId）对应一个热的多播流，帧带递增序号并保存在有界回放缓冲区中，
+ * 客户端断线后可携带 Last-Event-ID 重新订阅，从断点继续接收；断点之后的帧已被挤出缓冲区时先发送一个 gap 帧。
+ * 无订阅者时生成继续运行一段宽限期。
+ */
+@Slf4j
+@Component
+public class ChatStreamRegistry {
+
+    private static final Sinks.EmitFailureHandler EMIT_RETRY = Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100));
+
+    @Value("${agent.stream.replay-buffer-size:2048}")
+    private int replayBufferSize;
+
+    @Value("${agent.stream.resume-grace-seconds:60}")
+    private long resumeGraceSeconds;
+
+    @Value("${agent.stream.retention-seconds:60}")
+    private long retentionSeconds;
+
+    private final ConcurrentHashMap<Long, StreamHub> hubs = new ConcurrentHashMap<>();
+
+    private static final class StreamHub {
+        final Long userId;
+        final Long messageId;
+        final Sinks.Many<ServerSentEvent<StreamChatResponse>> sink;
+        final AtomicLong sequence = new AtomicLong();
+        final AtomicInteger subscribers = new AtomicInteger();
+        volatile Disposable upstream;
+        volatile Disposable graceTimer;
+        volatile boolean terminated;
+
+        StreamHub(Long userId, Long messageId, int replayBufferSize) {
+            this.userId = userId;
+            this.messageId = messageId;
+            this.sink = Sinks.many().replay().limit(replayBufferSize);
+        }
+    }
+
+    /**
+     * 发布一条生成流：立即在后台订阅上游，返回首个订阅者使用的 SSE 流
+     *
+     * @param userId    所属用户ID
+     * @param messageId 消息ID
+     * @param upstream  完整的对话流水线（含落库等副作用）
+     */
+    public Flux<ServerSentEvent<StreamChatResponse>> publish(Long userId, Long messageId, Flux<StreamChatResponse> upstream) {
+        StreamHub hub = new StreamHub(userId, messageId, replayBufferSize);
+        hubs.put(messageId, hub);
+
+        Flux<ServerSentEvent<StreamChatResponse>> first = subscribe(hub, -1L);
+        hub.upstream = upstream.subscribe(
+                response -> hub.sink.emitNext(toEvent(hub, response), EMIT_RETRY),
+                error -> {
+                    log.error("流式对话上游异常: messageId={}", messageId, error);
+                    terminate(hub);
+                },
+                () -> terminate(hub)
+        );
+        // 若首个订阅者迟迟未连接，同样按宽限期处理
+        scheduleGraceCheck(hub);
+        return first;
+    }
+
+    /**
+     * 断线重连：从 lastEventId 之后继续接收
+     *
+     * @param userId      当前用户ID
+     * @param messageId   消息ID
+     * @param lastEventId 客户端已收到的最后一个事件序号，为空时从缓冲区起点回放
+     */
+    public Flux<ServerSentEvent<StreamChatResponse>> resume(Long userId, Long messageId, Long lastEventId) {
+        StreamHub hub = hubs.get(messageId);
+        if (hub == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND.getCode(), "流式对话不存在或已结束");
+        }
+        if (!hub.userId.equals(userId)) {
+            throw new BusinessException(ErrorCode.FORBIDDEN.getCode(), "无权限访问该对话");
+        }
+        log.info("续传流式对话: messageId={}, lastEventId={}, 当前序号={}", messageId, lastEventId, hub.sequence.get());
+        return subscribe(hub, lastEventId != null ? lastEventId : -1L);
+    }
+
+    /**
+     * 消息是否仍有可续传的流
+     */
+    public boolean isResumable(Long messageId) {
+        StreamHub hub = hubs.get(messageId);
+        return hub != null && !hub.terminated;
+    }
+
+    private Flux<ServerSentEvent<StreamChatResponse>> subscribe(StreamHub hub, long lastEventId) {
+        long expectedSequence = Math.max(lastEventId, 0L) + 1;
+        return hub.sink.asFlux()
+                .filter(event -> sequenceOf(event) > lastEventId)
+                .switchOnFirst((signal, frames) -> {
+                    ServerSentEvent<StreamChatResponse> first = signal.get();
+                    if (first == null || sequenceOf(first) <= expectedSequence) {
+                        return frames;
+                    }
+                    // 回放缓冲区只保留最近的帧，断点之后的帧已丢失：显式告知客户端，而不是静默跳过
+                    log.warn("续传缺口: messageId={}, 期望序号={}, 缓冲区起始序号={}",
+                            hub.messageId, expectedSequence, sequenceOf(first));
+                    StreamChatResponse data = first.data();
+                    ServerSentEvent<StreamChatResponse> gap = ServerSentEvent.builder(
+                            StreamChatResponse.gap(hub.messageId, data != null ? data.getConversationId() : null)).build();
+                    return Flux.concat(Mono.just(gap), frames);
+                })
+                .doOnSubscribe(s -> {
+                    hub.subscribers.incrementAndGet();
+                    Disposable timer = hub.graceTimer;
+                    if (timer != null) {
+                        timer.dispose();
+                    }
+                })
+                .doFinally(signal -> {
+                    if (hub.subscribers.decrementAndGet() == 0 && !hub.terminated) {
+                        log.info("流式对话订阅者全部断开，进入宽限期: messageId={}, graceSeconds={}",
+                                hub.messageId, resumeGraceSeconds);
+                        scheduleGraceCheck(hub);
+                    }
+                });
+    }
+
+    private void scheduleGraceCheck(StreamHub hub) {
+        Disposable previous = hub.graceTimer;
+        if (previous != null) {
+            previous.dispose();
+        }
+        hub.graceTimer = Mono.delay(Duration.ofSeconds(resumeGraceSeconds))
+                .subscribe(tick -> {
+                    if (hub.subscribers.get() == 0 && !hub.terminated) {
+                        log.info("宽限期内无订阅者重连，取消生成: messageId={}", hub.messageId);
+                        Disposable upstream = hub.upstream;
+                        if (upstream != null) {
+                            upstream.dispose();
+                        }
+                        terminate(hub);
+                    }
+                });
+    }
+
+    private void terminate(StreamHub hub) {
+        if (hub.terminated) {
+            return;
+        }
+        hub.terminated = true;
+        hub.sink.emitComplete(EMIT_RETRY);
+        // 结束后保留一段时间，供晚到的重连读取尾部帧
+        Mono.delay(Duration.ofSeconds(retentionSeconds))
+                .subscribe(tick -> hubs.remove(hub.messageId, hub));
+    }
+
+    private static ServerSentEvent<StreamChatResponse> toEvent(StreamHub hub, StreamChatResponse response) {
+        return ServerSentEvent.builder(response)
+                .id(String.valueOf(hub.sequence.incrementAndGet()))
+                .build();
+    }
+
+    private static long sequenceOf(ServerSentEvent<StreamChatResponse> event) {
+        return event.id() != null ? Long.parseLong(event.id()) : 0L;
+    }
+}
@@ -0,0 +1,180 @@
+package com.legal.assistant.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 集群级活跃流注册表
+ * 在 Redis 中记录每个会话的活跃流由哪个节点持有，停止请求通过 Redis pub/sub 转发到持有节点；
+ * 节点与其持有的流定期续期心跳，节点宕机后记录随 TTL 自动失效。
+ */
+@Slf4j
+@Component
+public class ClusterStreamRegistry implements MessageListener {
+
+    private static final String OWNER_KEY_PREFIX = "chat:stream:owner:";
+    private static final String NODE_KEY_PREFIX = "chat:stream:node:";
+    private static final String STOP_CHANNEL = "chat:stream:stop";
+
+    /**
+     * 仅当持有者仍为本节点时才删除，避免误删其他节点新建的流
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${agent.stream.cluster.heartbeat-seconds:10}")
+    private long heartbeatSeconds;
+
+    /**
+     * 本节点持有的活跃会话
+     */
+    private final Set<Long> ownedConversations = ConcurrentHashMap.newKeySet();
+
+    private final String nodeId = buildNodeId();
+
+    private volatile Consumer<Long> stopHandler = conversationId -> { };
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(STOP_CHANNEL));
+        heartbeat();
+        log.info("集群流注册表初始化: nodeId={}, heartbeatSeconds={}", nodeId, heartbeatSeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Long conversationId : ownedConversations) {
+            release(conversationId);
+        }
+        redisTemplate.delete(NODE_KEY_PREFIX + nodeId);
+    }
+
+    /**
+     * 设置收到本节点流的停止信号时的处理逻辑
+     */
+    public void setStopHandler(Consumer<Long> stopHandler) {
+        this.stopHandler = stopHandler;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 登记本节点持有会话的活跃流
+     */
+    public void register(Long conversationId) {
+        ownedConversations.add(conversationId);
+        redisTemplate.opsForValue().set(OWNER_KEY_PREFIX + conversationId, nodeId, ttlSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * 注销本节点持有的活跃流
+     */
+    public void release(Long conversationId) {
+        ownedConversations.remove(conversationId);
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT,
+                    Collections.singletonList(OWNER_KEY_PREFIX + conversationId), nodeId);
+        } catch (Exception e) {
+            log.warn("注销集群活跃流失败: conversationId={}, error={}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * 集群内是否有节点持有该会话的活跃流（持有节点心跳失效视为无）
+     */
+    public boolean isActive(Long conversationId) {
+        if (ownedConversations.contains(conversationId)) {
+            return true;
+        }
+        String owner = redisTemplate.opsForValue().get(OWNER_KEY_PREFIX + conversationId);
+        return owner != null && Boolean.TRUE.equals(redisTemplate.hasKey(NODE_KEY_PREFIX + owner));
+    }
+
+    /**
+     * 向集群广播停止信号，由持有该流的节点执行停止
+     */
+    public void publishStop(Long conversationId) {
+        redisTemplate.convertAndSend(STOP_CHANNEL, String.valueOf(conversationId));
+        log.info("广播停止信号: conversationId={}, fromNode={}", conversationId, nodeId);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        Long conversationId;
+        try {
+            conversationId = Long.valueOf(body.trim());
+        } catch (NumberFormatException e) {
+            log.warn("忽略非法停止信号: {}", body);
+            return;
+        }
+        if (ownedConversations.contains(conversationId)) {
+            log.info("收到集群停止信号: conversationId={}, nodeId={}", conversationId, nodeId);
+            stopHandler.accept(conversationId);
+        }
+    }
+
+    /**
+     * 心跳：续期节点存活标记与本节点持有的全部流
+     */
+    @Scheduled(fixedDelayString = "${agent.stream.cluster.heartbeat-seconds:10}", timeUnit = TimeUnit.SECONDS)
+    public void heartbeat() {
+        try {
+            long ttl = ttlSeconds();
+            redisTemplate.opsForValue().set(NODE_KEY_PREFIX + nodeId, String.valueOf(System.currentTimeMillis()), ttl, TimeUnit.SECONDS);
+            for (Long conversationId : ownedConversations) {
+                redisTemplate.expire(OWNER_KEY_PREFIX + conversationId, ttl, TimeUnit.SECONDS);
+            }
+        } catch (Exception e) {
+            log.warn("集群流心跳失败: nodeId={}, error={}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * 记录过期时间为 3 个心跳周期，容忍偶发的心跳延迟
+     */
+    private long ttlSeconds() {
+        return heartbeatSeconds * 3;
+    }
+
+    private static String buildNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        return host + ":" + pid + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -1,10 +1,7 @@
 package com.legal.assistant.service;
 
-import cn.hutool.core.date.DateUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.legal.assistant.dto.request.ConversationRequest;
 import com.legal.assistant.dto.request.MessageFeedbackRequest;
 import com.legal.assistant.dto.response.ConversationListResponse;
@@ -16,52 +13,68 @@ import com.legal.assistant.exception.ErrorCode;
 import com.legal.assistant.mapper.ConversationMapper;
 import com.legal.assistant.mapper.MessageMapper;
 import com.legal.assistant.utils.TimeUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.DateUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class ConversationService {
 
-    @Value("${ai.dashscope.api-key}")
-    private String apiKey;
-
     @Autowired
     private ConversationMapper conversationMapper;
 
     @Autowired
     private MessageMapper messageMapper;
 
+    @Value("${agent.title.registry-ttl-seconds:60}")
+    private long titleRegistryTtlSeconds;
+
+    @Value("${agent.title.timeout-seconds:15}")
+    private long titleTimeoutSeconds;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Autowired
+    private LlmGateway llmGateway;
+
     /**
-     * 用于缓存异步生成的会话标题
-     * key: conversationId, value: CompletableFuture<String>
+     * 异步生成中的会话标题登记表，key: conversationId
+     * 写入后按 TTL 由调度器自动清理，无需额外的清理线程
      */
-    private final ConcurrentHashMap<Long, CompletableFuture<String>> titleFutureCache = new ConcurrentHashMap<>();
-
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Cache<Long, CompletableFuture<String>> titleFutures;
+
+    @PostConstruct
+    public void initTitleRegistry() {
+        titleFutures = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(titleRegistryTtlSeconds))
+                .scheduler(Scheduler.systemScheduler())
+                .build();
+    }
 
-    private static final String DASHSCOPE_API_URL = "https://dashscope.aliyuncs.com/compatible-mode/v1/chat/completions";
+    private static final String TITLE_MODEL = "qwen-turbo";  // 使用较快的模型
     
     /**
      * 创建会话
@@ -75,6 +88,7 @@ public class ConversationService {
         conversation.setModelType(request.getModelType());
         conversation.setIsPinned(false);
         conversation.setIsDeleted(false);
+        conversation.setMessageCount(0);
         conversation.setCreatedAt(LocalDateTime.now());
         conversation.setUpdatedAt(LocalDateTime.now());
         
@@ -95,6 +109,7 @@ public class ConversationService {
      * 1. 置顶的会话：全部返回，不分页
      * 2. 今日的会话：全部返回，不分页
      * 3. 历史会话：不包含置顶和今日的，按更新时间分页（page/size/total/totalPages）
+     * 三部分由一次查询取回，历史总数另需一次计数查询（首页不满一页时省略）
      *
      * @param userId 用户ID
      * @param page   历史会话页码，从 1 开始
@@ -110,47 +125,28 @@ public class ConversationService {
         if (size > 100) {
             size = 100;
         }
-        String today = DateUtil.today();
-
-
-        // 1. 置顶的会话：全部，不分页
-        LambdaQueryWrapper<Conversation> pinnedWrapper = new LambdaQueryWrapper<>();
-        pinnedWrapper.eq(Conversation::getUserId, userId)
-                .eq(Conversation::getIsDeleted, false)
-                .eq(Conversation::getIsPinned, true)
-                .orderByDesc(Conversation::getUpdatedAt);
-        List<Conversation> pinnedRows = conversationMapper.selectList(pinnedWrapper);
-        List<ConversationResponse> pinnedList = toConversationResponseList(pinnedRows);
-
-        // 2. 今日的会话：非置顶且 updated_at 在 [今日 00:00:00, 明日 00:00:00)，全部，不分页
-        LambdaQueryWrapper<Conversation> todayWrapper = new LambdaQueryWrapper<>();
-        todayWrapper.eq(Conversation::getUserId, userId)
-                .eq(Conversation::getIsDeleted, false)
-                .eq(Conversation::getIsPinned, false)
-                .ge(Conversation::getUpdatedAt, today+" 00:00:00")
-                .lt(Conversation::getUpdatedAt, today+ " 23:59:59")
-                .orderByDesc(Conversation::getUpdatedAt);
-        List<Conversation> todayRows = conversationMapper.selectList(todayWrapper);
-        List<ConversationResponse> todayList = toConversationResponseList(todayRows);
-
-        // 3. 历史会话：非置顶且非今日（updated_at 在今天之前），分页
-        LambdaQueryWrapper<Conversation> historyCountWrapper = new LambdaQueryWrapper<>();
-        historyCountWrapper.eq(Conversation::getUserId, userId)
-                .eq(Conversation::getIsDeleted, false)
-                .eq(Conversation::getIsPinned, false)
-                .lt(Conversation::getUpdatedAt, today+" 00:00:00");
-        Long total = conversationMapper.selectCount(historyCountWrapper);
-
-        LambdaQueryWrapper<Conversation> historyWrapper = new LambdaQueryWrapper<>();
-        historyWrapper.eq(Conversation::getUserId, userId)
-                .eq(Conversation::getIsDeleted, false)
-                .eq(Conversation::getIsPinned, false)
-                .lt(Conversation::getUpdatedAt, today+" 00:00:00")
-                .orderByDesc(Conversation::getUpdatedAt);
+        LocalDateTime todayStart = LocalDate.now().atStartOfDay();
         int offset = (page - 1) * size;
-        historyWrapper.last("LIMIT " + size + " OFFSET " + offset);
-        List<Conversation> historyRows = conversationMapper.selectList(historyWrapper);
-        List<ConversationResponse> historyList = toConversationResponseList(historyRows);
+
+        // 一次查询取回置顶（全部）、今日（全部，非置顶且今日有更新）与历史（非置顶且今日之前，分页）三部分，
+        // 消息数为会话表上维护的字段，无需逐条统计
+        List<ConversationResponse> pinnedList = new ArrayList<>();
+        List<ConversationResponse> todayList = new ArrayList<>();
+        List<ConversationResponse> historyList = new ArrayList<>();
+        for (Conversation conv : conversationMapper.selectSidebar(userId, todayStart, size, offset)) {
+            ConversationResponse response = toConversationResponse(conv);
+            if (Boolean.TRUE.equals(conv.getIsPinned())) {
+                pinnedList.add(response);
+            } else if (!conv.getUpdatedAt().isBefore(todayStart)) {
+                todayList.add(response);
+            } else {
+                historyList.add(response);
+            }
+        }
+        // 首页历史不满一页时无需再统计总数
+        long total = page == 1 && historyList.size() < size
+                ? historyList.size()
+                : conversationMapper.countHistory(userId, todayStart);
 
         int totalPages = total == 0 ? 0 : (int) ((total + size - 1) / size);
 
@@ -166,18 +162,24 @@ public class ConversationService {
         return listResponse;
     }
 
-    private List<ConversationResponse> toConversationResponseList(List<Conversation> conversations) {
-        List<ConversationResponse> list = new ArrayList<>();
-        for (Conversation conv : conversations) {
-            ConversationResponse response = new ConversationResponse();
-            BeanUtils.copyProperties(conv, response);
-            response.setCreatedAt(TimeUtils.toTimestamp(conv.getCreatedAt()));
-            response.setUpdatedAt(TimeUtils.toTimestamp(conv.getUpdatedAt()));
-            Integer messageCount = messageMapper.countByConversationId(conv.getId());
-            response.setMessageCount(messageCount != null ? messageCount : 0);
-            list.add(response);
-        }
-        return list;
+    private ConversationResponse toConversationResponse(Conversation conv) {
+        ConversationResponse response = new ConversationResponse();
+        BeanUtils.copyProperties(conv, response);
+        response.setCreatedAt(TimeUtils.toTimestamp(conv.getCreatedAt()));
+        response.setUpdatedAt(TimeUtils.toTimestamp(conv.getUpdatedAt()));
+        response.setLastMessageAt(conv.getLastMessageAt() != null ? TimeUtils.toTimestamp(conv.getLastMessageAt()) : null);
+        response.setMessageCount(conv.getMessageCount() != null ? conv.getMessageCount() : 0);
+        return response;
+    }
+
+    /**
+     * 新增消息并在同一事务内累加会话的消息数、记录最近消息时间
+     */
+    @Transactional
+    public void addMessage(Message message) {
+        messageMapper.insert(message);
+        conversationMapper.incrementMessageCount(message.getConversationId(),
+                message.getCreatedAt() != null ? message.getCreatedAt() : LocalDateTime.now());
     }
     
     /**
@@ -195,14 +197,7 @@ public class ConversationService {
             throw new BusinessException(ErrorCode.FORBIDDEN.getCode(), "无权限访问该会话");
         }
         
-        ConversationResponse response = new ConversationResponse();
-        BeanUtils.copyProperties(conversation, response);
-        response.setCreatedAt(TimeUtils.toTimestamp(conversation.getCreatedAt()));
-        response.setUpdatedAt(TimeUtils.toTimestamp(conversation.getUpdatedAt()));
-        Integer messageCount = messageMapper.countByConversationId(conversationId);
-        response.setMessageCount(messageCount != null ? messageCount : 0);
-        
-        return response;
+        return toConversationResponse(conversation);
     }
     
     /**
@@ -346,158 +341,107 @@ public class ConversationService {
 
     /**
      * 异步生成会话标题（调用大模型）
-     * 该方法会在后台异步执行，生成完成后自动更新数据库
+     * 在后台线程池执行，生成完成后自动更新数据库；结果可通过 {@link #getGeneratedTitleMono(Long)} 非阻塞获取
      *
      * @param conversationId 会话ID
      * @param question       用户问题
      */
-    @Async
     public void generateTitleAsync(Long conversationId, String question) {
         if (question == null || question.isEmpty()) {
             log.debug("问题为空，跳过异步标题生成: conversationId={}", conversationId);
             return;
         }
 
-        // 创建 CompletableFuture 并存入缓存
-        CompletableFuture<String> future = CompletableFuture.supplyAsync(() -> {
-            try {
-                log.info("开始异步生成会话标题: conversationId={}", conversationId);
-
-                // 构建提示词
-                String truncatedQuestion = question.length() > 200 ? question.substring(0, 200) + "..." : question;
-                String prompt = String.format(
-                        "请根据以下用户问题，生成一个简洁的会话标题（不超过20个字，不要加引号，直接输出标题）：\n\n用户问题：%s",
-                        truncatedQuestion
-                );
-
-                // 调用 DashScope API 生成标题
-                String generatedTitle = callDashScopeApi(prompt);
-
-                // 清理标题（去除引号、换行等）
-                if (generatedTitle != null) {
-                    generatedTitle = generatedTitle.trim()
-                            .replaceAll("^[\"'\"\"'']+|[\"'\"\"'']+$", "")  // 去除首尾引号
-                            .replaceAll("[\\r\\n]+", " ")  // 替换换行为空格
-                            .trim();
-
-                    // 限制长度
-                    if (generatedTitle.length() > 50) {
-                        generatedTitle = generatedTitle.substring(0, 50) + "...";
-                    }
-                }
+        CompletableFuture<String> future = CompletableFuture.supplyAsync(
+                () -> generateAndSaveTitle(conversationId, question), taskExecutor);
+        titleFutures.put(conversationId, future);
+    }
 
-                // 如果生成失败，使用简单标题
-                if (generatedTitle == null || generatedTitle.isEmpty()) {
-                    generatedTitle = generateTitle(question);
+    private String generateAndSaveTitle(Long conversationId, String question) {
+        try {
+            log.info("开始异步生成会话标题: conversationId={}", conversationId);
+
+            // 构建提示词
+            String truncatedQuestion = question.length() > 200 ? question.substring(0, 200) + "..." : question;
+            String prompt = String.format(
+                    "请根据以下用户问题，生成一个简洁的会话标题（不超过20个字，不要加引号，直接输出标题）：\n\n用户问题：%s",
+                    truncatedQuestion
+            );
+
+            // 调用 DashScope API 生成标题
+            String generatedTitle = callDashScopeApi(prompt);
+
+            // 清理标题（去除引号、换行等）
+            if (generatedTitle != null) {
+                generatedTitle = generatedTitle.trim()
+                        .replaceAll("^[\"'\"\"'']+|[\"'\"\"'']+$", "")  // 去除首尾引号
+                        .replaceAll("[\\r\\n]+", " ")  // 替换换行为空格
+                        .trim();
+
+                // 限制长度
+                if (generatedTitle.length() > 50) {
+                    generatedTitle = generatedTitle.substring(0, 50) + "...";
                 }
+            }
 
-                // 更新数据库中的会话标题
-                Conversation conversation = conversationMapper.selectById(conversationId);
-                if (conversation != null) {
-                    conversation.setTitle(generatedTitle);
-                    conversation.setUpdatedAt(LocalDateTime.now());
-                    conversationMapper.updateById(conversation);
-                    log.info("异步更新会话标题完成: conversationId={}, title={}", conversationId, generatedTitle);
-                }
+            // 如果生成失败，使用简单标题
+            if (generatedTitle == null || generatedTitle.isEmpty()) {
+                generatedTitle = generateTitle(question);
+            }
 
-                return generatedTitle;
-
-            } catch (Exception e) {
-                log.error("异步生成会话标题失败: conversationId={}, error={}", conversationId, e.getMessage(), e);
-                // 失败时返回简单标题
-                return generateTitle(question);
-            } finally {
-                // 清理缓存（延迟清理，给获取结果留一些时间）
-                CompletableFuture.runAsync(() -> {
-                    try {
-                        Thread.sleep(5000);  // 5秒后清理
-                    } catch (InterruptedException ignored) {
-                        Thread.currentThread().interrupt();
-                    }
-                    titleFutureCache.remove(conversationId);
-                });
+            // 更新数据库中的会话标题
+            Conversation conversation = conversationMapper.selectById(conversationId);
+            if (conversation != null) {
+                conversation.setTitle(generatedTitle);
+                conversation.setUpdatedAt(LocalDateTime.now());
+                conversationMapper.updateById(conversation);
+                log.info("异步更新会话标题完成: conversationId={}, title={}", conversationId, generatedTitle);
             }
-        });
 
-        titleFutureCache.put(conversationId, future);
+            return generatedTitle;
+
+        } catch (Exception e) {
+            log.error("异步生成会话标题失败: conversationId={}, error={}", conversationId, e.getMessage(), e);
+            // 失败时返回简单标题
+            return generateTitle(question);
+        }
     }
 
     /**
-     * 调用 DashScope API 生成文本
+     * 调用模型生成文本，截止时间与聊天流等待标题的时间一致
      */
     private String callDashScopeApi(String prompt) {
         try {
-            // 构建请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + apiKey);
-
-            // 构建请求体
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", "qwen-turbo");  // 使用较快的模型
-            requestBody.put("max_tokens", 50);
-            requestBody.put("temperature", 0.3);
-
-            Map<String, String> userMessage = new HashMap<>();
-            userMessage.put("role", "user");
-            userMessage.put("content", prompt);
-            requestBody.put("messages", List.of(userMessage));
-
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-
-            // 调用 API
-            String response = restTemplate.postForObject(DASHSCOPE_API_URL, request, String.class);
-
-            // 解析响应
-            if (response != null) {
-                JsonNode root = objectMapper.readTree(response);
-                JsonNode choices = root.get("choices");
-                if (choices != null && choices.isArray() && choices.size() > 0) {
-                    JsonNode message = choices.get(0).get("message");
-                    if (message != null && message.has("content")) {
-                        return message.get("content").asText();
-                    }
-                }
-            }
-
-            return null;
+            return llmGateway.complete(TITLE_MODEL, prompt, 50, 0.3, Duration.ofSeconds(titleTimeoutSeconds));
         } catch (Exception e) {
-            log.error("调用 DashScope API 失败: {}", e.getMessage(), e);
+            log.error("调用 DashScope API 失败: {}", e.getMessage());
             return null;
         }
     }
 
     /**
-     * 获取异步生成的会话标题
-     * 如果标题尚未生成完成，返回null
+     * 获取异步生成的会话标题（非阻塞）
+     * 标题生成完成时发出结果；没有进行中的生成任务时为空
      *
      * @param conversationId 会话ID
-     * @param timeoutMs      等待超时时间（毫秒），0表示不等待
-     * @return 生成的标题，如果未完成或不存在返回null
      */
-    public String getGeneratedTitle(Long conversationId, long timeoutMs) {
-        CompletableFuture<String> future = titleFutureCache.get(conversationId);
+    public Mono<String> getGeneratedTitleMono(Long conversationId) {
+        CompletableFuture<String> future = titleFutures.getIfPresent(conversationId);
         if (future == null) {
-            return null;
+            return Mono.empty();
         }
+        return Mono.fromFuture(future, true)
+                .filter(title -> !title.isEmpty());
+    }
 
-        try {
-            if (timeoutMs <= 0) {
-                // 不等待，检查是否已完成
-                if (future.isDone()) {
-                    return future.get();
-                }
-                return null;
-            } else {
-                // 等待指定时间
-                return future.get(timeoutMs, java.util.concurrent.TimeUnit.MILLISECONDS);
-            }
-        } catch (java.util.concurrent.TimeoutException e) {
-            log.debug("获取会话标题超时: conversationId={}, timeoutMs={}", conversationId, timeoutMs);
-            return null;
-        } catch (Exception e) {
-            log.warn("获取会话标题失败: conversationId={}, error={}", conversationId, e.getMessage());
+    /**
+     * 获取已生成完成的会话标题，未完成时立即返回 null，不等待
+     */
+    public String getGeneratedTitleNow(Long conversationId) {
+        CompletableFuture<String> future = titleFutures.getIfPresent(conversationId);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
             return null;
         }
+        return future.join();
     }
 }
@@ -0,0 +1,112 @@
+package com.legal.assistant.service;
+
+import com.legal.assistant.mapper.ConversationMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 会话消息数回填
+ * 会话表的 message_count / last_message_at 上线前没有数据，应用就绪后立即按会话 id 分批从消息表重算一次；
+ * 完成后在 Redis 中记录标记，之后不再执行。集群内通过 Redis 锁保证只有一个节点执行，
+ * 中途失败时释放锁，由下一个周期从头重算（重算幂等）。
+ */
+@Slf4j
+@Component
+public class ConversationStatsBackfill {
+
+    private static final String LOCK_KEY = "conversation:stats:backfill_lock";
+    private static final String DONE_KEY = "conversation:stats:backfilled";
+
+    @Autowired
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${agent.conversation.stats-backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${agent.conversation.stats-backfill.batch-size:500}")
+    private int batchSize;
+
+    @Value("${agent.conversation.stats-backfill.lock-seconds:3600}")
+    private long lockSeconds;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversation-stats-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 应用就绪后立即执行一次，缩短消息数为 0 的窗口；未完成时由定时任务重试
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        schedule();
+    }
+
+    @Scheduled(initialDelayString = "${agent.conversation.stats-backfill.interval-seconds:600}",
+            fixedDelayString = "${agent.conversation.stats-backfill.interval-seconds:600}", timeUnit = TimeUnit.SECONDS)
+    public void schedule() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                backfill();
+            } catch (Exception e) {
+                log.warn("会话消息数回填失败: error={}", e.getMessage(), e);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void backfill() {
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(DONE_KEY))) {
+            return;
+        }
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, String.valueOf(System.currentTimeMillis()),
+                lockSeconds, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            long maxId = conversationMapper.selectMaxId();
+            long updated = 0;
+            for (long fromId = 1; fromId <= maxId; fromId += batchSize) {
+                updated += conversationMapper.recountMessages(fromId, fromId + batchSize - 1);
+            }
+            redisTemplate.opsForValue().set(DONE_KEY, String.valueOf(System.currentTimeMillis()));
+            log.info("会话消息数回填完成: maxId={}, updated={}", maxId, updated);
+        } finally {
+            redisTemplate.delete(LOCK_KEY);
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package com.legal.assistant.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.legal.assistant.entity.DocumentFile;
+import com.legal.assistant.mapper.DocumentFileMapper;
+import com.legal.assistant.utils.DocumentExtractor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 文档分块与检索索引
+ * <p>
+ * 1. 上传时一次性构建：页起始偏移、标题大纲、按段落切分的文本块，以及文本块上的倒排表（BM25 统计量）
+ * 2. 索引以 JSON 存放在 MinIO（document_file.index_path），与 Markdown 分开存储，互不影响
+ * 3. 分词：汉字按二元组，字母数字按整词（小写），查询与建索引使用同一分词
+ * 4. 历史文件没有索引时，首次使用按 Markdown 补建并回写（无分页信息）
+ */
+@Slf4j
+@Service
+public class DocumentIndexService {
+
+    private static final int INDEX_VERSION = 1;
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    private static final Pattern MARKDOWN_HEADING = Pattern.compile("^(#{1,6})\\s+(.+)$");
+    private static final Pattern CHAPTER_HEADING = Pattern.compile("^第[一二三四五六七八九十百千零〇\\d]+[编章]\\s*.{0,30}$");
+    private static final Pattern SECTION_HEADING = Pattern.compile("^第[一二三四五六七八九十百千零〇\\d]+节\\s*.{0,30}$");
+    private static final Pattern ARTICLE_HEADING = Pattern.compile("^第[一二三四五六七八九十百千零〇\\d]+条(?=\\s|$|[　：:])");
+    private static final Pattern CN_NUMBERED_HEADING = Pattern.compile("^[一二三四五六七八九十]+、.{1,30}$");
+    private static final Pattern CN_PAREN_HEADING = Pattern.compile("^[（(][一二三四五六七八九十]+[）)].{1,30}$");
+
+    @Autowired
+    private MinioClient minioClient;
+
+    @Autowired
+    private DocumentFileMapper documentFileMapper;
+
+    @Autowired
+    private FileContentCache fileContentCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${minio.bucket-name}")
+    private String bucketName;
+
+    @Value("${agent.file-tools.chunk-chars:800}")
+    private int chunkChars;
+
+    @Value("${agent.file-tools.index-cache-max-mb:256}")
+    private long indexCacheMaxMb;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * 已加载的文档（Markdown + 索引），key: fileId；索引不可变，按 Markdown 长度计权
+     */
+    private Cache<Long, IndexedDocument> documents;
+
+    @PostConstruct
+    public void init() {
+        documents = Caffeine.newBuilder()
+                .maximumWeight(indexCacheMaxMb * 1024 * 1024 / 4)
+                .weigher((Long key, IndexedDocument value) -> Math.max(1, value.getMarkdown().length()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, documents, "documentIndexCache");
+    }
+
+    // ==================== 构建 ====================
+
+    /**
+     * 去掉 Markdown 中的分页符并记录每页起始偏移（第 1 页从 0 开始）；
+     * 空白页（如未识别出文字的扫描页）与下一页起始偏移相同，仍各占一个页码，保证其后的页码不错位
+     */
+    public static PagedText splitPages(String text) {
+        if (text == null || text.indexOf(DocumentExtractor.PAGE_BREAK) < 0) {
+            return new PagedText(text, Collections.emptyList());
+        }
+        StringBuilder cleaned = new StringBuilder(text.length());
+        List<Integer> pageOffsets = new ArrayList<>();
+        pageOffsets.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == DocumentExtractor.PAGE_BREAK) {
+                pageOffsets.add(cleaned.length());
+            } else {
+                cleaned.append(c);
+            }
+        }
+        return new PagedText(cleaned.toString(), pageOffsets);
+    }
+
+    /**
+     * 构建索引：标题大纲、文本块与倒排表
+     *
+     * @param pageOffsets 每页在 Markdown 中的起始偏移，无分页信息时为空
+     */
+    public DocumentIndex build(String markdown, List<Integer> pageOffsets) {
+        DocumentIndex index = new DocumentIndex();
+        index.setVersion(INDEX_VERSION);
+        index.setCharCount(markdown.length());
+        index.setPageOffsets(pageOffsets != null ? pageOffsets : Collections.emptyList());
+        index.setHeadings(extractHeadings(markdown));
+        index.setChunks(chunk(markdown, index.getHeadings()));
+
+        // 倒排表：term -> [块序号, 词频, 块序号, 词频, ...]
+        Map<String, List<Integer>> postings = new HashMap<>();
+        long totalTerms = 0;
+        List<Chunk> chunks = index.getChunks();
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            Map<String, Integer> termFreqs = new HashMap<>();
+            int termCount = tokenize(markdown, chunk.getOffset(), chunk.getOffset() + chunk.getLength(),
+                    term -> termFreqs.merge(term, 1, Integer::sum));
+            chunk.setTermCount(termCount);
+            totalTerms += termCount;
+            for (Map.Entry<String, Integer> entry : termFreqs.entrySet()) {
+                List<Integer> list = postings.computeIfAbsent(entry.getKey(), k -> new ArrayList<>());
+                list.add(i);
+                list.add(entry.getValue());
+            }
+        }
+        Map<String, int[]> packed = new HashMap<>(postings.size() * 2);
+        postings.forEach((term, list) -> packed.put(term, list.stream().mapToInt(Integer::intValue).toArray()));
+        index.setPostings(packed);
+        index.setAvgChunkTerms(chunks.isEmpty() ? 0 : (double) totalTerms / chunks.size());
+        return index;
+    }
+
+    /**
+     * 将索引上传到 MinIO，返回对象路径
+     */
+    public String save(String markdownPath, DocumentIndex index) throws Exception {
+        String objectName = "index/" + markdownPath.replaceFirst("^markdown/", "").replaceAll("\\.md$", "") + ".json";
+        byte[] bytes = objectMapper.writeValueAsBytes(index);
+        minioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .stream(new ByteArrayInputStream(bytes), bytes.length, -1)
+                        .contentType("application/json")
+                        .build());
+        log.info("文档索引上传到MinIO成功: {}, 文本块={}, 词项={}", objectName, index.getChunks().size(), index.getPostings().size());
+        return objectName;
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * 加载文档 Markdown 与索引；历史文件无索引（或索引读取失败）时按 Markdown 补建并回写
+     */
+    public IndexedDocument load(DocumentFile documentFile) throws Exception {
+        IndexedDocument cached = documents.getIfPresent(documentFile.getId());
+        if (cached != null) {
+            return cached;
+        }
+        String markdown = fileContentCache.readMarkdown(documentFile.getMarkdownPath());
+        DocumentIndex index = null;
+        if (documentFile.getIndexPath() != null && !documentFile.getIndexPath().isEmpty()) {
+            try (InputStream inputStream = minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(documentFile.getIndexPath())
+                            .build())) {
+                index = objectMapper.readValue(inputStream, DocumentIndex.class);
+            } catch (Exception e) {
+                log.warn("读取文档索引失败，重新构建: fileId={}, indexPath={}, error={}",
+                        documentFile.getId(), documentFile.getIndexPath(), e.getMessage());
+            }
+        }
+        if (index == null || index.getVersion() != INDEX_VERSION || index.getCharCount() != markdown.length()) {
+            index = build(markdown, index != null ? index.getPageOffsets() : null);
+            persistRebuilt(documentFile, index);
+        }
+        IndexedDocument document = new IndexedDocument(documentFile.getId(), documentFile.getFileName(), markdown, index);
+        documents.put(documentFile.getId(), document);
+        return document;
+    }
+
+    private void persistRebuilt(DocumentFile documentFile, DocumentIndex index) {
+        try {
+            String indexPath = save(documentFile.getMarkdownPath(), index);
+            DocumentFile update = new DocumentFile();
+            update.setId(documentFile.getId());
+            update.setIndexPath(indexPath);
+            documentFileMapper.updateById(update);
+            log.info("补建文档索引: fileId={}, indexPath={}", documentFile.getId(), indexPath);
+        } catch (Exception e) {
+            log.warn("补建文档索引回写失败（仅本次使用内存索引）: fileId={}, error={}", documentFile.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * BM25 检索，返回得分最高的 topK 个文本块（按得分降序）
+     */
+    public List<Passage> search(IndexedDocument document, String query, int topK) {
+        DocumentIndex index = document.getIndex();
+        List<Chunk> chunks = index.getChunks();
+        if (query == null || query.isBlank() || chunks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Integer> queryTerms = new HashMap<>();
+        tokenize(query, 0, query.length(), term -> queryTerms.merge(term, 1, Integer::sum));
+
+        int n = chunks.size();
+        double avg = index.getAvgChunkTerms() > 0 ? index.getAvgChunkTerms() : 1;
+        double[] scores = new double[n];
+        boolean matched = false;
+        for (String term : queryTerms.keySet()) {
+            int[] posting = index.getPostings().get(term);
+            if (posting == null) {
+                continue;
+            }
+            matched = true;
+            int df = posting.length / 2;
+            double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+            for (int i = 0; i < posting.length; i += 2) {
+                int chunkIndex = posting[i];
+                int tf = posting[i + 1];
+                double norm = BM25_K1 * (1 - BM25_B + BM25_B * chunks.get(chunkIndex).getTermCount() / avg);
+                scores[chunkIndex] += idf * tf * (BM25_K1 + 1) / (tf + norm);
+            }
+        }
+        if (!matched) {
+            return Collections.emptyList();
+        }
+
+        PriorityQueue<Integer> top = new PriorityQueue<>((a, b) -> Double.compare(scores[a], scores[b]));
+        for (int i = 0; i < n; i++) {
+            if (scores[i] <= 0) {
+                continue;
+            }
+            top.offer(i);
+            if (top.size() > topK) {
+                top.poll();
+            }
+        }
+        List<Passage> passages = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            int i = top.poll();
+            Chunk chunk = chunks.get(i);
+            String text = document.getMarkdown().substring(chunk.getOffset(), chunk.getOffset() + chunk.getLength());
+            passages.add(new Passage(chunk.getOffset(), pageOf(index, chunk.getOffset()), scores[i], text));
+        }
+        Collections.reverse(passages);
+        return passages;
+    }
+
+    /**
+     * 偏移所在页码（从 1 开始），即起始偏移不大于 offset 的最后一页；无分页信息时返回 null
+     */
+    public static Integer pageOf(DocumentIndex index, int offset) {
+        List<Integer> pageOffsets = index.getPageOffsets();
+        if (pageOffsets == null || pageOffsets.isEmpty()) {
+            return null;
+        }
+        int low = 0;
+        int high = pageOffsets.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (pageOffsets.get(mid) <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return Math.max(low, 1);
+    }
+
+    /**
+     * 从 start 起按估算 token 数截取（汉字 1 个 token，其他字符 4 个 1 个 token），尽量在换行处结束
+     *
+     * @return 截取的结束偏移（不含）
+     */
+    public static int sliceEnd(String text, int start, int limit, int maxTokens) {
+        int end = start;
+        int cjk = 0;
+        int other = 0;
+        while (end < limit && cjk + other / 4 < maxTokens) {
+            if (Character.UnicodeScript.of(text.charAt(end)) == Character.UnicodeScript.HAN) {
+                cjk++;
+            } else {
+                other++;
+            }
+            end++;
+        }
+        if (end < limit) {
+            int lineBreak = text.lastIndexOf('\n', end - 1);
+            if (lineBreak > start + (end - start) / 2) {
+                end = lineBreak + 1;
+            }
+        }
+        return end;
+    }
+
+    // ==================== 分块与分词 ====================
+
+    private static List<Heading> extractHeadings(String markdown) {
+        List<Heading> headings = new ArrayList<>();
+        int lineStart = 0;
+        while (lineStart < markdown.length()) {
+            int lineEnd = markdown.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = markdown.length();
+            }
+            String line = markdown.substring(lineStart, lineEnd).trim();
+            if (!line.isEmpty() && line.length() <= 60) {
+                int level = headingLevel(line);
+                if (level > 0) {
+                    Matcher matcher = MARKDOWN_HEADING.matcher(line);
+                    String title = matcher.matches() ? matcher.group(2).trim() : line;
+                    headings.add(new Heading(level, title, lineStart));
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return headings;
+    }
+
+    /**
+     * 标题层级：Markdown 标题按 # 数量；提取文本中的“第X章/节/条”“一、”“（一）”按法律文书惯例折算
+     */
+    private static int headingLevel(String line) {
+        Matcher matcher = MARKDOWN_HEADING.matcher(line);
+        if (matcher.matches()) {
+            return matcher.group(1).length();
+        }
+        if (CHAPTER_HEADING.matcher(line).matches()) {
+            return 2;
+        }
+        if (SECTION_HEADING.matcher(line).matches() || CN_NUMBERED_HEADING.matcher(line).matches()) {
+            return 3;
+        }
+        if (CN_PAREN_HEADING.matcher(line).matches()) {
+            return 4;
+        }
+        if (ARTICLE_HEADING.matcher(line).find()) {
+            return 5;
+        }
+        return 0;
+    }
+
+    /**
+     * 按段落累积切块：块长度接近 chunkChars 时在段落边界切开，标题处另起一块，超长段落按 chunkChars 硬切
+     */
+    private List<Chunk> chunk(String markdown, List<Heading> headings) {
+        boolean[] headingStart = new boolean[markdown.length() + 1];
+        for (Heading heading : headings) {
+            headingStart[heading.getOffset()] = true;
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        int chunkStart = 0;
+        int pos = 0;
+        while (pos < markdown.length()) {
+            int paragraphEnd = markdown.indexOf("\n\n", pos);
+            paragraphEnd = paragraphEnd < 0 ? markdown.length() : paragraphEnd + 2;
+            // 段落内的标题行也作为切分点
+            int nextHeading = -1;
+            for (int i = pos + 1; i < paragraphEnd; i++) {
+                if (headingStart[i]) {
+                    nextHeading = i;
+                    break;
+                }
+            }
+            int segmentEnd = nextHeading > 0 ? nextHeading : paragraphEnd;
+            if (headingStart[pos] && pos > chunkStart) {
+                addChunk(chunks, markdown, chunkStart, pos);
+                chunkStart = pos;
+            }
+            if (segmentEnd - chunkStart > chunkChars && pos > chunkStart) {
+                addChunk(chunks, markdown, chunkStart, pos);
+                chunkStart = pos;
+            }
+            while (segmentEnd - chunkStart > chunkChars) {
+                addChunk(chunks, markdown, chunkStart, chunkStart + chunkChars);
+                chunkStart += chunkChars;
+            }
+            pos = segmentEnd;
+        }
+        if (chunkStart < markdown.length()) {
+            addChunk(chunks, markdown, chunkStart, markdown.length());
+        }
+        return chunks;
+    }
+
+    private static void addChunk(List<Chunk> chunks, String markdown, int start, int end) {
+        if (markdown.substring(start, end).isBlank()) {
+            return;
+        }
+        chunks.add(new Chunk(start, end - start, 0));
+    }
+
+    /**
+     * 分词：连续汉字输出二元组（单字时输出单字），连续字母数字输出小写整词
+     *
+     * @return 词项数
+     */
+    static int tokenize(String text, int start, int end, Consumer<String> sink) {
+        int count = 0;
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                int runEnd = i;
+                while (runEnd < end && Character.UnicodeScript.of(text.charAt(runEnd)) == Character.UnicodeScript.HAN) {
+                    runEnd++;
+                }
+                if (runEnd - i == 1) {
+                    sink.accept(String.valueOf(c));
+                    count++;
+                } else {
+                    for (int j = i; j + 1 < runEnd; j++) {
+                        sink.accept(text.substring(j, j + 2));
+                        count++;
+                    }
+                }
+                i = runEnd;
+            } else if (Character.isLetterOrDigit(c)) {
+                int runEnd = i;
+                while (runEnd < end && Character.isLetterOrDigit(text.charAt(runEnd))
+                        && Character.UnicodeScript.of(text.charAt(runEnd)) != Character.UnicodeScript.HAN) {
+                    runEnd++;
+                }
+                sink.accept(text.substring(i, runEnd).toLowerCase());
+                count++;
+                i = runEnd;
+            } else {
+                i++;
+            }
+        }
+        return count;
+    }
+
+    // ==================== 数据结构 ====================
+
+    /**
+     * 去除分页符后的文本及每页起始偏移
+     */
+    public record PagedText(String text, List<Integer> pageOffsets) {
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class IndexedDocument {
+        private Long fileId;
+        private String fileName;
+        private String markdown;
+        private DocumentIndex index;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class DocumentIndex {
+        private int version;
+        private int charCount;
+        /** 每页在 Markdown 中的起始偏移，无分页信息时为空 */
+        private List<Integer> pageOffsets;
+        private List<Heading> headings;
+        private List<Chunk> chunks;
+        private double avgChunkTerms;
+        /** term -> [块序号, 词频, 块序号, 词频, ...] */
+        private Map<String, int[]> postings;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Heading {
+        private int level;
+        private String title;
+        private int offset;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Chunk {
+        private int offset;
+        private int length;
+        private int termCount;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Passage {
+        private int offset;
+        private Integer page;
+        private double score;
+        private String text;
+    }
+}
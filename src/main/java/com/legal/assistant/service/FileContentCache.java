@@ -0,0 +1,232 @@
+package com.legal.assistant.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.legal.assistant.entity.DocumentFile;
+import com.legal.assistant.mapper.DocumentFileMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 会话级附件内容缓存
+ * <p>
+ * 1. 对话开始时并行从 MinIO 预取本轮附件的 Markdown，与 Agent 会话创建同时进行
+ * 2. FileToolService.getFileContent 优先读取此缓存；预取仍在进行时等待其完成，不重复下载
+ * 3. 缓存按 conversationId + fileId 隔离，按内容长度限制总大小，空闲过期
+ */
+@Slf4j
+@Component
+public class FileContentCache {
+
+    @Autowired
+    private DocumentFileMapper documentFileMapper;
+
+    @Autowired
+    private MinioClient minioClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value("${minio.bucket-name}")
+    private String bucketName;
+
+    @Value("${agent.file-prefetch.cache-max-mb:128}")
+    private long cacheMaxMb;
+
+    @Value("${agent.file-prefetch.cache-expire-minutes:30}")
+    private long cacheExpireMinutes;
+
+    /**
+     * 已加载的附件内容，key: conversationId:fileId
+     */
+    private Cache<String, FileContent> contents;
+
+    /**
+     * 进行中的预取任务，key: conversationId:fileId
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<FileContent>> inflight = new ConcurrentHashMap<>();
+
+    /**
+     * 附件内容
+     */
+    public record FileContent(Long fileId, String fileName, String content) {
+    }
+
+    @PostConstruct
+    public void init() {
+        contents = Caffeine.newBuilder()
+                // 按字符数计权（UTF-16 每字符 2 字节）
+                .maximumWeight(cacheMaxMb * 1024 * 1024 / 2)
+                .weigher((String key, FileContent value) -> Math.max(1, value.content().length()))
+                .expireAfterAccess(Duration.ofMinutes(cacheExpireMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, contents, "fileContentCache");
+    }
+
+    /**
+     * 并行预取附件内容，已缓存或正在预取的文件不会重复下载
+     *
+     * @return fileId -> 预取任务（按 fileIds 顺序），不存在或尚未生成 Markdown 的文件不在结果中
+     */
+    public Map<Long, CompletableFuture<FileContent>> prefetch(Long conversationId, List<Long> fileIds) {
+        if (fileIds == null || fileIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, CompletableFuture<FileContent>> result = new LinkedHashMap<>();
+        List<Long> missing = fileIds.stream()
+                .distinct()
+                .filter(fileId -> {
+                    FileContent cached = contents.getIfPresent(key(conversationId, fileId));
+                    if (cached != null) {
+                        result.put(fileId, CompletableFuture.completedFuture(cached));
+                        return false;
+                    }
+                    CompletableFuture<FileContent> running = inflight.get(key(conversationId, fileId));
+                    if (running != null) {
+                        result.put(fileId, running);
+                        return false;
+                    }
+                    return true;
+                })
+                .toList();
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        // 一次查询取出全部文件记录，再按文件并行下载
+        for (DocumentFile documentFile : documentFileMapper.selectBatchIds(missing)) {
+            String markdownPath = documentFile.getMarkdownPath();
+            if (markdownPath == null || markdownPath.isEmpty()) {
+                continue;
+            }
+            result.put(documentFile.getId(), loadAsync(conversationId, documentFile));
+        }
+        log.info("预取附件内容: conversationId={}, 文件数={}, 需下载={}", conversationId, result.size(), missing.size());
+        return result;
+    }
+
+    /**
+     * 获取附件内容：命中缓存直接返回；预取进行中时最多等待 waitMillis
+     *
+     * @return 未缓存、未在预取或等待超时时返回 null
+     */
+    public FileContent get(Long conversationId, Long fileId, long waitMillis) {
+        String key = key(conversationId, fileId);
+        FileContent cached = contents.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<FileContent> running = inflight.get(key);
+        if (running == null) {
+            return null;
+        }
+        try {
+            return running.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("等待附件预取超时: conversationId={}, fileId={}", conversationId, fileId);
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存（工具在未命中时直接读取 MinIO 后回填）
+     */
+    public void put(Long conversationId, FileContent content) {
+        contents.put(key(conversationId, content.fileId()), content);
+    }
+
+    /**
+     * 从 MinIO 读取 Markdown 内容
+     */
+    public String readMarkdown(String markdownPath) throws Exception {
+        try (InputStream inputStream = minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(markdownPath)
+                        .build())) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 粗略估算 token 数：汉字按 1 个 token，其他字符按 4 个字符 1 个 token
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.UnicodeScript.of(text.charAt(i)) == Character.UnicodeScript.HAN) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    private CompletableFuture<FileContent> loadAsync(Long conversationId, DocumentFile documentFile) {
+        String key = key(conversationId, documentFile.getId());
+        CompletableFuture<FileContent> created = new CompletableFuture<>();
+        CompletableFuture<FileContent> existing = inflight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    FileContent content = new FileContent(documentFile.getId(), documentFile.getFileName(),
+                            readMarkdown(documentFile.getMarkdownPath()));
+                    contents.put(key, content);
+                    created.complete(content);
+                } catch (Exception e) {
+                    log.warn("预取附件内容失败: conversationId={}, fileId={}, error={}",
+                            conversationId, documentFile.getId(), e.getMessage());
+                    created.completeExceptionally(e);
+                } finally {
+                    inflight.remove(key, created);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 线程池已满时放弃预取，由工具调用时再读取
+            inflight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    private static String key(Long conversationId, Long fileId) {
+        return conversationId + ":" + fileId;
+    }
+}
@@ -53,6 +53,8 @@ public class FileService {
     private  MinioClient minioClient;
     @Autowired
     private DocumentFileMapper documentFileMapper;
+    @Autowired
+    private DocumentIndexService documentIndexService;
 
 
 
@@ -80,8 +82,11 @@ public class FileService {
         String minioPath = uploadToMinio(file, originalFilename);
 
         //3.提取文件的内容，不同类型的需要不同的解析去解析内容，统一解析成markdown文件，也上传到minio中
-        String extractedText = extractContent(file, fileType);
+        //  分页符只用于记录页码，不写入markdown；同时构建分块检索索引供文件工具使用
+        DocumentIndexService.PagedText paged = DocumentIndexService.splitPages(extractContent(file, fileType));
+        String extractedText = paged.text();
         String markdownPath = uploadMarkdownToMinio(originalFilename, extractedText);
+        String indexPath = buildIndex(markdownPath, paged);
 
         //4.保存文件记录到数据库
         DocumentFile documentFile = new DocumentFile();
@@ -91,6 +96,7 @@ public class FileService {
         documentFile.setFileSize(file.getSize());
         documentFile.setMinioPath(minioPath);
         documentFile.setMarkdownPath(markdownPath);
+        documentFile.setIndexPath(indexPath);
         documentFile.setStatus("completed");
         documentFile.setCreatedAt(LocalDateTime.now());
 
@@ -165,6 +171,18 @@ public class FileService {
         }
     }
 
+    /**
+     * 构建并上传文档索引，失败时返回 null（首次使用文件工具时再补建）
+     */
+    private String buildIndex(String markdownPath, DocumentIndexService.PagedText paged) {
+        try {
+            return documentIndexService.save(markdownPath, documentIndexService.build(paged.text(), paged.pageOffsets()));
+        } catch (Exception e) {
+            log.error("构建文档索引失败: {}", markdownPath, e);
+            return null;
+        }
+    }
+
     /**
      * 提取文件内容并转换为Markdown格式
      * 使用 Apache Tika 统一处理所有文件格式（包括文档和图片OCR）
@@ -0,0 +1,467 @@
+package com.legal.assistant.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.legal.assistant.exception.BusinessException;
+import com.legal.assistant.exception.ErrorCode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import okio.BufferedSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 辅助模型调用网关（标题生成、建议问题等 OpenAI 兼容接口调用）
+ * 共享一个带连接池与 keep-alive 的 OkHttp 客户端（TLS 下经 ALPN 协商 HTTP/2），并提供：
+ * 按模型的并发上限、贯穿重试的调用截止时间、带抖动的指数退避重试和按模型的熔断。
+ * DashScope 变慢时调用方最多阻塞到截止时间，不会无限占用线程。
+ */
+@Slf4j
+@Component
+public class LlmGateway {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ai.dashscope.api-key}")
+    private String apiKey;
+
+    @Value("${agent.llm.base-url:https://dashscope.aliyuncs.com/compatible-mode/v1}")
+    private String baseUrl;
+
+    @Value("${agent.llm.connect-timeout-ms:3000}")
+    private long connectTimeoutMs;
+
+    @Value("${agent.llm.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    @Value("${agent.llm.max-connections:64}")
+    private int maxConnections;
+
+    @Value("${agent.llm.max-idle-connections:16}")
+    private int maxIdleConnections;
+
+    @Value("${agent.llm.keep-alive-seconds:300}")
+    private long keepAliveSeconds;
+
+    @Value("${agent.llm.max-concurrency-per-model:8}")
+    private int defaultModelConcurrency;
+
+    @Value("${agent.llm.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${agent.llm.backoff-base-ms:200}")
+    private long backoffBaseMs;
+
+    @Value("${agent.llm.backoff-max-ms:2000}")
+    private long backoffMaxMs;
+
+    @Value("${agent.llm.circuit.failure-threshold:5}")
+    private int circuitFailureThreshold;
+
+    @Value("${agent.llm.circuit.open-seconds:30}")
+    private long circuitOpenSeconds;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private OkHttpClient client;
+
+    private final ConcurrentHashMap<String, Semaphore> modelPermits = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxConnections);
+        dispatcher.setMaxRequestsPerHost(maxConnections);
+        client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                // 重试由网关按截止时间统一控制
+                .retryOnConnectionFailure(false)
+                .build();
+        log.info("模型调用网关初始化: baseUrl={}, maxConnections={}, defaultModelConcurrency={}, maxAttempts={}",
+                baseUrl, maxConnections, defaultModelConcurrency, maxAttempts);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    /**
+     * 单轮非流式调用，返回模型回复文本
+     *
+     * @param deadline 整个调用（含排队与重试）的最长耗时
+     * @throws BusinessException 超时、熔断或重试耗尽时抛出
+     */
+    public String complete(String model, String prompt, int maxTokens, double temperature, Duration deadline) {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        Semaphore permits = permits(model);
+        if (!acquire(permits, deadlineNanos)) {
+            sample.stop(requestTimer(model, "rejected"));
+            throw new BusinessException(ErrorCode.LLM_UNAVAILABLE.getCode(), "模型调用排队超时: " + model);
+        }
+        try {
+            String content = executeWithRetry(model, buildRequest(model, prompt, maxTokens, temperature, false), deadlineNanos);
+            outcome = "success";
+            return content;
+        } catch (BusinessException e) {
+            outcome = ErrorCode.LLM_TIMEOUT.getCode().equals(e.getCode()) ? "timeout" : "error";
+            throw e;
+        } finally {
+            permits.release();
+            sample.stop(requestTimer(model, outcome));
+        }
+    }
+
+    /**
+     * 单轮流式调用，逐段发出模型回复的增量文本
+     * 仅在收到响应之前的失败会重试；已开始输出后失败直接结束流。取消订阅会取消底层请求。
+     */
+    public Flux<String> stream(String model, String prompt, int maxTokens, double temperature, Duration deadline) {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        Request request = buildRequest(model, prompt, maxTokens, temperature, true);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return Flux.<String>create(sink -> executeStream(model, request, deadlineNanos, sink))
+                .retryWhen(Retry.backoff(Math.max(0, maxAttempts - 1), Duration.ofMillis(backoffBaseMs))
+                        .maxBackoff(Duration.ofMillis(backoffMaxMs))
+                        .jitter(0.5)
+                        .filter(e -> e instanceof RetryableCallException && System.nanoTime() < deadlineNanos)
+                        .doBeforeRetry(signal -> meterRegistry.counter("llm.gateway.retries", "model", model).increment())
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .onErrorMap(RetryableCallException.class, e -> System.nanoTime() >= deadlineNanos
+                        ? new BusinessException(ErrorCode.LLM_TIMEOUT.getCode(), "模型调用超时: " + model)
+                        : new BusinessException(ErrorCode.LLM_UNAVAILABLE.getCode(), "模型调用失败: " + e.getMessage()))
+                .doOnComplete(() -> sample.stop(requestTimer(model, "success")))
+                .doOnError(e -> sample.stop(requestTimer(model, "error")));
+    }
+
+    private void executeStream(String model, Request request, long deadlineNanos, FluxSink<String> sink) {
+        Semaphore permits = permits(model);
+        if (!permits.tryAcquire()) {
+            sink.error(new BusinessException(ErrorCode.LLM_UNAVAILABLE.getCode(), "模型并发已满: " + model));
+            return;
+        }
+        AtomicBoolean released = new AtomicBoolean(false);
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        };
+        CircuitBreaker breaker = circuitBreaker(model);
+        Object caller = new Object();
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        if (remainingNanos <= 0 || !breaker.allowRequest(caller)) {
+            release.run();
+            sink.error(remainingNanos <= 0
+                    ? new BusinessException(ErrorCode.LLM_TIMEOUT.getCode(), "模型调用超时: " + model)
+                    : new BusinessException(ErrorCode.LLM_UNAVAILABLE.getCode(), "模型服务熔断中: " + model));
+            return;
+        }
+
+        Call call = client.newCall(request);
+        call.timeout().timeout(remainingNanos, TimeUnit.NANOSECONDS);
+        sink.onDispose(() -> {
+            call.cancel();
+            // 被取消或异常结束时回调不会记录结果，若本次是半开探测需释放探测名额
+            breaker.onAbandoned(caller);
+            release.run();
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call c, IOException e) {
+                release.run();
+                if (c.isCanceled()) {
+                    return;
+                }
+                breaker.onFailure();
+                sink.error(new RetryableCallException(e.getMessage()));
+            }
+
+            @Override
+            public void onResponse(Call c, Response response) {
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        handleErrorStatus(breaker, response.code());
+                        return;
+                    }
+                    breaker.onSuccess();
+                    BufferedSource source = response.body().source();
+                    String line;
+                    while (!sink.isCancelled() && (line = source.readUtf8Line()) != null) {
+                        if (!line.startsWith("data:")) {
+                            continue;
+                        }
+                        String data = line.substring(5).trim();
+                        if ("[DONE]".equals(data)) {
+                            break;
+                        }
+                        String delta = extractContent(objectMapper.readTree(data), "delta");
+                        if (delta != null && !delta.isEmpty()) {
+                            sink.next(delta);
+                        }
+                    }
+                    sink.complete();
+                } catch (RetryableCallException | BusinessException e) {
+                    sink.error(e);
+                } catch (Exception e) {
+                    // 已开始输出，不再重试
+                    sink.error(new BusinessException(ErrorCode.LLM_UNAVAILABLE.getCode(), "模型流式输出中断: " + e.getMessage()));
+                } finally {
+                    release.run();
+                }
+            }
+        });
+    }
+
+    private String executeWithRetry(String model, Request request, long deadlineNanos) {
+        CircuitBreaker breaker = circuitBreaker(model);
+        String lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            if (remainingNanos <= 0) {
+                break;
+            }
+            Object caller = new Object();
+            if (!breaker.allowRequest(caller)) {
+                throw new BusinessException(ErrorCode.LLM_UNAVAILABLE.getCode(), "模型服务熔断中: " + model);
+            }
+            Call call = client.newCall(request);
+            call.timeout().timeout(remainingNanos, TimeUnit.NANOSECONDS);
+            try (Response response = call.execute()) {
+                if (response.isSuccessful()) {
+                    breaker.onSuccess();
+                    return extractContent(objectMapper.readTree(response.body().string()), "message");
+                }
+                handleErrorStatus(breaker, response.code());
+            } catch (RetryableCallException e) {
+                lastError = e.getMessage();
+            } catch (InterruptedIOException e) {
+                // 调用超时即已到截止时间
+                breaker.onFailure();
+                lastError = "timeout";
+                break;
+            } catch (IOException e) {
+                breaker.onFailure();
+                lastError = e.getMessage();
+            } finally {
+                // 非预期异常未记录结果时，释放本次可能持有的探测名额
+                breaker.onAbandoned(caller);
+            }
+
+            if (attempt < maxAttempts) {
+                long backoffMs = backoffMillis(attempt);
+                if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs) >= deadlineNanos) {
+                    break;
+                }
+                meterRegistry.counter("llm.gateway.retries", "model", model).increment();
+                log.warn("模型调用失败，{}ms 后重试: model={}, attempt={}, error={}", backoffMs, model, attempt, lastError);
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (System.nanoTime() >= deadlineNanos || "timeout".equals(lastError)) {
+            throw new BusinessException(ErrorCode.LLM_TIMEOUT.getCode(), "模型调用超时: " + model);
+        }
+        throw new BusinessException(ErrorCode.LLM_UNAVAILABLE.getCode(), "模型调用失败: " + lastError);
+    }
+
+    /**
+     * 限流与服务端错误可重试并计入熔断；其他客户端错误直接失败，不计入熔断
+     */
+    private void handleErrorStatus(CircuitBreaker breaker, int code) {
+        if (code == 429 || code >= 500) {
+            breaker.onFailure();
+            throw new RetryableCallException("HTTP " + code);
+        }
+        breaker.onSuccess();
+        throw new BusinessException(ErrorCode.LLM_UNAVAILABLE.getCode(), "模型服务返回错误: HTTP " + code);
+    }
+
+    /**
+     * 全抖动指数退避：[0, min(max, base * 2^(attempt-1))]
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(backoffMaxMs, backoffBaseMs << Math.min(attempt - 1, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private boolean acquire(Semaphore permits, long deadlineNanos) {
+        try {
+            return permits.tryAcquire(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Request buildRequest(String model, String prompt, int maxTokens, double temperature, boolean stream) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", model);
+        requestBody.put("max_tokens", maxTokens);
+        requestBody.put("temperature", temperature);
+        requestBody.put("messages", List.of(Map.of("role", "user", "content", prompt)));
+        if (stream) {
+            requestBody.put("stream", true);
+        }
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(requestBody);
+        } catch (Exception e) {
+            throw new BusinessException(ErrorCode.INTERNAL_ERROR.getCode(), "构建模型请求失败: " + e.getMessage());
+        }
+        return new Request.Builder()
+                .url(baseUrl + "/chat/completions")
+                .header("Authorization", "Bearer " + apiKey)
+                .post(RequestBody.create(body, JSON))
+                .build();
+    }
+
+    /**
+     * 从 choices[0].{message|delta}.content 中取文本
+     */
+    private static String extractContent(JsonNode root, String field) {
+        JsonNode choices = root.get("choices");
+        if (choices != null && choices.isArray() && choices.size() > 0) {
+            JsonNode node = choices.get(0).get(field);
+            if (node != null && node.has("content") && !node.get("content").isNull()) {
+                return node.get("content").asText();
+            }
+        }
+        return null;
+    }
+
+    private Semaphore permits(String model) {
+        return modelPermits.computeIfAbsent(model, m -> {
+            int limit = environment.getProperty("agent.llm.model-concurrency." + m, Integer.class, defaultModelConcurrency);
+            Semaphore semaphore = new Semaphore(limit);
+            meterRegistry.gauge("llm.gateway.permits.available", Tags.of("model", m), semaphore, Semaphore::availablePermits);
+            return semaphore;
+        });
+    }
+
+    private CircuitBreaker circuitBreaker(String model) {
+        return circuitBreakers.computeIfAbsent(model, m -> {
+            CircuitBreaker breaker = new CircuitBreaker(m);
+            meterRegistry.gauge("llm.gateway.circuit.open", Tags.of("model", m), breaker, b -> b.isOpen() ? 1 : 0);
+            return breaker;
+        });
+    }
+
+    private Timer requestTimer(String model, String outcome) {
+        return meterRegistry.timer("llm.gateway.requests", "model", model, "outcome", outcome);
+    }
+
+    /**
+     * 可重试的调用失败（连接错误、限流、服务端错误）
+     */
+    private static final class RetryableCallException extends RuntimeException {
+        RetryableCallException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /**
+     * 按模型的熔断器：连续失败达到阈值后打开，打开期满后放行一个探测请求（半开），探测成功则关闭
+     * 探测请求被取消或异常结束而没有结果时释放探测名额，由下一个请求重新探测
+     */
+    private final class CircuitBreaker {
+        private final String model;
+        private int consecutiveFailures;
+        private long openUntilMillis;
+        private boolean probing;
+        private Object prober;
+
+        CircuitBreaker(String model) {
+            this.model = model;
+        }
+
+        /**
+         * @param caller 本次调用的标识，用于结束时识别其是否为探测请求
+         */
+        synchronized boolean allowRequest(Object caller) {
+            if (openUntilMillis == 0) {
+                return true;
+            }
+            if (System.currentTimeMillis() < openUntilMillis || probing) {
+                return false;
+            }
+            probing = true;
+            prober = caller;
+            return true;
+        }
+
+        synchronized void onSuccess() {
+            if (openUntilMillis != 0) {
+                log.info("模型服务熔断恢复: model={}", model);
+            }
+            consecutiveFailures = 0;
+            openUntilMillis = 0;
+            probing = false;
+            prober = null;
+        }
+
+        /**
+         * 调用结束：若它是尚未得出结果的探测请求，释放探测名额（不计成功或失败）
+         */
+        synchronized void onAbandoned(Object caller) {
+            if (probing && prober == caller) {
+                probing = false;
+                prober = null;
+            }
+        }
+
+        synchronized void onFailure() {
+            consecutiveFailures++;
+            if (probing || consecutiveFailures >= circuitFailureThreshold) {
+                openUntilMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(circuitOpenSeconds);
+                probing = false;
+                prober = null;
+                log.warn("模型服务熔断打开: model={}, consecutiveFailures={}, openSeconds={}",
+                        model, consecutiveFailures, circuitOpenSeconds);
+            }
+        }
+
+        synchronized boolean isOpen() {
+            return openUntilMillis != 0;
+        }
+    }
+}
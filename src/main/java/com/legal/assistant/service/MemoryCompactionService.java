@@ -0,0 +1,240 @@
+package com.legal.assistant.service;
+
+import io.agentscope.core.memory.Memory;
+import io.agentscope.core.memory.autocontext.AutoContextMemory;
+import io.agentscope.core.message.ContentBlock;
+import io.agentscope.core.message.Msg;
+import io.agentscope.core.message.MsgRole;
+import io.agentscope.core.message.TextBlock;
+import io.agentscope.core.message.ToolResultBlock;
+import io.agentscope.core.message.ToolUseBlock;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记忆后台预压缩
+ * AutoContextMemory 在消息数达到阈值后于下一轮推理中同步压缩，压缩耗时直接计入首字延迟。
+ * 本服务在一轮对话结束、记忆接近阈值时，于低优先级线程池中把较早的消息总结为一条摘要，
+ * 保留最近的消息原样不动，使下一轮开始时记忆已回到阈值以下。
+ * 是否放弃本次压缩（新一轮已开始）以及写回记忆、持久化由调用方负责。
+ */
+@Slf4j
+@Service
+public class MemoryCompactionService {
+
+    /**
+     * 摘要消息的前缀，便于识别已压缩过的记忆
+     */
+    public static final String SUMMARY_PREFIX = "【此前对话摘要】\n";
+
+    /**
+     * 单条消息参与总结时的最大字符数（工具返回的文件全文等只保留开头）
+     */
+    private static final int MAX_CHARS_PER_MESSAGE = 2000;
+
+    @Autowired
+    private LlmGateway llmGateway;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("compactionExecutor")
+    private Executor compactionExecutor;
+
+    @Value("${agent.memory.msg-threshold:30}")
+    private int msgThreshold;
+
+    @Value("${agent.memory.last-keep:10}")
+    private int lastKeep;
+
+    @Value("${agent.memory.precompact.enabled:true}")
+    private boolean enabled;
+
+    @Value("${agent.memory.precompact.trigger-ratio:0.8}")
+    private double triggerRatio;
+
+    @Value("${agent.memory.precompact.model:qwen-plus}")
+    private String model;
+
+    @Value("${agent.memory.precompact.max-summary-tokens:1500}")
+    private int maxSummaryTokens;
+
+    @Value("${agent.memory.precompact.timeout-seconds:60}")
+    private long timeoutSeconds;
+
+    /**
+     * 记忆是否需要预压缩：仅针对 AutoContextMemory，消息数达到阈值的 trigger-ratio 且压缩后确有消息可总结
+     */
+    public boolean shouldCompact(Memory memory) {
+        if (!enabled || !(memory instanceof AutoContextMemory)) {
+            return false;
+        }
+        int size = memory.getMessages().size();
+        return size >= Math.ceil(msgThreshold * triggerRatio) && size > lastKeep + 1;
+    }
+
+    /**
+     * 提交后台压缩任务；线程池已满时放弃并计数
+     */
+    public void submit(String sessionKey, Runnable task) {
+        try {
+            compactionExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            recordSkipped("rejected");
+            log.warn("记忆预压缩被拒绝（线程池已满）: sessionKey={}", sessionKey);
+        }
+    }
+
+    /**
+     * 把较早的消息总结为一条摘要，返回压缩后的完整消息列表（摘要 + 最近消息）
+     * 不修改传入的列表；无需压缩或模型调用失败时返回 null
+     */
+    public List<Msg> compact(String sessionKey, List<Msg> history) {
+        int split = splitIndex(history);
+        if (split <= 1) {
+            return null;
+        }
+        String summary;
+        try {
+            summary = llmGateway.complete(model, buildPrompt(history.subList(0, split)), maxSummaryTokens, 0.3,
+                    Duration.ofSeconds(timeoutSeconds));
+        } catch (Exception e) {
+            recordSkipped("failed");
+            log.warn("记忆预压缩失败: sessionKey={}, error={}", sessionKey, e.getMessage());
+            return null;
+        }
+        if (summary == null || summary.isBlank()) {
+            recordSkipped("failed");
+            return null;
+        }
+        List<Msg> compacted = new ArrayList<>(history.size() - split + 1);
+        compacted.add(Msg.builder()
+                .role(MsgRole.USER)
+                .textContent(SUMMARY_PREFIX + summary.trim())
+                .build());
+        compacted.addAll(history.subList(split, history.size()));
+        return compacted;
+    }
+
+    /**
+     * 后台压缩已写回记忆
+     */
+    public void recordBackground(long durationNanos, int before, int after) {
+        meterRegistry.counter("chat.memory.compaction", "mode", "background").increment();
+        meterRegistry.timer("chat.memory.compaction.duration", "mode", "background")
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        meterRegistry.summary("chat.memory.compaction.removed", "mode", "background").record(before - after);
+    }
+
+    /**
+     * 记忆在一轮推理中被同步压缩（轮末消息数少于轮初）
+     */
+    public void recordInline(int before, int after) {
+        meterRegistry.counter("chat.memory.compaction", "mode", "inline").increment();
+        meterRegistry.summary("chat.memory.compaction.removed", "mode", "inline").record(before - after);
+    }
+
+    /**
+     * 放弃后台压缩：new_turn（新一轮已开始）、stale（条目已不是缓存中的最新会话）、rejected、failed
+     */
+    public void recordSkipped(String reason) {
+        meterRegistry.counter("chat.memory.compaction.skipped", "reason", reason).increment();
+    }
+
+    /**
+     * 总结范围的结束位置：保留最后 last-keep 条消息；保留部分不能以工具结果开头，
+     * 否则工具调用与其结果会被拆到摘要两侧，向前移动分界直到保留部分以非工具消息开头
+     */
+    private int splitIndex(List<Msg> history) {
+        int split = history.size() - lastKeep;
+        while (split > 0 && isToolMessage(history.get(split))) {
+            split--;
+        }
+        return split;
+    }
+
+    private static boolean isToolMessage(Msg msg) {
+        if (msg.getRole() == MsgRole.TOOL) {
+            return true;
+        }
+        List<ContentBlock> contents = msg.getContent();
+        if (contents != null) {
+            for (ContentBlock block : contents) {
+                if (block instanceof ToolResultBlock) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String buildPrompt(List<Msg> messages) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("以下是一段法律咨询对话的较早部分。请将其压缩为一份摘要，供后续对话继续使用。\n");
+        prompt.append("要求：\n");
+        prompt.append("1. 保留当事人身份、关键事实、时间、金额、证据与附件要点\n");
+        prompt.append("2. 保留已引用的法律法规条款、已给出的结论和建议，以及尚未解决的问题\n");
+        prompt.append("3. 省略寒暄和重复内容，不要编造对话中没有的信息\n");
+        prompt.append("4. 直接输出摘要正文，不超过800字\n\n");
+        prompt.append("对话内容：\n");
+        for (Msg msg : messages) {
+            String text = renderText(msg);
+            if (text.isEmpty()) {
+                continue;
+            }
+            prompt.append(roleLabel(msg)).append("：").append(text).append("\n");
+        }
+        return prompt.toString();
+    }
+
+    private static String roleLabel(Msg msg) {
+        if (msg.getRole() == MsgRole.USER) {
+            return msg.getTextContent() != null && msg.getTextContent().startsWith(SUMMARY_PREFIX) ? "此前摘要" : "用户";
+        }
+        if (msg.getRole() == MsgRole.ASSISTANT) {
+            return "助手";
+        }
+        return "工具";
+    }
+
+    private static String renderText(Msg msg) {
+        StringBuilder text = new StringBuilder();
+        List<ContentBlock> contents = msg.getContent();
+        if (contents != null) {
+            for (ContentBlock block : contents) {
+                if (block instanceof TextBlock textBlock && textBlock.getText() != null) {
+                    text.append(textBlock.getText());
+                } else if (block instanceof ToolUseBlock toolUse) {
+                    text.append("[调用工具 ").append(toolUse.getName()).append(' ').append(toolUse.getInput()).append(']');
+                } else if (block instanceof ToolResultBlock toolResult && toolResult.getOutput() != null) {
+                    text.append("[工具 ").append(toolResult.getName()).append(" 返回] ");
+                    for (ContentBlock output : toolResult.getOutput()) {
+                        if (output instanceof TextBlock outputText && outputText.getText() != null) {
+                            text.append(outputText.getText());
+                        }
+                    }
+                }
+                if (text.length() >= MAX_CHARS_PER_MESSAGE) {
+                    break;
+                }
+            }
+        }
+        if (text.length() > MAX_CHARS_PER_MESSAGE) {
+            text.setLength(MAX_CHARS_PER_MESSAGE);
+            text.append("……");
+        }
+        return text.toString().trim();
+    }
+}
@@ -0,0 +1,79 @@
+package com.legal.assistant.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+/**
+ * Agent 会话失效广播
+ * 节点写入会话后通过 Redis pub/sub 广播新的会话版本号，其他节点据此丢弃本地缓存的旧会话。
+ * pub/sub 不保证送达，各节点使用缓存前仍需按版本号校验，广播只用于尽早释放旧会话。
+ */
+@Slf4j
+@Component
+public class SessionInvalidationBus implements MessageListener {
+
+    private static final String CHANNEL = "agentscope:session:invalidate";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private ClusterStreamRegistry clusterStreamRegistry;
+
+    private volatile BiConsumer<String, Long> invalidationHandler = (sessionId, version) -> { };
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 设置收到其他节点写入通知时的处理逻辑，参数为 sessionId 与写入后的会话版本号
+     */
+    public void setInvalidationHandler(BiConsumer<String, Long> invalidationHandler) {
+        this.invalidationHandler = invalidationHandler;
+    }
+
+    /**
+     * 广播本节点写入了会话的新版本
+     */
+    public void publish(String sessionId, long version) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, sessionId + ":" + version + ":" + clusterStreamRegistry.getNodeId());
+        } catch (Exception e) {
+            log.warn("广播会话失效失败: sessionId={}, error={}", sessionId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        // sessionId:version:nodeId，nodeId 本身包含冒号
+        String[] parts = body.split(":", 3);
+        if (parts.length < 3) {
+            log.warn("忽略非法会话失效通知: {}", body);
+            return;
+        }
+        if (parts[2].equals(clusterStreamRegistry.getNodeId())) {
+            return;
+        }
+        try {
+            invalidationHandler.accept(parts[0], Long.valueOf(parts[1]));
+        } catch (NumberFormatException e) {
+            log.warn("忽略非法会话失效通知: {}", body);
+        }
+    }
+}
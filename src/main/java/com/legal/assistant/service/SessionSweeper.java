@@ -0,0 +1,105 @@
+package com.legal.assistant.service;
+
+import com.legal.assistant.session.RedisSession;
+import io.agentscope.core.session.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Agent 会话过期清理
+ * 定期按会话索引清理超过过期时间仍残留的会话 key；首次运行时先用 SCAN 回填会话索引。
+ * 集群内通过 Redis 锁保证每个周期只有一个节点执行，清理在独立线程中进行，不占用调度线程。
+ */
+@Slf4j
+@Component
+public class SessionSweeper {
+
+    private static final String LOCK_KEY = "agentscope:session:_sweep_lock";
+    private static final String BACKFILLED_KEY = "agentscope:session:_index_backfilled";
+
+    @Autowired
+    private Session agentSession;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${agent.session.sweep.enabled:true}")
+    private boolean enabled;
+
+    @Value("${agent.session.sweep.interval-seconds:300}")
+    private long intervalSeconds;
+
+    @Value("${agent.session.sweep.batch-size:200}")
+    private int batchSize;
+
+    @Value("${agent.session.sweep.max-per-run:5000}")
+    private int maxPerRun;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Scheduled(initialDelayString = "${agent.session.sweep.interval-seconds:300}",
+            fixedDelayString = "${agent.session.sweep.interval-seconds:300}", timeUnit = TimeUnit.SECONDS)
+    public void schedule() {
+        if (!enabled || !(agentSession instanceof RedisSession redisSession) || !running.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                sweep(redisSession);
+            } catch (Exception e) {
+                log.warn("会话清理失败: error={}", e.getMessage(), e);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void sweep(RedisSession redisSession) {
+        // 锁随周期过期不主动释放，保证每个周期集群内只执行一次
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, String.valueOf(System.currentTimeMillis()),
+                intervalSeconds, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(BACKFILLED_KEY))) {
+            redisSession.backfillIndex();
+            redisTemplate.opsForValue().set(BACKFILLED_KEY, String.valueOf(System.currentTimeMillis()));
+        }
+        int total = 0;
+        while (total < maxPerRun) {
+            int swept = redisSession.sweepExpired(Math.min(batchSize, maxPerRun - total));
+            if (swept == 0) {
+                break;
+            }
+            total += swept;
+        }
+        log.debug("会话清理完成: swept={}", total);
+    }
+}
@@ -0,0 +1,121 @@
+package com.legal.assistant.service;
+
+import com.legal.assistant.session.RedisSession;
+import io.agentscope.core.session.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Agent 会话冷热分层
+ * 定期把空闲超过 idle-hours 的会话从 Redis 移入冷存储（MinIO 或 MySQL），使 Redis 只保留活跃会话；
+ * 同时删除在冷存储中超过保留期的会话。移出的会话在下次访问时由 {@link RedisSession} 自动恢复。
+ * 集群内通过 Redis 锁保证每个周期只有一个节点执行，在独立线程中进行，不占用调度线程。
+ */
+@Slf4j
+@Component
+public class SessionTieringJob {
+
+    private static final String LOCK_KEY = "agentscope:session:_tier_lock";
+
+    @Autowired
+    private Session agentSession;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${agent.session.tiering.enabled:false}")
+    private boolean enabled;
+
+    @Value("${agent.session.tiering.idle-hours:48}")
+    private long idleHours;
+
+    @Value("${agent.session.tiering.cold-retention-days:180}")
+    private long coldRetentionDays;
+
+    @Value("${agent.session.tiering.interval-seconds:600}")
+    private long intervalSeconds;
+
+    @Value("${agent.session.tiering.batch-size:100}")
+    private int batchSize;
+
+    @Value("${agent.session.tiering.max-per-run:2000}")
+    private int maxPerRun;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-tiering");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Scheduled(initialDelayString = "${agent.session.tiering.interval-seconds:600}",
+            fixedDelayString = "${agent.session.tiering.interval-seconds:600}", timeUnit = TimeUnit.SECONDS)
+    public void schedule() {
+        if (!enabled || !(agentSession instanceof RedisSession redisSession) || !running.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                tier(redisSession);
+            } catch (Exception e) {
+                log.warn("会话分层失败: error={}", e.getMessage(), e);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void tier(RedisSession redisSession) {
+        // 锁随周期过期不主动释放，保证每个周期集群内只执行一次
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, String.valueOf(System.currentTimeMillis()),
+                intervalSeconds, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        long idleMillis = TimeUnit.HOURS.toMillis(idleHours);
+        int demoted = 0;
+        int skipped = 0;
+        while (demoted < maxPerRun && skipped < maxPerRun) {
+            // 越过本轮未能移出的会话，避免它们挡住其后的空闲会话
+            RedisSession.DemoteResult batch = redisSession.demoteIdle(idleMillis, skipped,
+                    Math.min(batchSize, maxPerRun - demoted));
+            if (batch.candidates() == 0) {
+                break;
+            }
+            demoted += batch.demoted();
+            skipped += batch.skipped();
+        }
+        int purged = 0;
+        long retentionMillis = TimeUnit.DAYS.toMillis(coldRetentionDays);
+        while (purged < maxPerRun) {
+            int batch = redisSession.purgeCold(retentionMillis, Math.min(batchSize, maxPerRun - purged));
+            if (batch == 0) {
+                break;
+            }
+            purged += batch;
+        }
+        log.debug("会话分层完成: demoted={}, skipped={}, purged={}", demoted, skipped, purged);
+    }
+}
@@ -0,0 +1,336 @@
+package com.legal.assistant.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.legal.assistant.entity.Message;
+import com.legal.assistant.mapper.MessageMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 建议问题预计算与缓存
+ * 每轮对话完成后异步生成下一轮建议问题，按 (conversationId, 最后一条完成消息ID) 缓存在 Redis；
+ * 新消息开始时失效。接口读取时通常直接命中缓存，未命中时同一 key 的并发请求只触发一次生成。
+ */
+@Slf4j
+@Service
+public class SuggestedQuestionService {
+
+    private static final String CACHE_KEY_PREFIX = "chat:suggestions:";
+    private static final String FIELD_QUESTIONS = "questions";
+    private static final String SUGGESTION_MODEL = "qwen-turbo";  // 使用较快的模型
+
+    /**
+     * 仅当缓存中记录的消息ID不比本次更新时写入，避免旧一轮的生成结果覆盖新一轮
+     */
+    private static final DefaultRedisScript<Long> WRITE_SCRIPT = new DefaultRedisScript<>(
+            "local current = redis.call('hget', KEYS[1], 'messageId') " +
+            "if current and tonumber(current) > tonumber(ARGV[1]) then return 0 end " +
+            "redis.call('hset', KEYS[1], 'messageId', ARGV[1], 'questions', ARGV[2]) " +
+            "redis.call('expire', KEYS[1], ARGV[3]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 新消息开始：记录最新消息ID并清除旧的建议问题
+     */
+    private static final DefaultRedisScript<Long> INVALIDATE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('hdel', KEYS[1], 'questions') " +
+            "redis.call('hset', KEYS[1], 'messageId', ARGV[1]) " +
+            "redis.call('expire', KEYS[1], ARGV[2]) " +
+            "return 1",
+            Long.class);
+
+    @Autowired
+    private MessageMapper messageMapper;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private LlmGateway llmGateway;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value("${agent.suggestion.timeout-seconds:10}")
+    private long suggestionTimeoutSeconds;
+
+    @Value("${agent.suggestion.history-turns:5}")
+    private int historyTurns;
+
+    @Value("${agent.suggestion.cache-ttl-hours:24}")
+    private long cacheTtlHours;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 进行中的生成任务，key: conversationId:messageId
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<List<String>>> inflight = new ConcurrentHashMap<>();
+
+    /**
+     * 新消息开始时调用，使该会话已缓存的建议问题失效
+     */
+    public void invalidate(Long conversationId, Long newMessageId) {
+        try {
+            redisTemplate.execute(INVALIDATE_SCRIPT, Collections.singletonList(cacheKey(conversationId)),
+                    String.valueOf(newMessageId), String.valueOf(ttlSeconds()));
+        } catch (Exception e) {
+            log.warn("失效建议问题缓存失败: conversationId={}, error={}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * 一轮对话完成后异步预计算建议问题
+     * 消息更新为异步落库，因此本轮消息直接使用内存中的对象，不依赖数据库中的最新状态
+     */
+    public void precomputeAsync(Message completedMessage) {
+        Long conversationId = completedMessage.getConversationId();
+        try {
+            singleFlight(conversationId, completedMessage.getId(), () -> {
+                List<Message> history = new ArrayList<>();
+                for (Message msg : messageMapper.selectRecentCompleted(conversationId, historyTurns)) {
+                    if (!msg.getId().equals(completedMessage.getId())) {
+                        history.add(msg);
+                    }
+                }
+                if (history.size() > historyTurns - 1) {
+                    history = new ArrayList<>(history.subList(0, historyTurns - 1));
+                }
+                history.add(0, completedMessage);
+                return history;
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("预计算建议问题被拒绝（线程池已满）: conversationId={}", conversationId);
+        }
+    }
+
+    /**
+     * 获取会话的建议问题：优先读缓存，未命中时生成（同一轮的并发请求共享一次生成）
+     */
+    public List<String> getSuggestions(Long conversationId) {
+        List<String> cached = readCache(conversationId);
+        if (cached != null) {
+            meterRegistry.counter("chat.suggestions.cache", "result", "hit").increment();
+            return cached;
+        }
+        meterRegistry.counter("chat.suggestions.cache", "result", "miss").increment();
+
+        List<Message> recentMessages = messageMapper.selectRecentCompleted(conversationId, historyTurns);
+        if (recentMessages.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Long lastMessageId = recentMessages.get(0).getId();
+        try {
+            return singleFlight(conversationId, lastMessageId, () -> recentMessages)
+                    .get(suggestionTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return getDefaultQuestions();
+        } catch (Exception e) {
+            log.warn("获取建议问题失败，返回默认问题: conversationId={}, error={}", conversationId, e.getMessage());
+            return getDefaultQuestions();
+        }
+    }
+
+    /**
+     * 同一 (conversationId, messageId) 只保留一个进行中的生成任务
+     *
+     * @param history 最近的已完成消息，按时间倒序
+     */
+    private CompletableFuture<List<String>> singleFlight(Long conversationId, Long messageId,
+                                                        Callable<List<Message>> history) {
+        String flightKey = conversationId + ":" + messageId;
+        CompletableFuture<List<String>> created = new CompletableFuture<>();
+        CompletableFuture<List<String>> existing = inflight.putIfAbsent(flightKey, created);
+        if (existing != null) {
+            meterRegistry.counter("chat.suggestions.singleflight.joined").increment();
+            return existing;
+        }
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    List<String> questions = generate(history.call());
+                    if (questions != null) {
+                        writeCache(conversationId, messageId, questions);
+                        created.complete(questions);
+                    } else {
+                        created.complete(getDefaultQuestions());
+                    }
+                } catch (Exception e) {
+                    log.error("生成建议问题失败: conversationId={}, messageId={}, error={}", conversationId, messageId, e.getMessage());
+                    created.complete(getDefaultQuestions());
+                } finally {
+                    inflight.remove(flightKey, created);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inflight.remove(flightKey, created);
+            throw e;
+        }
+        return created;
+    }
+
+    /**
+     * 根据最近几轮对话生成建议问题，生成失败或未解析出问题时返回 null：
+     * 由调用方返回默认问题且不写入缓存，下次请求重新生成，避免默认问题在整个缓存有效期内顶替真实建议
+     *
+     * @param recentMessages 最近的已完成消息，按时间倒序
+     */
+    private List<String> generate(List<Message> recentMessages) {
+        List<Message> messages = new ArrayList<>(recentMessages);
+        Collections.reverse(messages);
+
+        // 构建对话历史上下文
+        StringBuilder conversationContext = new StringBuilder();
+        conversationContext.append("以下是用户与AI助手的对话历史：\n\n");
+        for (Message msg : messages) {
+            if (msg.getQuery() != null && !msg.getQuery().trim().isEmpty()) {
+                conversationContext.append("用户：").append(msg.getQuery()).append("\n");
+            }
+            if (msg.getAnswer() != null && !msg.getAnswer().trim().isEmpty()) {
+                // 如果答案是报告ID格式，跳过
+                if (!msg.getAnswer().matches("\\[报告ID: .+\\]")) {
+                    String answer = msg.getAnswer();
+                    // 截取前200字符作为上下文
+                    if (answer.length() > 200) {
+                        answer = answer.substring(0, 200) + "...";
+                    }
+                    conversationContext.append("助手：").append(answer).append("\n");
+                }
+            }
+            conversationContext.append("\n");
+        }
+
+        // 构建提示词
+        String prompt = conversationContext +
+                "\n请根据以上对话内容，生成3个用户可能想要继续询问的问题。" +
+                "问题应该：\n" +
+                "1. 与当前对话内容相关\n" +
+                "2. 有助于深入理解或解决法律问题\n" +
+                "3. 简洁明了，每个问题不超过30个字\n" +
+                "4. 以JSON数组格式返回，例如：[\"问题1\", \"问题2\", \"问题3\"]\n" +
+                "请直接返回JSON数组，不要包含其他说明文字。";
+
+        // 稍微提高温度以获得更多样化的问题
+        String content;
+        try {
+            content = llmGateway.complete(SUGGESTION_MODEL, prompt, 500, 0.7,
+                    Duration.ofSeconds(suggestionTimeoutSeconds));
+        } catch (Exception e) {
+            log.error("调用 DashScope API 生成建议问题失败: {}", e.getMessage());
+            return null;
+        }
+        if (content == null) {
+            return null;
+        }
+
+        // 清理内容，移除可能的markdown代码块标记
+        content = content.trim().replaceAll("```json", "").replaceAll("```", "").trim();
+
+        // 尝试解析JSON数组
+        try {
+            JsonNode questionsNode = objectMapper.readTree(content);
+            if (questionsNode.isArray()) {
+                List<String> questions = new ArrayList<>();
+                for (JsonNode questionNode : questionsNode) {
+                    String question = questionNode.asText().trim();
+                    if (!question.isEmpty()) {
+                        questions.add(question);
+                    }
+                }
+                // 限制最多5个问题
+                if (questions.size() > 5) {
+                    questions = new ArrayList<>(questions.subList(0, 5));
+                }
+                return questions.isEmpty() ? null : questions;
+            }
+        } catch (Exception e) {
+            log.warn("解析JSON数组失败，尝试按行分割: {}", e.getMessage());
+        }
+        // 如果JSON解析失败，尝试按行分割
+        List<String> questions = parseQuestionsFromText(content);
+        return questions.isEmpty() ? null : questions;
+    }
+
+    private List<String> readCache(Long conversationId) {
+        try {
+            Object questions = redisTemplate.opsForHash().get(cacheKey(conversationId), FIELD_QUESTIONS);
+            if (questions == null) {
+                return null;
+            }
+            return objectMapper.readValue(questions.toString(), new TypeReference<List<String>>() { });
+        } catch (Exception e) {
+            log.warn("读取建议问题缓存失败: conversationId={}, error={}", conversationId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeCache(Long conversationId, Long messageId, List<String> questions) {
+        try {
+            Long written = redisTemplate.execute(WRITE_SCRIPT, Collections.singletonList(cacheKey(conversationId)),
+                    String.valueOf(messageId), objectMapper.writeValueAsString(questions), String.valueOf(ttlSeconds()));
+            log.debug("写入建议问题缓存: conversationId={}, messageId={}, written={}", conversationId, messageId, written);
+        } catch (Exception e) {
+            log.warn("写入建议问题缓存失败: conversationId={}, error={}", conversationId, e.getMessage());
+        }
+    }
+
+    private long ttlSeconds() {
+        return TimeUnit.HOURS.toSeconds(cacheTtlHours);
+    }
+
+    private static String cacheKey(Long conversationId) {
+        return CACHE_KEY_PREFIX + conversationId;
+    }
+
+    /**
+     * 从文本中解析问题（备用方案），解析不到时返回空列表
+     */
+    private List<String> parseQuestionsFromText(String text) {
+        List<String> questions = new ArrayList<>();
+        String[] lines = text.split("\n");
+        for (String line : lines) {
+            line = line.trim();
+            // 移除可能的编号和符号
+            line = line.replaceAll("^[0-9]+[.、]\\s*", "")
+                       .replaceAll("^[-*]\\s*", "")
+                       .replaceAll("^\"|\"$", "")
+                       .trim();
+            if (!line.isEmpty() && line.length() <= 50) {
+                questions.add(line);
+                if (questions.size() >= 5) {
+                    break;
+                }
+            }
+        }
+        return questions;
+    }
+
+    /**
+     * 获取默认建议问题
+     */
+    private List<String> getDefaultQuestions() {
+        return Arrays.asList(
+                "这个问题涉及哪些法律条款？",
+                "需要准备哪些证据材料？",
+                "有哪些需要注意的风险点？"
+        );
+    }
+}
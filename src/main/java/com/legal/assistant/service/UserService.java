@@ -280,6 +280,7 @@ public class UserService {
         conversationWrapper.eq(Conversation::getUserId, userId)
                 .eq(Conversation::getIsDeleted, false)
                 .set(Conversation::getIsDeleted, true)
+                .set(Conversation::getMessageCount, 0)
                 .set(Conversation::getDeletedAt, LocalDateTime.now())
                 .set(Conversation::getUpdatedAt, LocalDateTime.now());
         int conversationCount = conversationMapper.update(null, conversationWrapper);
@@ -0,0 +1,25 @@
+package com.legal.assistant.session;
+
+import java.io.IOException;
+
+/**
+ * 冷存储：存放长时间未访问、已移出 Redis 的会话归档
+ * RedisSession 把整个会话打包压缩为一个归档写入冷存储，下次访问时读回并恢复到 Redis，恢复后删除归档
+ */
+public interface ColdSessionStore {
+
+    /**
+     * 写入（覆盖）会话归档
+     */
+    void put(String sessionId, byte[] archive) throws IOException;
+
+    /**
+     * 读取会话归档，不存在时返回 null
+     */
+    byte[] get(String sessionId) throws IOException;
+
+    /**
+     * 删除会话归档，不存在时忽略
+     */
+    void delete(String sessionId) throws IOException;
+}
@@ -0,0 +1,150 @@
+package com.legal.assistant.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdException;
+import io.agentscope.core.state.State;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 带格式头的状态编解码器：JSON 或 Smile（二进制 JSON），超过阈值时再用 Zstd 压缩
+ * <p>
+ * 格式头共 7 字节：魔数 0x01、格式（0 JSON / 1 Smile）、压缩（0 无 / 1 Zstd）、压缩前长度（4 字节大端）。
+ * 文本 JSON 不会以 0x01 开头，没有格式头的值按旧版本写入的纯 JSON 读取，上线无需迁移；
+ * 配置为 JSON 且不压缩时不加格式头，输出与旧版本完全一致（可用于灰度期间保持旧节点可读）。
+ * 压缩率（压缩后 / 压缩前）记录在 chat.session.codec.ratio
+ */
+public class FramedStateCodec implements StateCodec {
+
+    private static final byte MAGIC = 0x01;
+    private static final int HEADER_LENGTH = 7;
+
+    /**
+     * 序列化格式
+     */
+    public enum Format {
+        JSON, SMILE
+    }
+
+    /**
+     * 压缩算法
+     */
+    public enum Compression {
+        NONE, ZSTD
+    }
+
+    private final Format format;
+    private final Compression compression;
+    private final int compressThreshold;
+    private final int compressLevel;
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper smileMapper;
+    private final DistributionSummary ratio;
+
+    /**
+     * 创建纯 JSON、不压缩的编解码器（与旧版本写入格式一致）
+     */
+    public FramedStateCodec() {
+        this(Format.JSON, Compression.NONE, Integer.MAX_VALUE, Zstd.defaultCompressionLevel(), null);
+    }
+
+    /**
+     * 创建编解码器
+     *
+     * @param format            写入格式
+     * @param compression       压缩算法
+     * @param compressThreshold 序列化后达到该字节数才压缩
+     * @param compressLevel     Zstd 压缩级别
+     * @param meterRegistry     指标注册表，为 null 时使用全局注册表
+     */
+    public FramedStateCodec(Format format, Compression compression, int compressThreshold, int compressLevel,
+                            MeterRegistry meterRegistry) {
+        this.format = format;
+        this.compression = compression;
+        this.compressThreshold = compressThreshold;
+        this.compressLevel = compressLevel;
+        this.jsonMapper = new ObjectMapper();
+        this.jsonMapper.registerModule(new JavaTimeModule());
+        this.smileMapper = new SmileMapper();
+        this.smileMapper.registerModule(new JavaTimeModule());
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : Metrics.globalRegistry;
+        this.ratio = DistributionSummary.builder("chat.session.codec.ratio")
+                .description("会话状态压缩后与压缩前的字节数之比")
+                .register(registry);
+    }
+
+    @Override
+    public byte[] encode(State value) throws IOException {
+        if (format == Format.JSON && compression == Compression.NONE) {
+            return jsonMapper.writeValueAsBytes(value);
+        }
+        byte[] raw = mapper(format).writeValueAsBytes(value);
+        byte[] body = raw;
+        Compression applied = Compression.NONE;
+        if (compression == Compression.ZSTD && raw.length >= compressThreshold) {
+            byte[] compressed = Zstd.compress(raw, compressLevel);
+            // 压缩后没有变小则按原样存储
+            if (compressed.length < raw.length) {
+                body = compressed;
+                applied = Compression.ZSTD;
+            }
+            ratio.record((double) body.length / raw.length);
+        }
+        return ByteBuffer.allocate(HEADER_LENGTH + body.length)
+                .put(MAGIC)
+                .put((byte) format.ordinal())
+                .put((byte) applied.ordinal())
+                .putInt(raw.length)
+                .put(body)
+                .array();
+    }
+
+    @Override
+    public <T extends State> T decode(byte[] data, Class<T> type) throws IOException {
+        if (data.length == 0 || data[0] != MAGIC) {
+            // 旧版本写入的纯 JSON
+            return jsonMapper.readValue(data, type);
+        }
+        if (data.length < HEADER_LENGTH) {
+            throw new IOException("状态数据格式头不完整: length=" + data.length);
+        }
+        ObjectMapper mapper = mapper(enumAt(Format.values(), data[1], "格式"));
+        Compression applied = enumAt(Compression.values(), data[2], "压缩算法");
+        if (applied == Compression.NONE) {
+            return mapper.readValue(data, HEADER_LENGTH, data.length - HEADER_LENGTH, type);
+        }
+        int rawLength = ByteBuffer.wrap(data, 3, 4).getInt();
+        if (rawLength < 0) {
+            throw new IOException("状态数据格式头长度无效: " + rawLength);
+        }
+        byte[] raw = new byte[rawLength];
+        long size;
+        try {
+            size = Zstd.decompressByteArray(raw, 0, rawLength, data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+        } catch (ZstdException e) {
+            throw new IOException("状态数据解压失败: " + e.getMessage(), e);
+        }
+        if (Zstd.isError(size) || size != rawLength) {
+            throw new IOException("状态数据解压失败: " + (Zstd.isError(size) ? Zstd.getErrorName(size) : "size=" + size));
+        }
+        return mapper.readValue(raw, type);
+    }
+
+    private ObjectMapper mapper(Format format) {
+        return format == Format.SMILE ? smileMapper : jsonMapper;
+    }
+
+    private static <E extends Enum<E>> E enumAt(E[] values, byte code, String name) throws IOException {
+        if (code < 0 || code >= values.length) {
+            throw new IOException("未知的状态数据" + name + ": " + code);
+        }
+        return values[code];
+    }
+}
@@ -0,0 +1,89 @@
+package com.legal.assistant.session;
+
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.errors.ErrorResponseException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * 基于 MinIO 的会话冷存储，每个会话一个对象：{prefix}{sessionId}.bin
+ */
+public class MinioColdSessionStore implements ColdSessionStore {
+
+    private final MinioClient minioClient;
+    private final String bucketName;
+    private final String prefix;
+
+    /**
+     * @param bucketName 存储桶（需已存在）
+     * @param prefix     对象名前缀，如 agent-sessions/
+     */
+    public MinioColdSessionStore(MinioClient minioClient, String bucketName, String prefix) {
+        this.minioClient = minioClient;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+    }
+
+    private String objectName(String sessionId) {
+        return prefix + sessionId + ".bin";
+    }
+
+    @Override
+    public void put(String sessionId, byte[] archive) throws IOException {
+        try {
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName(sessionId))
+                            .stream(new ByteArrayInputStream(archive), archive.length, -1)
+                            .contentType("application/octet-stream")
+                            .build()
+            );
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("写入会话归档失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] get(String sessionId) throws IOException {
+        try (GetObjectResponse response = minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName(sessionId))
+                        .build())) {
+            return response.readAllBytes();
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return null;
+            }
+            throw new IOException("读取会话归档失败: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("读取会话归档失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete(String sessionId) throws IOException {
+        try {
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName(sessionId))
+                            .build()
+            );
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("删除会话归档失败: " + e.getMessage(), e);
+        }
+    }
+}
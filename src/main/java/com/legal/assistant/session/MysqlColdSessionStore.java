@@ -0,0 +1,46 @@
+package com.legal.assistant.session;
+
+import com.legal.assistant.entity.AgentSessionArchive;
+import com.legal.assistant.mapper.AgentSessionArchiveMapper;
+
+import java.io.IOException;
+
+/**
+ * 基于 MySQL 的会话冷存储，表 agent_session_archive 每个会话一行（见 db/add_agent_session_archive.sql）
+ */
+public class MysqlColdSessionStore implements ColdSessionStore {
+
+    private final AgentSessionArchiveMapper archiveMapper;
+
+    public MysqlColdSessionStore(AgentSessionArchiveMapper archiveMapper) {
+        this.archiveMapper = archiveMapper;
+    }
+
+    @Override
+    public void put(String sessionId, byte[] archive) throws IOException {
+        try {
+            archiveMapper.upsert(sessionId, archive, archive.length);
+        } catch (RuntimeException e) {
+            throw new IOException("写入会话归档失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] get(String sessionId) throws IOException {
+        try {
+            AgentSessionArchive archive = archiveMapper.selectById(sessionId);
+            return archive != null ? archive.getData() : null;
+        } catch (RuntimeException e) {
+            throw new IOException("读取会话归档失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete(String sessionId) throws IOException {
+        try {
+            archiveMapper.deleteById(sessionId);
+        } catch (RuntimeException e) {
+            throw new IOException("删除会话归档失败: " + e.getMessage(), e);
+        }
+    }
+}
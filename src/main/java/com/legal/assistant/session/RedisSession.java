@@ -1,33 +1,342 @@
 package com.legal.assistant.session;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.agentscope.core.session.Session;
 import io.agentscope.core.state.SessionKey;
 import io.agentscope.core.state.SimpleSessionKey;
 import io.agentscope.core.state.State;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * 基于 Redis 的 AgentScope Session 实现
- * 用于持久化存储 Agent 状态和记忆
+ * 用于持久化存储 Agent 状态和记忆，读写耗时记录为 chat.session.store{op=save|saveList|get|getList|writeBatch|readBatch}
+ * <p>
+ * 1. 写入：每次 save 由一个 Lua 脚本完成（删除旧值、写入、续期、登记索引），读取方不会看到写了一半的列表；
+ *    在 {@link #writeBatch} 内的多次 save 先缓冲，结束时一次脚本调用原子写入整个会话
+ * 2. 读取：在 {@link #readBatch} 内首次访问时用一次脚本调用取回全部状态（一致的快照），
+ *    之后的 exists / get / getList 直接读取该快照
+ * 3. 增量保存：记录每个列表已持久化的条数、各条目的指纹与版本号（高水位）；再次保存时若已持久化部分未变，
+ *    只追加新条目。AutoContextMemory 压缩改写了历史、列表变短，或版本号与 Redis 中不一致
+ *    （其他节点写过该会话）时，回退为整表重写
+ * 4. 会话索引：agentscope:session:_index 按最近访问时间记录全部会话，供分页枚举（{@link #listSessions}）
+ *    与过期清理（{@link #sweepExpired}）使用，不使用 KEYS
+ * 5. 会话版本号：每次写入递增，{@link #writeBatch(SessionKey, long, Runnable)} 可按期望版本号条件写入，
+ *    避免持有旧记忆的节点覆盖其他节点写入的新记忆
+ * 6. 编码：状态由 {@link StateCodec} 编码为字节后写入（列表逐条编码），默认为与旧版本一致的纯 JSON；
+ *    单条编解码耗时记录为 chat.session.codec.encode / chat.session.codec.decode
+ * 7. 冷存储：配置 {@link ColdSessionStore} 后，{@link #demoteIdle} 把长时间未访问的会话打包压缩移入冷存储，
+ *    并登记在 agentscope:session:_cold；之后任一读取（readBatch / get / getList / exists / sessionVersion）
+ *    在 Redis 中未命中时按该登记从冷存储恢复，恢复后删除归档。降级与恢复分别记录为
+ *    chat.session.tier.demote{result} 与 chat.session.tier.promote{result}
  */
 @Slf4j
 public class RedisSession implements Session {
 
     private static final String KEY_PREFIX = "agentscope:session:";
     private static final String KEYS_SUFFIX = ":_keys";
+    private static final String VERSIONS_SUFFIX = ":_versions";
     private static final String LIST_SUFFIX = ":list";
 
+    /**
+     * 会话索引（有序集合，成员为 sessionId，分值为最近一次读写的毫秒时间戳）
+     */
+    private static final String SESSION_INDEX_KEY = KEY_PREFIX + "_index";
+
+    /**
+     * 写入过的全部状态成员名（如 agent_meta、memory_messages:list），删除与清理时据此找出不在会话索引中的残留 key
+     */
+    private static final String MEMBERS_KEY = KEY_PREFIX + "_members";
+
+    /**
+     * 已移入冷存储的会话（有序集合，成员为 sessionId，分值为移入的毫秒时间戳）
+     */
+    private static final String COLD_INDEX_KEY = KEY_PREFIX + "_cold";
+
+    /**
+     * 会话版本号在列表版本号 hash 中的字段名，每次写入递增
+     */
+    private static final String SESSION_VERSION_FIELD = "_session";
+
+    /**
+     * 不检查会话版本号
+     */
+    public static final long ANY_VERSION = -1;
+
+    /**
+     * 会话版本号与期望不一致（其他节点已写入），未写入任何状态
+     */
+    public static final long VERSION_CONFLICT = -2;
+
+    /**
+     * 列表追加的前提不满足，未写入任何状态
+     */
+    private static final long APPEND_MISMATCH = -1;
+
+    /**
+     * 单次 RPUSH 的最大参数数，避免超出 Lua unpack 的栈限制
+     */
+    private static final int RPUSH_CHUNK = 1000;
+
+    /**
+     * 原子写入一个会话的若干状态
+     * KEYS[1] 为索引 key，KEYS[2] 为列表版本号 hash，KEYS[3] 为会话索引，KEYS[4] 为状态成员名集合，KEYS[5..n] 为状态 key；
+     * ARGV[1] 为过期秒数，ARGV[2] 为当前毫秒时间戳，ARGV[3] 为 sessionId，ARGV[4] 为期望的会话版本号（空串表示不检查），
+     * 之后每个状态依次为：类型、索引成员名、值个数、新版本号、期望版本号、期望长度、值...
+     * 类型 v 单值覆盖；l 列表整表重写（空列表只删除旧列表）；a 列表追加，要求版本号与长度均与期望一致，
+     * 任一追加的前提不满足时不做任何写入并返回 -1，由调用方改为整表重写；
+     * 会话版本号（列表版本号 hash 的 _session 字段）与期望不一致时不做任何写入并返回 -2，否则递增并返回新的会话版本号
+     */
+    private static final DefaultRedisScript<Long> SAVE_SCRIPT = new DefaultRedisScript<>(
+            "local ttl = tonumber(ARGV[1]) " +
+            "if ARGV[4] ~= '' and tonumber(redis.call('hget', KEYS[2], '" + SESSION_VERSION_FIELD + "') or '0') " +
+            "    ~= tonumber(ARGV[4]) then return -2 end " +
+            "local i = 5 " +
+            "for k = 5, #KEYS do " +
+            "  if ARGV[i] == 'a' then " +
+            "    if redis.call('hget', KEYS[2], ARGV[i + 1]) ~= ARGV[i + 4] " +
+            "        or redis.call('llen', KEYS[k]) ~= tonumber(ARGV[i + 5]) then return -1 end " +
+            "  end " +
+            "  i = i + 6 + tonumber(ARGV[i + 2]) " +
+            "end " +
+            "i = 5 " +
+            "local indexed = 0 " +
+            "for k = 5, #KEYS do " +
+            "  local kind = ARGV[i] " +
+            "  local member = ARGV[i + 1] " +
+            "  local n = tonumber(ARGV[i + 2]) " +
+            "  local version = ARGV[i + 3] " +
+            "  i = i + 6 " +
+            "  if kind ~= 'a' then redis.call('del', KEYS[k]) end " +
+            "  if kind == 'v' then " +
+            "    redis.call('set', KEYS[k], ARGV[i]) " +
+            "  else " +
+            "    for j = i, i + n - 1, " + RPUSH_CHUNK + " do " +
+            "      redis.call('rpush', KEYS[k], unpack(ARGV, j, math.min(j + " + (RPUSH_CHUNK - 1) + ", i + n - 1))) " +
+            "    end " +
+            "    if n > 0 or kind == 'a' then redis.call('hset', KEYS[2], member, version) " +
+            "    else redis.call('hdel', KEYS[2], member) end " +
+            "  end " +
+            "  if n > 0 or kind == 'a' then " +
+            "    if ttl > 0 then redis.call('expire', KEYS[k], ttl) end " +
+            "    redis.call('sadd', KEYS[1], member) " +
+            "    redis.call('sadd', KEYS[4], member) " +
+            "    indexed = indexed + 1 " +
+            "  end " +
+            "  i = i + n " +
+            "end " +
+            "local sessionVersion = redis.call('hincrby', KEYS[2], '" + SESSION_VERSION_FIELD + "', 1) " +
+            "if ttl > 0 then redis.call('expire', KEYS[2], ttl) end " +
+            "if indexed > 0 then " +
+            "  redis.call('zadd', KEYS[3], ARGV[2], ARGV[3]) " +
+            "  if ttl > 0 then redis.call('expire', KEYS[1], ttl) end " +
+            "end " +
+            "return sessionVersion",
+            Long.class);
+
+    /**
+     * 一次读取一个会话的全部状态
+     * KEYS[1] 为索引 key，KEYS[2] 为列表版本号 hash，KEYS[3] 为会话索引；ARGV[1] 为状态 key 前缀，
+     * ARGV[2] 为当前毫秒时间戳，ARGV[3] 为 sessionId；会话存在时刷新其在会话索引中的访问时间（ARGV[2] 为空串时不刷新）。
+     * 返回扁平数组：版本号 hash 的字段数 n、n 个字段与值，之后每个存在的状态依次为：索引成员名、值个数、值...
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final DefaultRedisScript<List<Object>> LOAD_SCRIPT = new DefaultRedisScript(
+            "local out = {} " +
+            "local versions = redis.call('hgetall', KEYS[2]) " +
+            "out[1] = tostring(#versions) " +
+            "for _, v in ipairs(versions) do out[#out + 1] = v end " +
+            "local members = redis.call('smembers', KEYS[1]) " +
+            "if #members > 0 and ARGV[2] ~= '' then redis.call('zadd', KEYS[3], ARGV[2], ARGV[3]) end " +
+            "for _, member in ipairs(members) do " +
+            "  local key = ARGV[1] .. member " +
+            "  if string.sub(member, -" + LIST_SUFFIX.length() + ") == '" + LIST_SUFFIX + "' then " +
+            "    local values = redis.call('lrange', key, 0, -1) " +
+            "    out[#out + 1] = member " +
+            "    out[#out + 1] = tostring(#values) " +
+            "    for _, v in ipairs(values) do out[#out + 1] = v end " +
+            "  else " +
+            "    local value = redis.call('get', key) " +
+            "    if value then " +
+            "      out[#out + 1] = member " +
+            "      out[#out + 1] = '1' " +
+            "      out[#out + 1] = value " +
+            "    end " +
+            "  end " +
+            "end " +
+            "return out",
+            List.class);
+
+    /**
+     * 删除一个会话的全部 key 并移出会话索引，包括不在该会话索引中的残留状态 key
+     * KEYS[1] 为会话索引，KEYS[2] 为状态成员名集合，KEYS[3] 为索引 key，KEYS[4] 为列表版本号 hash；
+     * ARGV[1] 为状态 key 前缀，ARGV[2] 为 sessionId，ARGV[3] 非空时为清理截止时间，ARGV[4] 为当前毫秒时间戳：
+     * 会话的访问时间晚于截止时间（清理期间被重新访问）时不做任何删除并返回 -1；
+     * 索引 key 仍然存在（会话未过期，如回填时的估算偏早）时改记访问时间为当前时间并返回 -1；否则返回删除的 key 数
+     */
+    private static final DefaultRedisScript<Long> DELETE_SCRIPT = new DefaultRedisScript<>(
+            "if ARGV[3] ~= '' then " +
+            "  local score = redis.call('zscore', KEYS[1], ARGV[2]) " +
+            "  if score and tonumber(score) > tonumber(ARGV[3]) then return -1 end " +
+            "  if redis.call('exists', KEYS[3]) == 1 then " +
+            "    redis.call('zadd', KEYS[1], ARGV[4], ARGV[2]) " +
+            "    return -1 " +
+            "  end " +
+            "end " +
+            "local members = {} " +
+            "for _, member in ipairs(redis.call('smembers', KEYS[2])) do members[member] = true end " +
+            "for _, member in ipairs(redis.call('smembers', KEYS[3])) do members[member] = true end " +
+            "local deleted = redis.call('del', KEYS[3], KEYS[4]) " +
+            "for member in pairs(members) do deleted = deleted + redis.call('del', ARGV[1] .. member) end " +
+            "redis.call('zrem', KEYS[1], ARGV[2]) " +
+            "return deleted",
+            Long.class);
+
+    /**
+     * 会话移入冷存储：会话在读取快照之后未被访问、也未被写入时，删除其全部 key 并从会话索引移到冷存储登记
+     * KEYS[1] 为会话索引，KEYS[2] 为状态成员名集合，KEYS[3] 为索引 key，KEYS[4] 为列表版本号 hash，KEYS[5] 为冷存储登记；
+     * ARGV[1] 为状态 key 前缀，ARGV[2] 为 sessionId，ARGV[3] 为空闲截止时间，ARGV[4] 为快照时的会话版本号，ARGV[5] 为当前毫秒时间戳。
+     * 不满足条件时返回 -1，否则返回删除的 key 数
+     */
+    private static final DefaultRedisScript<Long> DEMOTE_SCRIPT = new DefaultRedisScript<>(
+            "local score = redis.call('zscore', KEYS[1], ARGV[2]) " +
+            "if not score or tonumber(score) > tonumber(ARGV[3]) then return -1 end " +
+            "if tonumber(redis.call('hget', KEYS[4], '" + SESSION_VERSION_FIELD + "') or '0') " +
+            "    ~= tonumber(ARGV[4]) then return -1 end " +
+            "local members = {} " +
+            "for _, member in ipairs(redis.call('smembers', KEYS[2])) do members[member] = true end " +
+            "for _, member in ipairs(redis.call('smembers', KEYS[3])) do members[member] = true end " +
+            "local deleted = redis.call('del', KEYS[3], KEYS[4]) " +
+            "for member in pairs(members) do deleted = deleted + redis.call('del', ARGV[1] .. member) end " +
+            "redis.call('zrem', KEYS[1], ARGV[2]) " +
+            "redis.call('zadd', KEYS[5], ARGV[5], ARGV[2]) " +
+            "return deleted",
+            Long.class);
+
+    /**
+     * 从冷存储归档恢复会话：仅当会话仍登记在冷存储中时写入，并移回会话索引
+     * KEYS[1] 为索引 key，KEYS[2] 为列表版本号 hash，KEYS[3] 为会话索引，KEYS[4] 为状态成员名集合，KEYS[5] 为冷存储登记；
+     * ARGV[1] 为过期秒数，ARGV[2] 为当前毫秒时间戳，ARGV[3] 为 sessionId，ARGV[4] 为状态 key 前缀，
+     * ARGV[5] 为版本号 hash 的字段与值个数 n，之后 n 个字段与值，再之后每个状态依次为：索引成员名、值个数、值...
+     * 已被其他节点恢复或已被清除时返回 0；Redis 中已有该会话（移出后又被直接写入）时以 Redis 为准，只取消登记并返回 0；
+     * 否则返回 1
+     */
+    private static final DefaultRedisScript<Long> RESTORE_SCRIPT = new DefaultRedisScript<>(
+            "if not redis.call('zscore', KEYS[5], ARGV[3]) then return 0 end " +
+            "redis.call('zrem', KEYS[5], ARGV[3]) " +
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+            "local ttl = tonumber(ARGV[1]) " +
+            "local n = tonumber(ARGV[5]) " +
+            "local i = 6 " +
+            "if n > 0 then " +
+            "  redis.call('del', KEYS[2]) " +
+            "  redis.call('hset', KEYS[2], unpack(ARGV, i, i + n - 1)) " +
+            "  if ttl > 0 then redis.call('expire', KEYS[2], ttl) end " +
+            "end " +
+            "i = i + n " +
+            "while i <= #ARGV do " +
+            "  local member = ARGV[i] " +
+            "  local count = tonumber(ARGV[i + 1]) " +
+            "  local key = ARGV[4] .. member " +
+            "  i = i + 2 " +
+            "  redis.call('del', key) " +
+            "  if string.sub(member, -" + LIST_SUFFIX.length() + ") == '" + LIST_SUFFIX + "' then " +
+            "    for j = i, i + count - 1, " + RPUSH_CHUNK + " do " +
+            "      redis.call('rpush', key, unpack(ARGV, j, math.min(j + " + (RPUSH_CHUNK - 1) + ", i + count - 1))) " +
+            "    end " +
+            "  else " +
+            "    redis.call('set', key, ARGV[i]) " +
+            "  end " +
+            "  if ttl > 0 then redis.call('expire', key, ttl) end " +
+            "  redis.call('sadd', KEYS[1], member) " +
+            "  redis.call('sadd', KEYS[4], member) " +
+            "  i = i + count " +
+            "end " +
+            "if ttl > 0 then redis.call('expire', KEYS[1], ttl) end " +
+            "redis.call('zadd', KEYS[3], ARGV[2], ARGV[3]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 取消冷存储登记：仅当移入时间不晚于截止时间（期间未被恢复后再次移入）时移除并返回 1，否则返回 0
+     * KEYS[1] 为冷存储登记；ARGV[1] 为 sessionId，ARGV[2] 为截止时间
+     */
+    private static final DefaultRedisScript<Long> PURGE_SCRIPT = new DefaultRedisScript<>(
+            "local score = redis.call('zscore', KEYS[1], ARGV[1]) " +
+            "if score and tonumber(score) <= tonumber(ARGV[2]) then " +
+            "  redis.call('zrem', KEYS[1], ARGV[1]) " +
+            "  return 1 " +
+            "end " +
+            "return 0",
+            Long.class);
+
+    /**
+     * 会话索引分页与回填时单次读取的条数
+     */
+    private static final int INDEX_PAGE_SIZE = 1000;
+
     private final StringRedisTemplate redisTemplate;
-    private final ObjectMapper objectMapper;
     private final long expireSeconds;
+    private final Timer saveTimer;
+    private final Timer saveListTimer;
+    private final Timer getTimer;
+    private final Timer getListTimer;
+    private final Timer writeBatchTimer;
+    private final Timer readBatchTimer;
+    private final Timer encodeTimer;
+    private final Timer decodeTimer;
+    private final MeterRegistry registry;
+
+    /**
+     * 状态编解码器
+     */
+    private volatile StateCodec codec = new FramedStateCodec();
+
+    /**
+     * 冷存储，为 null 时不移出也不恢复会话
+     */
+    private volatile ColdSessionStore coldStore;
+
+    /**
+     * 冷存储归档的 Zstd 压缩级别
+     */
+    private volatile int archiveLevel = 6;
+
+    /**
+     * 是否启用列表增量保存
+     */
+    private volatile boolean incrementalSave = true;
+
+    /**
+     * 各列表的持久化高水位，key 为列表的 Redis key
+     */
+    private final Cache<String, ListMark> listMarks = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(Duration.ofHours(2))
+            .build();
+
+    /**
+     * 当前线程正在进行的批量读写
+     */
+    private final ThreadLocal<Batch> currentBatch = new ThreadLocal<>();
 
     /**
      * 创建 RedisSession
@@ -45,10 +354,28 @@ public class RedisSession implements Session {
      * @param expireSeconds 过期时间（秒），0表示永不过期
      */
     public RedisSession(StringRedisTemplate redisTemplate, long expireSeconds) {
+        this(redisTemplate, expireSeconds, null);
+    }
+
+    /**
+     * 创建 RedisSession
+     *
+     * @param redisTemplate Spring Redis 模板
+     * @param expireSeconds 过期时间（秒），0表示永不过期
+     * @param meterRegistry 指标注册表，为 null 时使用全局注册表
+     */
+    public RedisSession(StringRedisTemplate redisTemplate, long expireSeconds, MeterRegistry meterRegistry) {
         this.redisTemplate = redisTemplate;
         this.expireSeconds = expireSeconds;
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.registerModule(new JavaTimeModule());
+        this.registry = meterRegistry != null ? meterRegistry : Metrics.globalRegistry;
+        this.saveTimer = registry.timer("chat.session.store", "op", "save");
+        this.saveListTimer = registry.timer("chat.session.store", "op", "saveList");
+        this.getTimer = registry.timer("chat.session.store", "op", "get");
+        this.getListTimer = registry.timer("chat.session.store", "op", "getList");
+        this.writeBatchTimer = registry.timer("chat.session.store", "op", "writeBatch");
+        this.readBatchTimer = registry.timer("chat.session.store", "op", "readBatch");
+        this.encodeTimer = registry.timer("chat.session.codec.encode");
+        this.decodeTimer = registry.timer("chat.session.codec.decode");
     }
 
     /**
@@ -77,99 +404,451 @@ public class RedisSession implements Session {
     }
 
     /**
-     * 设置过期时间
+     * 获取会话的列表版本号 key
+     */
+    private String getVersionsKey(SessionKey sessionKey) {
+        return KEY_PREFIX + getSessionId(sessionKey) + VERSIONS_SUFFIX;
+    }
+
+    /**
+     * 设置是否启用列表增量保存，关闭时每次保存都整表重写
+     */
+    public void setIncrementalSave(boolean incrementalSave) {
+        this.incrementalSave = incrementalSave;
+        if (!incrementalSave) {
+            listMarks.invalidateAll();
+        }
+    }
+
+    /**
+     * 设置状态编解码器，新的编解码器需能读取此前写入的数据
+     * 已持久化列表的指纹按旧编码计算，切换后每个列表的首次保存会整表重写
      */
-    private void setExpire(String key) {
-        if (expireSeconds > 0) {
-            redisTemplate.expire(key, expireSeconds, TimeUnit.SECONDS);
+    public void setCodec(StateCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * 设置冷存储，设置后读取未命中时会尝试从冷存储恢复
+     *
+     * @param archiveLevel 归档的 Zstd 压缩级别
+     */
+    public void setColdStore(ColdSessionStore coldStore, int archiveLevel) {
+        this.coldStore = coldStore;
+        this.archiveLevel = archiveLevel;
+    }
+
+    // ==================== 批量读写 ====================
+
+    /**
+     * 在批量写入中执行 writes（如 agent.saveTo），期间对该会话的 save 先缓冲，结束时一次原子写入
+     * writes 抛出异常时丢弃缓冲，不写入任何状态
+     *
+     * @return 写入后的会话版本号，没有需要写入的状态时返回 0
+     */
+    public long writeBatch(SessionKey sessionKey, Runnable writes) {
+        return writeBatch(sessionKey, ANY_VERSION, writes);
+    }
+
+    /**
+     * 按期望的会话版本号批量写入：Redis 中的版本号与 expectedVersion 不同（其他节点已写入更新的状态）时不写入任何状态
+     *
+     * @param expectedVersion 期望的会话版本号，从未写入过的会话为 0，{@link #ANY_VERSION} 表示不检查
+     * @return 写入后的会话版本号；没有需要写入的状态时返回 0；版本号不一致时返回 {@link #VERSION_CONFLICT}
+     */
+    public long writeBatch(SessionKey sessionKey, long expectedVersion, Runnable writes) {
+        if (currentBatch.get() != null) {
+            writes.run();
+            return 0;
+        }
+        Batch batch = new Batch(getSessionId(sessionKey), true);
+        currentBatch.set(batch);
+        try {
+            writes.run();
+        } finally {
+            currentBatch.remove();
+        }
+        if (batch.pendingWrites.isEmpty()) {
+            return 0;
+        }
+        long version = writeBatchTimer.record(() -> flush(sessionKey, batch.pendingWrites, expectedVersion));
+        log.debug("批量保存状态: sessionKey={}, keys={}, version={}", batch.sessionId, batch.pendingWrites.keySet(), version);
+        return version;
+    }
+
+    /**
+     * 会话当前的版本号，从未写入过的会话为 0
+     * 在 {@link #readBatch} 内返回读取快照时的版本号，否则读取 Redis（一次 HGET）
+     */
+    public long sessionVersion(SessionKey sessionKey) {
+        Batch batch = batchFor(sessionKey, false);
+        if (batch != null) {
+            snapshot(sessionKey, batch);
+            return batch.version;
+        }
+        Object version = redisTemplate.opsForHash().get(getVersionsKey(sessionKey), SESSION_VERSION_FIELD);
+        if (version == null && restoreIfCold(sessionKey)) {
+            version = redisTemplate.opsForHash().get(getVersionsKey(sessionKey), SESSION_VERSION_FIELD);
+        }
+        return version != null ? Long.parseLong(version.toString()) : 0;
+    }
+
+    /**
+     * 在批量读取中执行 reads（如 agent.loadIfExists），首次访问该会话时一次取回全部状态
+     */
+    public <T> T readBatch(SessionKey sessionKey, Supplier<T> reads) {
+        if (currentBatch.get() != null) {
+            return reads.get();
+        }
+        currentBatch.set(new Batch(getSessionId(sessionKey), false));
+        try {
+            return reads.get();
+        } finally {
+            currentBatch.remove();
+        }
+    }
+
+    /**
+     * 当前线程针对该会话的批量操作，不在批量中或会话不同时返回 null
+     */
+    private Batch batchFor(SessionKey sessionKey, boolean write) {
+        Batch batch = currentBatch.get();
+        if (batch == null || batch.write != write || !batch.sessionId.equals(getSessionId(sessionKey))) {
+            return null;
+        }
+        return batch;
+    }
+
+    /**
+     * 读取会话快照：一次脚本调用取回索引、版本号与全部单值 / 列表；Redis 中没有该会话时尝试从冷存储恢复
+     * 不使用管道，避免每次读取都占用一条独占连接
+     */
+    private Map<String, Object> loadSnapshot(SessionKey sessionKey, Batch batch) {
+        SessionSnapshot raw = readRaw(sessionKey, true);
+        if (raw.isEmpty() && restoreIfCold(sessionKey)) {
+            raw = readRaw(sessionKey, true);
+        }
+        Map<String, Object> snapshot = new HashMap<>();
+        batch.version = raw.sessionVersion(SESSION_VERSION_FIELD);
+        for (Map.Entry<String, List<byte[]>> entry : raw.members.entrySet()) {
+            String member = entry.getKey();
+            List<byte[]> values = entry.getValue();
+            if (!member.endsWith(LIST_SUFFIX)) {
+                snapshot.put(member, values.get(0));
+            } else if (!values.isEmpty()) {
+                snapshot.put(member, values);
+                // 记录读到的高水位，之后的保存可直接追加
+                String version = raw.versions.get(member);
+                if (incrementalSave && version != null) {
+                    listMarks.put(getKey(sessionKey, member), new ListMark(fingerprints(values), version));
+                }
+            }
+        }
+        log.debug("批量读取状态: sessionKey={}, keys={}", getSessionId(sessionKey), snapshot.keySet());
+        return snapshot;
+    }
+
+    /**
+     * 一次脚本调用读取会话在 Redis 中的全部原始数据
+     *
+     * @param touch 是否刷新会话在会话索引中的访问时间
+     */
+    private SessionSnapshot readRaw(SessionKey sessionKey, boolean touch) {
+        return SessionSnapshot.fromReply(execute(LOAD_SCRIPT,
+                List.of(getKeysIndexKey(sessionKey), getVersionsKey(sessionKey), SESSION_INDEX_KEY),
+                List.of(bytes(getKey(sessionKey, "")), bytes(touch ? String.valueOf(System.currentTimeMillis()) : ""),
+                        bytes(getSessionId(sessionKey)))));
+    }
+
+    private Map<String, Object> snapshot(SessionKey sessionKey, Batch batch) {
+        if (batch.snapshot == null) {
+            batch.snapshot = readBatchTimer.record(() -> loadSnapshot(sessionKey, batch));
+        }
+        return batch.snapshot;
+    }
+
+    /**
+     * 一次脚本调用写入若干状态，key 为索引成员名（列表带 :list 后缀）
+     *
+     * @return 写入后的会话版本号，版本号不一致时返回 {@link #VERSION_CONFLICT}
+     */
+    private long flush(SessionKey sessionKey, Map<String, PendingWrite> writes, long expectedVersion) {
+        long result = flush(sessionKey, writes, incrementalSave, expectedVersion);
+        if (result == APPEND_MISMATCH) {
+            // 追加的前提不满足：Redis 中的列表已被其他节点改写或已过期，整表重写
+            log.info("会话列表版本不一致，改为整表重写: sessionKey={}", getSessionId(sessionKey));
+            registry.counter("chat.session.store.diverged").increment();
+            result = flush(sessionKey, writes, false, expectedVersion);
+        }
+        if (result == VERSION_CONFLICT) {
+            log.warn("会话已被其他节点更新，放弃写入: sessionKey={}, expectedVersion={}",
+                    getSessionId(sessionKey), expectedVersion);
+            registry.counter("chat.session.store.conflict").increment();
+        }
+        return result;
+    }
+
+    /**
+     * @return 写入后的会话版本号；追加的前提不满足或版本号不一致、未写入任何状态时返回对应的负数
+     */
+    private long flush(SessionKey sessionKey, Map<String, PendingWrite> writes, boolean allowAppend,
+                       long expectedVersion) {
+        List<String> keys = new ArrayList<>(writes.size() + 4);
+        List<byte[]> args = new ArrayList<>();
+        Map<String, ListMark> newMarks = new HashMap<>();
+        long appendedEntries = 0;
+        long appendedBytes = 0;
+        long rewrittenEntries = 0;
+        long rewrittenBytes = 0;
+        keys.add(getKeysIndexKey(sessionKey));
+        keys.add(getVersionsKey(sessionKey));
+        keys.add(SESSION_INDEX_KEY);
+        keys.add(MEMBERS_KEY);
+        args.add(bytes(String.valueOf(expireSeconds)));
+        args.add(bytes(String.valueOf(System.currentTimeMillis())));
+        args.add(bytes(getSessionId(sessionKey)));
+        args.add(bytes(expectedVersion == ANY_VERSION ? "" : String.valueOf(expectedVersion)));
+        for (Map.Entry<String, PendingWrite> entry : writes.entrySet()) {
+            String redisKey = getKey(sessionKey, entry.getKey());
+            PendingWrite write = entry.getValue();
+            keys.add(redisKey);
+            if (!write.list) {
+                addHeader(args, "v", entry.getKey(), 1, "", "", 0);
+                args.add(write.values.get(0));
+                continue;
+            }
+
+            long[] fingerprints = fingerprints(write.values);
+            String version = UUID.randomUUID().toString();
+            ListMark mark = allowAppend ? listMarks.getIfPresent(redisKey) : null;
+            List<byte[]> values = write.values;
+            if (mark != null && mark.isPrefixOf(fingerprints)) {
+                values = write.values.subList(mark.fingerprints.length, write.values.size());
+                addHeader(args, "a", entry.getKey(), values.size(), version, mark.version, mark.fingerprints.length);
+                appendedEntries += values.size();
+                appendedBytes += totalLength(values);
+            } else {
+                addHeader(args, "l", entry.getKey(), values.size(), version, "", 0);
+                rewrittenEntries += values.size();
+                rewrittenBytes += totalLength(values);
+            }
+            args.addAll(values);
+            newMarks.put(redisKey, new ListMark(fingerprints, version));
+        }
+
+        Long result = execute(SAVE_SCRIPT, keys, args);
+        if (result != null && result < 0) {
+            newMarks.keySet().forEach(listMarks::invalidate);
+            return result;
+        }
+        if (incrementalSave) {
+            newMarks.forEach((redisKey, mark) -> {
+                if (mark.fingerprints.length > 0) {
+                    listMarks.put(redisKey, mark);
+                } else {
+                    listMarks.invalidate(redisKey);
+                }
+            });
+        }
+        recordWritten("append", appendedEntries, appendedBytes);
+        recordWritten("rewrite", rewrittenEntries, rewrittenBytes);
+        return result != null ? result : 0;
+    }
+
+    /**
+     * 以字节形式传递脚本参数与返回值，编码后的状态不一定是合法的 UTF-8
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T execute(DefaultRedisScript<T> script, List<String> keys, List<byte[]> args) {
+        RedisSerializer<T> resultSerializer = (RedisSerializer<T>) RedisSerializer.byteArray();
+        return redisTemplate.execute(script, RedisSerializer.byteArray(), resultSerializer, keys, args.toArray());
+    }
+
+    private static void addHeader(List<byte[]> args, String kind, String member, int count,
+                                  String version, String expectedVersion, int expectedLength) {
+        args.add(bytes(kind));
+        args.add(bytes(member));
+        args.add(bytes(String.valueOf(count)));
+        args.add(bytes(version));
+        args.add(bytes(expectedVersion));
+        args.add(bytes(String.valueOf(expectedLength)));
+    }
+
+    /**
+     * 记录写入的列表条目数与字节数：chat.session.store.entries / chat.session.store.bytes{mode=append|rewrite}
+     */
+    private void recordWritten(String mode, long entries, long bytes) {
+        if (entries > 0) {
+            registry.counter("chat.session.store.entries", "mode", mode).increment(entries);
+            registry.counter("chat.session.store.bytes", "mode", mode).increment(bytes);
+        }
+    }
+
+    private static long totalLength(List<byte[]> values) {
+        long length = 0;
+        for (byte[] value : values) {
+            length += value.length;
         }
+        return length;
     }
 
+    /**
+     * 各条目编码结果的 64 位 FNV-1a 指纹
+     */
+    private static long[] fingerprints(List<byte[]> values) {
+        long[] fingerprints = new long[values.size()];
+        for (int i = 0; i < fingerprints.length; i++) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : values.get(i)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            fingerprints[i] = hash;
+        }
+        return fingerprints;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ==================== Session 接口 ====================
+
     @Override
     public void save(SessionKey sessionKey, String key, State value) {
-        try {
-            String redisKey = getKey(sessionKey, key);
-            String json = objectMapper.writeValueAsString(value);
-            redisTemplate.opsForValue().set(redisKey, json);
-            setExpire(redisKey);
-
-            // 添加到 keys 索引
-            String keysIndexKey = getKeysIndexKey(sessionKey);
-            redisTemplate.opsForSet().add(keysIndexKey, key);
-            setExpire(keysIndexKey);
-
-            log.debug("保存状态: sessionKey={}, key={}", getSessionId(sessionKey), key);
-        } catch (JsonProcessingException e) {
-            log.error("序列化状态失败: sessionKey={}, key={}", getSessionId(sessionKey), key, e);
-            throw new RuntimeException("Failed to serialize state", e);
+        Batch batch = batchFor(sessionKey, true);
+        if (batch != null) {
+            batch.pendingWrites.put(key, new PendingWrite(false, List.of(serialize(sessionKey, key, value))));
+            return;
         }
+        saveTimer.record(() -> saveValue(sessionKey, key, value));
+    }
+
+    private void saveValue(SessionKey sessionKey, String key, State value) {
+        flush(sessionKey, Map.of(key, new PendingWrite(false, List.of(serialize(sessionKey, key, value)))), ANY_VERSION);
+        log.debug("保存状态: sessionKey={}, key={}", getSessionId(sessionKey), key);
     }
 
     @Override
     public void save(SessionKey sessionKey, String key, List<? extends State> values) {
-        String redisKey = getKey(sessionKey, key) + LIST_SUFFIX;
+        Batch batch = batchFor(sessionKey, true);
+        if (batch != null) {
+            batch.pendingWrites.put(key + LIST_SUFFIX, new PendingWrite(true, serializeAll(sessionKey, key, values)));
+            return;
+        }
+        saveListTimer.record(() -> saveValues(sessionKey, key, values));
+    }
 
-        // 先删除旧列表
-        redisTemplate.delete(redisKey);
+    private void saveValues(SessionKey sessionKey, String key, List<? extends State> values) {
+        List<byte[]> encodedList = serializeAll(sessionKey, key, values);
+        flush(sessionKey, Map.of(key + LIST_SUFFIX, new PendingWrite(true, encodedList)), ANY_VERSION);
+        log.debug("保存状态列表: sessionKey={}, key={}, size={}", getSessionId(sessionKey), key, encodedList.size());
+    }
 
-        if (values == null || values.isEmpty()) {
-            return;
+    private byte[] encode(State value) throws IOException {
+        long start = System.nanoTime();
+        byte[] data = codec.encode(value);
+        encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return data;
+    }
+
+    private <T extends State> T decode(byte[] data, Class<T> type) throws IOException {
+        long start = System.nanoTime();
+        T value = codec.decode(data, type);
+        decodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return value;
+    }
+
+    private byte[] serialize(SessionKey sessionKey, String key, State value) {
+        try {
+            return encode(value);
+        } catch (IOException e) {
+            log.error("序列化状态失败: sessionKey={}, key={}", getSessionId(sessionKey), key, e);
+            throw new RuntimeException("Failed to serialize state", e);
         }
+    }
 
+    private List<byte[]> serializeAll(SessionKey sessionKey, String key, List<? extends State> values) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<byte[]> encodedList = new ArrayList<>(values.size());
         try {
-            // 将每个值序列化并添加到列表
             for (State value : values) {
-                String json = objectMapper.writeValueAsString(value);
-                redisTemplate.opsForList().rightPush(redisKey, json);
+                encodedList.add(encode(value));
             }
-            setExpire(redisKey);
-
-            // 添加到 keys 索引
-            String keysIndexKey = getKeysIndexKey(sessionKey);
-            redisTemplate.opsForSet().add(keysIndexKey, key + LIST_SUFFIX);
-            setExpire(keysIndexKey);
-
-            log.debug("保存状态列表: sessionKey={}, key={}, size={}", getSessionId(sessionKey), key, values.size());
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             log.error("序列化状态列表失败: sessionKey={}, key={}", getSessionId(sessionKey), key, e);
             throw new RuntimeException("Failed to serialize state list", e);
         }
+        return encodedList;
     }
 
     @Override
     public <T extends State> Optional<T> get(SessionKey sessionKey, String key, Class<T> type) {
-        String redisKey = getKey(sessionKey, key);
-        String json = redisTemplate.opsForValue().get(redisKey);
+        Batch batch = batchFor(sessionKey, false);
+        if (batch != null) {
+            return deserialize(sessionKey, key, (byte[]) snapshot(sessionKey, batch).get(key), type);
+        }
+        return getTimer.record(() -> readValue(sessionKey, key, type));
+    }
+
+    private <T extends State> Optional<T> readValue(SessionKey sessionKey, String key, Class<T> type) {
+        byte[] redisKey = bytes(getKey(sessionKey, key));
+        byte[] data = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(redisKey));
+        if (data == null && restoreIfCold(sessionKey)) {
+            data = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(redisKey));
+        }
+        return deserialize(sessionKey, key, data, type);
+    }
 
-        if (json == null || json.isEmpty()) {
+    private <T extends State> Optional<T> deserialize(SessionKey sessionKey, String key, byte[] data, Class<T> type) {
+        if (data == null || data.length == 0) {
             return Optional.empty();
         }
 
         try {
-            T value = objectMapper.readValue(json, type);
+            T value = decode(data, type);
             log.debug("获取状态: sessionKey={}, key={}", getSessionId(sessionKey), key);
             return Optional.of(value);
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             log.error("反序列化状态失败: sessionKey={}, key={}", getSessionId(sessionKey), key, e);
             return Optional.empty();
         }
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <T extends State> List<T> getList(SessionKey sessionKey, String key, Class<T> itemType) {
-        String redisKey = getKey(sessionKey, key) + LIST_SUFFIX;
-        List<String> jsonList = redisTemplate.opsForList().range(redisKey, 0, -1);
+        Batch batch = batchFor(sessionKey, false);
+        if (batch != null) {
+            return deserializeAll(sessionKey, key,
+                    (List<byte[]>) snapshot(sessionKey, batch).get(key + LIST_SUFFIX), itemType);
+        }
+        return getListTimer.record(() -> readValues(sessionKey, key, itemType));
+    }
+
+    private <T extends State> List<T> readValues(SessionKey sessionKey, String key, Class<T> itemType) {
+        byte[] redisKey = bytes(getKey(sessionKey, key) + LIST_SUFFIX);
+        RedisCallback<List<byte[]>> lRange = connection -> connection.listCommands().lRange(redisKey, 0, -1);
+        List<byte[]> dataList = redisTemplate.execute(lRange);
+        if ((dataList == null || dataList.isEmpty()) && restoreIfCold(sessionKey)) {
+            dataList = redisTemplate.execute(lRange);
+        }
+        return deserializeAll(sessionKey, key, dataList, itemType);
+    }
 
-        if (jsonList == null || jsonList.isEmpty()) {
+    private <T extends State> List<T> deserializeAll(SessionKey sessionKey, String key, List<byte[]> dataList, Class<T> itemType) {
+        if (dataList == null || dataList.isEmpty()) {
             return new ArrayList<>();
         }
 
-        List<T> result = new ArrayList<>();
-        for (String json : jsonList) {
+        List<T> result = new ArrayList<>(dataList.size());
+        for (byte[] data : dataList) {
             try {
-                T value = objectMapper.readValue(json, itemType);
+                T value = decode(data, itemType);
                 result.add(value);
-            } catch (JsonProcessingException e) {
+            } catch (IOException e) {
                 log.error("反序列化状态列表项失败: sessionKey={}, key={}", getSessionId(sessionKey), key, e);
             }
         }
@@ -180,45 +859,364 @@ public class RedisSession implements Session {
 
     @Override
     public boolean exists(SessionKey sessionKey) {
+        Batch batch = batchFor(sessionKey, false);
+        if (batch != null) {
+            return !snapshot(sessionKey, batch).isEmpty();
+        }
         String keysIndexKey = getKeysIndexKey(sessionKey);
         Long size = redisTemplate.opsForSet().size(keysIndexKey);
+        if ((size == null || size == 0) && restoreIfCold(sessionKey)) {
+            size = redisTemplate.opsForSet().size(keysIndexKey);
+        }
         return size != null && size > 0;
     }
 
     @Override
     public void delete(SessionKey sessionKey) {
-        String keysIndexKey = getKeysIndexKey(sessionKey);
-        Set<String> keys = redisTemplate.opsForSet().members(keysIndexKey);
+        deleteSession(sessionKey, "");
+        ColdSessionStore store = coldStore;
+        if (store != null) {
+            String sessionId = getSessionId(sessionKey);
+            redisTemplate.opsForZSet().remove(COLD_INDEX_KEY, sessionId);
+            deleteArchive(store, sessionId);
+        }
+        log.info("删除会话: sessionKey={}", getSessionId(sessionKey));
+    }
 
-        if (keys != null && !keys.isEmpty()) {
-            // 删除所有状态 key
-            for (String key : keys) {
-                String redisKey = getKey(sessionKey, key);
-                redisTemplate.delete(redisKey);
+    /**
+     * 删除会话的全部 key，cutoff 非空时仅当会话在该时间之后未被访问才删除
+     *
+     * @return 删除的 key 数，会话已被重新访问时返回 -1
+     */
+    private long deleteSession(SessionKey sessionKey, String cutoff) {
+        String sessionPrefix = getKey(sessionKey, "");
+        Long deleted = redisTemplate.execute(DELETE_SCRIPT,
+                List.of(SESSION_INDEX_KEY, MEMBERS_KEY, getKeysIndexKey(sessionKey), getVersionsKey(sessionKey)),
+                sessionPrefix, getSessionId(sessionKey), cutoff, String.valueOf(System.currentTimeMillis()));
+        if (deleted != null && deleted >= 0) {
+            listMarks.asMap().keySet().removeIf(redisKey -> redisKey.startsWith(sessionPrefix));
+        }
+        return deleted != null ? deleted : 0;
+    }
+
+    /**
+     * 枚举全部会话，逐页读取会话索引（不使用 KEYS），会话很多时应改用 {@link #listSessions}
+     */
+    @Override
+    public Set<SessionKey> listSessionKeys() {
+        Set<SessionKey> sessionKeys = new LinkedHashSet<>();
+        String cursor = null;
+        do {
+            SessionPage page = listSessions(cursor, INDEX_PAGE_SIZE);
+            page.sessions().forEach(entry -> sessionKeys.add(entry.sessionKey()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return sessionKeys;
+    }
+
+    /**
+     * 按最近访问时间升序分页列出会话
+     * 游标为上一页最后一条的访问时间及其在同一时间戳内的序号；翻页期间被访问的会话会移到末尾，可能在后续页中再次出现
+     *
+     * @param cursor 上一页返回的 nextCursor，首页传 null
+     * @param limit  每页条数
+     */
+    public SessionPage listSessions(String cursor, int limit) {
+        long fromScore = 0;
+        long offset = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] parts = cursor.split(":");
+            try {
+                fromScore = Long.parseLong(parts[0]);
+                offset = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的会话分页游标: " + cursor, e);
+            }
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = redisTemplate.opsForZSet()
+                .rangeByScoreWithScores(SESSION_INDEX_KEY, fromScore, Double.POSITIVE_INFINITY, offset, limit);
+        if (tuples == null || tuples.isEmpty()) {
+            return new SessionPage(Collections.emptyList(), null);
+        }
+        List<SessionIndexEntry> sessions = new ArrayList<>(tuples.size());
+        long lastScore = fromScore;
+        long sameScore = offset;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            long score = tuple.getScore() != null ? tuple.getScore().longValue() : 0;
+            sameScore = score == lastScore ? sameScore + 1 : 1;
+            lastScore = score;
+            sessions.add(new SessionIndexEntry(SimpleSessionKey.of(tuple.getValue()), score));
+        }
+        String nextCursor = sessions.size() < limit ? null : lastScore + ":" + sameScore;
+        return new SessionPage(sessions, nextCursor);
+    }
+
+    /**
+     * 清理过期会话：最近访问时间早于过期时间的会话，其带 TTL 的 key 应已全部失效，
+     * 删除仍残留的 key（未登记在会话索引中的列表、未设置过期的旧数据）并移出会话索引
+     *
+     * @param limit 本次最多清理的会话数
+     * @return 清理的会话数
+     */
+    public int sweepExpired(int limit) {
+        if (expireSeconds <= 0) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - expireSeconds * 1000;
+        Set<String> sessionIds = redisTemplate.opsForZSet()
+                .rangeByScore(SESSION_INDEX_KEY, Double.NEGATIVE_INFINITY, cutoff, 0, limit);
+        if (sessionIds == null || sessionIds.isEmpty()) {
+            return 0;
+        }
+        int swept = 0;
+        long orphanKeys = 0;
+        for (String sessionId : sessionIds) {
+            long deleted = deleteSession(SimpleSessionKey.of(sessionId), String.valueOf(cutoff));
+            if (deleted >= 0) {
+                swept++;
+                orphanKeys += deleted;
             }
         }
+        registry.counter("chat.session.sweep.sessions").increment(swept);
+        registry.counter("chat.session.sweep.keys").increment(orphanKeys);
+        log.info("清理过期会话: candidates={}, swept={}, orphanKeys={}", sessionIds.size(), swept, orphanKeys);
+        return swept;
+    }
 
-        // 删除 keys 索引
-        redisTemplate.delete(keysIndexKey);
+    // ==================== 冷存储 ====================
 
-        log.info("删除会话: sessionKey={}", getSessionId(sessionKey));
+    /**
+     * 把最近访问时间早于 now - idleMillis 的会话移入冷存储
+     * 先写入归档再按快照时的版本号条件删除 Redis 中的 key，期间被访问或写入的会话保留在 Redis 中（归档留待下次覆盖）；
+     * 失败或已无状态的会话仍以原分值留在范围内，调用方按 {@link DemoteResult#skipped()} 累加 offset 越过它们，
+     * 避免同一批会话反复占满每次的候选
+     *
+     * @param offset 跳过范围内最早的若干个会话（本轮此前未能移出的）
+     * @param limit  本次最多处理的会话数
+     */
+    public DemoteResult demoteIdle(long idleMillis, int offset, int limit) {
+        ColdSessionStore store = coldStore;
+        if (store == null) {
+            return new DemoteResult(0, 0);
+        }
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        Set<String> sessionIds = redisTemplate.opsForZSet()
+                .rangeByScore(SESSION_INDEX_KEY, Double.NEGATIVE_INFINITY, cutoff, offset, limit);
+        if (sessionIds == null || sessionIds.isEmpty()) {
+            return new DemoteResult(0, 0);
+        }
+        int demoted = 0;
+        for (String sessionId : sessionIds) {
+            String result = demote(store, SimpleSessionKey.of(sessionId), cutoff);
+            registry.counter("chat.session.tier.demote", "result", result).increment();
+            if ("demoted".equals(result)) {
+                demoted++;
+            }
+        }
+        log.info("会话移入冷存储: candidates={}, demoted={}", sessionIds.size(), demoted);
+        return new DemoteResult(sessionIds.size(), demoted);
     }
 
-    @Override
-    public Set<SessionKey> listSessionKeys() {
-        Set<String> redisKeys = redisTemplate.keys(KEY_PREFIX + "*" + KEYS_SUFFIX);
+    /**
+     * @return demoted、empty（Redis 中已没有状态，留给过期清理）、touched（期间被访问或写入）或 failed
+     */
+    private String demote(ColdSessionStore store, SessionKey sessionKey, long cutoff) {
+        String sessionId = getSessionId(sessionKey);
+        try {
+            SessionSnapshot snapshot = readRaw(sessionKey, false);
+            if (snapshot.isEmpty()) {
+                return "empty";
+            }
+            byte[] archive = snapshot.toArchive(archiveLevel);
+            store.put(sessionId, archive);
+            String sessionPrefix = getKey(sessionKey, "");
+            Long deleted = redisTemplate.execute(DEMOTE_SCRIPT,
+                    List.of(SESSION_INDEX_KEY, MEMBERS_KEY, getKeysIndexKey(sessionKey), getVersionsKey(sessionKey),
+                            COLD_INDEX_KEY),
+                    sessionPrefix, sessionId, String.valueOf(cutoff),
+                    String.valueOf(snapshot.sessionVersion(SESSION_VERSION_FIELD)),
+                    String.valueOf(System.currentTimeMillis()));
+            if (deleted == null || deleted < 0) {
+                return "touched";
+            }
+            listMarks.asMap().keySet().removeIf(redisKey -> redisKey.startsWith(sessionPrefix));
+            registry.summary("chat.session.tier.archive.bytes").record(archive.length);
+            log.debug("会话已移入冷存储: sessionKey={}, bytes={}, keys={}", sessionId, archive.length, deleted);
+            return "demoted";
+        } catch (Exception e) {
+            log.warn("会话移入冷存储失败: sessionKey={}, error={}", sessionId, e.getMessage());
+            return "failed";
+        }
+    }
+
+    /**
+     * 会话登记在冷存储中时从归档恢复到 Redis
+     *
+     * @return 会话现已在 Redis 中（本节点恢复或其他节点已恢复）时返回 true
+     */
+    private boolean restoreIfCold(SessionKey sessionKey) {
+        ColdSessionStore store = coldStore;
+        String sessionId = getSessionId(sessionKey);
+        if (store == null || redisTemplate.opsForZSet().score(COLD_INDEX_KEY, sessionId) == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        String result = "failed";
+        try {
+            byte[] archive = store.get(sessionId);
+            if (archive == null) {
+                result = "missing";
+                redisTemplate.opsForZSet().remove(COLD_INDEX_KEY, sessionId);
+                log.warn("冷存储中没有会话归档，取消登记: sessionKey={}", sessionId);
+                return false;
+            }
+            SessionSnapshot snapshot = SessionSnapshot.fromArchive(archive);
+            List<byte[]> args = new ArrayList<>();
+            args.add(bytes(String.valueOf(expireSeconds)));
+            args.add(bytes(String.valueOf(System.currentTimeMillis())));
+            args.add(bytes(sessionId));
+            args.add(bytes(getKey(sessionKey, "")));
+            args.add(bytes(String.valueOf(snapshot.versions.size() * 2)));
+            snapshot.versions.forEach((field, value) -> {
+                args.add(bytes(field));
+                args.add(bytes(value));
+            });
+            snapshot.members.forEach((member, values) -> {
+                args.add(bytes(member));
+                args.add(bytes(String.valueOf(values.size())));
+                args.addAll(values);
+            });
+            Long restored = execute(RESTORE_SCRIPT,
+                    List.of(getKeysIndexKey(sessionKey), getVersionsKey(sessionKey), SESSION_INDEX_KEY, MEMBERS_KEY,
+                            COLD_INDEX_KEY),
+                    args);
+            result = restored != null && restored == 1 ? "restored" : "concurrent";
+            deleteArchive(store, sessionId);
+            if ("restored".equals(result)) {
+                log.info("从冷存储恢复会话: sessionKey={}, bytes={}, version={}", sessionId, archive.length,
+                        snapshot.sessionVersion(SESSION_VERSION_FIELD));
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("从冷存储恢复会话失败: sessionKey={}", sessionId, e);
+            return false;
+        } finally {
+            registry.timer("chat.session.tier.promote", "result", result)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 删除移入冷存储超过 retentionMillis 的会话归档
+     *
+     * @param limit 本次最多删除的会话数
+     * @return 删除的会话数
+     */
+    public int purgeCold(long retentionMillis, int limit) {
+        ColdSessionStore store = coldStore;
+        if (store == null || retentionMillis <= 0) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        Set<String> sessionIds = redisTemplate.opsForZSet()
+                .rangeByScore(COLD_INDEX_KEY, Double.NEGATIVE_INFINITY, cutoff, 0, limit);
+        if (sessionIds == null || sessionIds.isEmpty()) {
+            return 0;
+        }
+        int purged = 0;
+        for (String sessionId : sessionIds) {
+            // 先取消登记再删除归档，删除失败只残留无人引用的归档
+            Long removed = redisTemplate.execute(PURGE_SCRIPT, List.of(COLD_INDEX_KEY), sessionId, String.valueOf(cutoff));
+            if (removed != null && removed == 1) {
+                deleteArchive(store, sessionId);
+                purged++;
+            }
+        }
+        registry.counter("chat.session.tier.purged").increment(purged);
+        log.info("清理冷存储会话: candidates={}, purged={}", sessionIds.size(), purged);
+        return purged;
+    }
+
+    /**
+     * 删除归档，会话已再次登记在冷存储中（恢复后又被移入）时保留
+     */
+    private void deleteArchive(ColdSessionStore store, String sessionId) {
+        try {
+            if (redisTemplate.opsForZSet().score(COLD_INDEX_KEY, sessionId) == null) {
+                store.delete(sessionId);
+            }
+        } catch (Exception e) {
+            log.warn("删除会话归档失败: sessionKey={}, error={}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * 回填会话索引与状态成员名集合：用 SCAN 遍历已有的会话 key（用于引入会话索引之前写入的数据）
+     * 有索引 key 的会话按剩余 TTL 推算最近写入时间，只有残留状态 key 的会话记为最早，由下一次清理删除；
+     * 已在会话索引中的会话保持不变
+     *
+     * @return 遍历到的会话数
+     */
+    public long backfillIndex() {
+        ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(INDEX_PAGE_SIZE).build();
+        Map<String, Double> scores = new HashMap<>();
+        Set<String> members = new HashSet<>();
+        long sessions = 0;
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String redisKey = cursor.next();
+                String rest = redisKey.substring(KEY_PREFIX.length());
+                int separator = rest.indexOf(':');
+                if (rest.startsWith("_") || separator <= 0) {
+                    // 会话索引等全局 key
+                    continue;
+                }
+                String sessionId = rest.substring(0, separator);
+                String member = rest.substring(separator + 1);
+                if (redisKey.endsWith(KEYS_SUFFIX)) {
+                    scores.put(sessionId, (double) lastWriteMillis(redisKey));
+                } else {
+                    if (!redisKey.endsWith(VERSIONS_SUFFIX)) {
+                        members.add(member);
+                    }
+                    scores.putIfAbsent(sessionId, 0d);
+                }
+                if (scores.size() >= INDEX_PAGE_SIZE) {
+                    sessions += flushBackfill(scores, members);
+                }
+            }
+        }
+        sessions += flushBackfill(scores, members);
+        log.info("回填会话索引完成: sessions={}", sessions);
+        return sessions;
+    }
 
-        if (redisKeys == null || redisKeys.isEmpty()) {
-            return Collections.emptySet();
+    private int flushBackfill(Map<String, Double> scores, Set<String> members) {
+        int count = scores.size();
+        if (!scores.isEmpty()) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = scores.entrySet().stream()
+                    .map(entry -> ZSetOperations.TypedTuple.of(entry.getKey(), entry.getValue()))
+                    .collect(Collectors.toSet());
+            redisTemplate.opsForZSet().addIfAbsent(SESSION_INDEX_KEY, tuples);
+            scores.clear();
+        }
+        if (!members.isEmpty()) {
+            redisTemplate.opsForSet().add(MEMBERS_KEY, members.toArray(new String[0]));
+            members.clear();
         }
+        return count;
+    }
 
-        return redisKeys.stream()
-                .map(key -> {
-                    // 从 key 中提取 sessionId
-                    String sessionId = key.substring(KEY_PREFIX.length(), key.length() - KEYS_SUFFIX.length());
-                    return SimpleSessionKey.of(sessionId);
-                })
-                .collect(Collectors.toSet());
+    /**
+     * 由剩余 TTL 推算 key 的最近写入时间，未设置过期时按当前时间计
+     */
+    private long lastWriteMillis(String redisKey) {
+        long now = System.currentTimeMillis();
+        Long ttlMillis = redisTemplate.getExpire(redisKey, TimeUnit.MILLISECONDS);
+        if (ttlMillis == null || ttlMillis < 0 || expireSeconds <= 0) {
+            return now;
+        }
+        return Math.min(now, now - (expireSeconds * 1000 - ttlMillis));
     }
 
     @Override
@@ -226,4 +1224,84 @@ public class RedisSession implements Session {
         // Redis 连接由 Spring 管理，无需手动关闭
         log.debug("RedisSession closed");
     }
+
+    /**
+     * 单个线程内的批量读写状态
+     */
+    private static class Batch {
+        private final String sessionId;
+        private final boolean write;
+        /**
+         * 待写入的状态，key 为索引成员名（列表带 :list 后缀），同一 key 多次保存以最后一次为准
+         */
+        private final Map<String, PendingWrite> pendingWrites = new LinkedHashMap<>();
+        /**
+         * 读取快照，首次访问时加载，key 为索引成员名，值为 byte[] 或 List&lt;byte[]&gt;
+         */
+        private Map<String, Object> snapshot;
+        /**
+         * 读取快照时的会话版本号
+         */
+        private long version;
+
+        private Batch(String sessionId, boolean write) {
+            this.sessionId = sessionId;
+            this.write = write;
+        }
+    }
+
+    /**
+     * 会话索引中的一条记录
+     *
+     * @param sessionKey       会话
+     * @param lastAccessMillis 最近一次读写的毫秒时间戳
+     */
+    public record SessionIndexEntry(SessionKey sessionKey, long lastAccessMillis) {
+    }
+
+    /**
+     * 会话分页结果，nextCursor 为 null 表示没有下一页
+     */
+    public record SessionPage(List<SessionIndexEntry> sessions, String nextCursor) {
+    }
+
+    /**
+     * 一次移入冷存储的结果
+     *
+     * @param candidates 本次处理的候选会话数，为 0 表示范围内已没有更多会话
+     * @param demoted    移入冷存储的会话数
+     */
+    public record DemoteResult(int candidates, int demoted) {
+
+        /**
+         * 未移出的候选数（失败、已无状态或期间被访问）
+         */
+        public int skipped() {
+            return candidates - demoted;
+        }
+    }
+
+    private record PendingWrite(boolean list, List<byte[]> values) {
+    }
+
+    /**
+     * 列表的持久化高水位：已写入 Redis 的各条目指纹及写入时的版本号
+     */
+    private record ListMark(long[] fingerprints, String version) {
+
+        /**
+         * 已持久化的条目是否为 current 的前缀（即本次只新增了条目）
+         */
+        boolean isPrefixOf(long[] current) {
+            if (current.length < fingerprints.length) {
+                return false;
+            }
+            for (int i = 0; i < fingerprints.length; i++) {
+                if (fingerprints[i] != current[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
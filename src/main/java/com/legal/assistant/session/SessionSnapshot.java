@@ -0,0 +1,154 @@
+package com.legal.assistant.session;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个会话在 Redis 中的全部原始数据：列表版本号 hash 与各状态成员的值（已编码的字节）
+ * 由读取脚本的返回值解析得到，可打包为冷存储归档并从归档还原
+ * <p>
+ * 归档格式：格式版本（1 字节）、打包后长度（4 字节大端）、Zstd 压缩后的打包数据；
+ * 打包数据依次为版本号字段数与各字段 / 值，状态成员数与各成员的名称、值个数、各值的长度与字节
+ */
+final class SessionSnapshot {
+
+    private static final byte ARCHIVE_FORMAT = 1;
+    private static final int ARCHIVE_HEADER_LENGTH = 5;
+
+    /**
+     * 列表版本号 hash（含会话版本号字段）
+     */
+    final Map<String, String> versions;
+
+    /**
+     * 各状态成员的值，key 为索引成员名（列表带 :list 后缀），单值状态为只有一个元素的列表
+     */
+    final Map<String, List<byte[]>> members;
+
+    private SessionSnapshot(Map<String, String> versions, Map<String, List<byte[]>> members) {
+        this.versions = versions;
+        this.members = members;
+    }
+
+    /**
+     * 解析读取脚本的返回值：版本号 hash 的字段数 n、n 个字段与值，之后每个存在的状态依次为：索引成员名、值个数、值...
+     */
+    static SessionSnapshot fromReply(List<Object> reply) {
+        Map<String, String> versions = new LinkedHashMap<>();
+        Map<String, List<byte[]>> members = new LinkedHashMap<>();
+        if (reply == null || reply.isEmpty()) {
+            return new SessionSnapshot(versions, members);
+        }
+        int index = 0;
+        int versionCount = Integer.parseInt(string(reply.get(index++)));
+        for (int i = 0; i < versionCount; i += 2) {
+            versions.put(string(reply.get(index + i)), string(reply.get(index + i + 1)));
+        }
+        index += versionCount;
+        while (index < reply.size()) {
+            String member = string(reply.get(index++));
+            int count = Integer.parseInt(string(reply.get(index++)));
+            List<byte[]> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                values.add((byte[]) reply.get(index++));
+            }
+            members.put(member, values);
+        }
+        return new SessionSnapshot(versions, members);
+    }
+
+    /**
+     * 解析冷存储归档
+     */
+    static SessionSnapshot fromArchive(byte[] archive) throws IOException {
+        if (archive.length < ARCHIVE_HEADER_LENGTH || archive[0] != ARCHIVE_FORMAT) {
+            throw new IOException("未知的会话归档格式");
+        }
+        int rawLength = ByteBuffer.wrap(archive, 1, 4).getInt();
+        byte[] raw = new byte[rawLength];
+        long size = Zstd.decompressByteArray(raw, 0, rawLength, archive, ARCHIVE_HEADER_LENGTH,
+                archive.length - ARCHIVE_HEADER_LENGTH);
+        if (Zstd.isError(size) || size != rawLength) {
+            throw new IOException("会话归档解压失败: " + (Zstd.isError(size) ? Zstd.getErrorName(size) : "size=" + size));
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        Map<String, String> versions = new LinkedHashMap<>();
+        int versionCount = in.readInt();
+        for (int i = 0; i < versionCount; i++) {
+            versions.put(in.readUTF(), in.readUTF());
+        }
+        Map<String, List<byte[]>> members = new LinkedHashMap<>();
+        int memberCount = in.readInt();
+        for (int i = 0; i < memberCount; i++) {
+            String member = in.readUTF();
+            int count = in.readInt();
+            List<byte[]> values = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                values.add(value);
+            }
+            members.put(member, values);
+        }
+        return new SessionSnapshot(versions, members);
+    }
+
+    /**
+     * 打包为冷存储归档
+     *
+     * @param compressLevel Zstd 压缩级别
+     */
+    byte[] toArchive(int compressLevel) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(versions.size());
+        for (Map.Entry<String, String> entry : versions.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.writeInt(members.size());
+        for (Map.Entry<String, List<byte[]>> entry : members.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (byte[] value : entry.getValue()) {
+                out.writeInt(value.length);
+                out.write(value);
+            }
+        }
+        out.flush();
+        byte[] raw = buffer.toByteArray();
+        byte[] compressed = Zstd.compress(raw, compressLevel);
+        return ByteBuffer.allocate(ARCHIVE_HEADER_LENGTH + compressed.length)
+                .put(ARCHIVE_FORMAT)
+                .putInt(raw.length)
+                .put(compressed)
+                .array();
+    }
+
+    /**
+     * 会话版本号，从未写入过的会话为 0
+     */
+    long sessionVersion(String versionField) {
+        String version = versions.get(versionField);
+        return version != null ? Long.parseLong(version) : 0;
+    }
+
+    boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    private static String string(Object value) {
+        return new String((byte[]) value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,22 @@
+package com.legal.assistant.session;
+
+import io.agentscope.core.state.State;
+
+import java.io.IOException;
+
+/**
+ * 会话状态编解码器
+ * RedisSession 以 encode 的输出作为 Redis 中的值（列表逐条编码），读取时交给 decode 还原
+ */
+public interface StateCodec {
+
+    /**
+     * 编码单个状态
+     */
+    byte[] encode(State value) throws IOException;
+
+    /**
+     * 解码单个状态，需兼容该编解码器历史上写入过的全部格式
+     */
+    <T extends State> T decode(byte[] data, Class<T> type) throws IOException;
+}
@@ -12,6 +12,11 @@ import org.apache.tika.parser.Parser;
 import org.apache.tika.parser.ocr.TesseractOCRConfig;
 import org.apache.tika.parser.pdf.PDFParserConfig;
 import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.ContentHandlerDecorator;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -23,10 +28,16 @@ import java.nio.file.Path;
  * 文档内容提取器
  * 使用 Apache Tika 统一处理各种文件格式的文本提取
  * 支持：PDF、Word、Excel、PPT、图片OCR等
+ * 分页文档（如 PDF）在第 2 页起的每页开头写入分页符 PAGE_BREAK，供建立文档索引时记录页码
  */
 @Slf4j
 public class DocumentExtractor {
 
+    /**
+     * 分页符
+     */
+    public static final char PAGE_BREAK = '\f';
+
     private static volatile Tika tika;
     private static volatile Parser parser;
     private static volatile TikaConfig tikaConfig;
@@ -113,7 +124,8 @@ public class DocumentExtractor {
 
             // 创建内容处理器，设置最大字符数（防止内存溢出）
             int maxLength = 10 * 1024 * 1024; // 10MB
-            BodyContentHandler handler = new BodyContentHandler(maxLength);
+            WriteOutContentHandler textHandler = new WriteOutContentHandler(maxLength);
+            BodyContentHandler handler = new BodyContentHandler(new PageBreakHandler(textHandler));
 
             // 解析文件
             try (InputStream inputStream = new FileInputStream(filePath.toFile())) {
@@ -121,7 +133,7 @@ public class DocumentExtractor {
                 parserInstance.parse(inputStream, handler, metadata, parseContext);
             }
 
-            String extractedText = handler.toString().trim();
+            String extractedText = textHandler.toString().trim();
             
             // 记录检测到的文件类型
             String detectedType = metadata.get(Metadata.CONTENT_TYPE);
@@ -137,6 +149,25 @@ public class DocumentExtractor {
         }
     }
 
+    /**
+     * 在 Tika 输出的每个 &lt;div class="page"&gt;（第 2 页起）前写入分页符
+     */
+    private static class PageBreakHandler extends ContentHandlerDecorator {
+
+        private static final char[] BREAK = {PAGE_BREAK};
 
+        private int pages;
 
+        PageBreakHandler(ContentHandler handler) {
+            super(handler);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes atts) throws SAXException {
+            if ("div".equals(localName) && "page".equals(atts.getValue("class")) && pages++ > 0) {
+                super.characters(BREAK, 0, 1);
+            }
+            super.startElement(uri, localName, name, atts);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,8 @@
+-- Agent 会话冷存储（agent.session.tiering.store=MYSQL 时使用）：长时间未访问的会话从 Redis 移入此表，下次访问时恢复并删除
+CREATE TABLE IF NOT EXISTS agent_session_archive (
+    session_id VARCHAR(64) NOT NULL COMMENT '会话ID（conversationId）',
+    data LONGBLOB NOT NULL COMMENT 'Zstd 压缩的会话归档',
+    size INT NOT NULL COMMENT '归档字节数',
+    archived_at DATETIME NOT NULL COMMENT '归档时间',
+    PRIMARY KEY (session_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='Agent 会话冷存储';
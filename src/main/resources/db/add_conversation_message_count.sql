@@ -0,0 +1,16 @@
+-- 会话表：消息数与最近消息时间（侧边栏读模型），随消息新增原子更新；已有数据由应用启动后的回填任务
+-- （agent.conversation.stats-backfill）按 id 分批重算，也可在低峰期直接执行文末的 UPDATE
+
+ALTER TABLE conversation
+    ADD COLUMN message_count INT NOT NULL DEFAULT 0 COMMENT '未删除的消息数',
+    ADD COLUMN last_message_at DATETIME DEFAULT NULL COMMENT '最近一条消息的创建时间';
+
+-- 侧边栏查询：按用户取置顶 / 今日 / 历史会话，按更新时间倒序
+ALTER TABLE conversation ADD INDEX idx_conversation_user_list (user_id, is_deleted, is_pinned, updated_at);
+
+-- 一次性回填（会话很多时请使用应用内的分批回填）
+-- UPDATE conversation c LEFT JOIN (
+--     SELECT conversation_id, COUNT(*) AS cnt, MAX(created_at) AS last_at FROM message
+--     WHERE is_deleted = 0 GROUP BY conversation_id
+-- ) m ON m.conversation_id = c.id
+-- SET c.message_count = COALESCE(m.cnt, 0), c.last_message_at = m.last_at;
@@ -0,0 +1,3 @@
+-- 文档文件表：分块检索索引（JSON）在 MinIO 中的路径，上传时构建；历史文件为空，首次使用文件工具时补建
+
+ALTER TABLE document_file ADD COLUMN index_path VARCHAR(512) DEFAULT NULL COMMENT '分块检索索引在 MinIO 中的路径' AFTER markdown_path;
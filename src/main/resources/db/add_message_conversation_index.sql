@@ -0,0 +1,4 @@
+-- 消息表：按会话倒序读取最近消息（建议问题取最近 N 轮已完成消息）
+-- 若已有以 conversation_id 开头的索引，可按需替换
+
+ALTER TABLE message ADD INDEX idx_message_conversation_status_id (conversation_id, status, id);
@@ -0,0 +1,107 @@
+package com.legal.assistant.agents.base;
+
+import com.legal.assistant.dto.response.StreamChatResponse;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式片段合并：窗口、状态切换、不可合并帧、字节上限与上游错误时的冲刷
+ */
+class StreamChunkCoalescerTest {
+
+    private static final Duration LONG_WINDOW = Duration.ofSeconds(30);
+    private static final Duration WAIT = Duration.ofSeconds(5);
+
+    private static StreamChatResponse text(String content, String status) {
+        return StreamChatResponse.message(1L, 2L, content, status);
+    }
+
+    private static List<String> render(Flux<StreamChatResponse> frames) {
+        return frames.map(frame -> frame.getStatus() + ":" + frame.getContent()).collectList().block(WAIT);
+    }
+
+    @Test
+    void mergesConsecutiveFramesOfSameStatus() {
+        Flux<StreamChatResponse> frames = Flux.just(text("甲", "message"), text("乙", "message"), text("丙", "message"));
+
+        List<StreamChatResponse> merged = StreamChunkCoalescer.coalesce(frames, LONG_WINDOW, 0).collectList().block(WAIT);
+
+        assertEquals(1, merged.size());
+        assertEquals("甲乙丙", merged.get(0).getContent());
+        assertEquals(1L, merged.get(0).getMessageId());
+        assertEquals(2L, merged.get(0).getConversationId());
+    }
+
+    @Test
+    void flushesOnStatusChange() {
+        Flux<StreamChatResponse> frames = Flux.just(
+                text("想", "thinking"), text("一想", "thinking"), text("答", "message"), text("案", "message"));
+
+        assertEquals(List.of("thinking:想一想", "message:答案"),
+                render(StreamChunkCoalescer.coalesce(frames, LONG_WINDOW, 0)));
+    }
+
+    @Test
+    void toolAndFinishedFramesFlushBufferedTextFirst() {
+        StreamChatResponse toolCall = StreamChatResponse.toolCall(1L, 2L,
+                StreamChatResponse.ToolCallInfo.ofCall("searchLaw", "{}"));
+        Flux<StreamChatResponse> frames = Flux.just(
+                text("a", "message"), text("b", "message"), toolCall, text("c", "message"),
+                StreamChatResponse.completed(1L, 2L, null));
+
+        assertEquals(List.of("message:ab", "tool_call:", "message:c", "completed:"),
+                render(StreamChunkCoalescer.coalesce(frames, LONG_WINDOW, 0)));
+    }
+
+    @Test
+    void flushesWhenBufferReachesMaxBytes() {
+        // 每个汉字 3 字节，6 字节即冲刷
+        Flux<StreamChatResponse> frames = Flux.just(
+                text("一", "message"), text("二", "message"), text("三", "message"));
+
+        assertEquals(List.of("message:一二", "message:三"),
+                render(StreamChunkCoalescer.coalesce(frames, LONG_WINDOW, 6)));
+    }
+
+    @Test
+    void flushesWhenWindowElapses() {
+        Flux<StreamChatResponse> frames = Flux.concat(
+                Flux.just(text("前", "message")),
+                Mono.delay(Duration.ofMillis(300)).thenMany(Flux.just(text("后", "message"))));
+
+        assertEquals(List.of("message:前", "message:后"),
+                render(StreamChunkCoalescer.coalesce(frames, Duration.ofMillis(50), 0)));
+    }
+
+    @Test
+    void emitsBufferedTextBeforeUpstreamError() {
+        IllegalStateException failure = new IllegalStateException("模型调用失败");
+        Flux<StreamChatResponse> frames = Flux.concat(
+                Flux.just(text("已生成", "message"), text("的内容", "message")),
+                Flux.error(failure));
+
+        List<String> received = new ArrayList<>();
+        Throwable error = assertThrows(IllegalStateException.class, () -> StreamChunkCoalescer
+                .coalesce(frames, LONG_WINDOW, 0)
+                .doOnNext(frame -> received.add(frame.getContent()))
+                .blockLast(WAIT));
+
+        assertSame(failure, error);
+        assertEquals(List.of("已生成的内容"), received);
+    }
+
+    @Test
+    void passesFramesThroughWhenWindowIsZero() {
+        Flux<StreamChatResponse> frames = Flux.just(text("a", "message"), text("b", "message"));
+
+        assertEquals(List.of("message:a", "message:b"),
+                render(StreamChunkCoalescer.coalesce(frames, Duration.ZERO, 0)));
+    }
+}
@@ -0,0 +1,124 @@
+package com.legal.assistant.service;
+
+import com.legal.assistant.enums.AgentType;
+import com.legal.assistant.enums.ModelType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 答案缓存：归一化、SimHash 近似命中与作用域隔离
+ */
+class AnswerCacheServiceTest {
+
+    private static final AgentType AGENT = AgentType.LEGAL_CONSULTATION;
+    private static final ModelType MODEL = ModelType.QWEN_PLUS;
+
+    private static final String QUESTION = "我在公司工作了三年，劳动合同到期后公司决定不再续签，也没有提前通知我，"
+            + "请问公司需要支付经济补偿吗，如果需要的话应该怎么计算补偿金额";
+    private static final String ANSWER = "劳动合同期满，用人单位不续签的，应当支付经济补偿。";
+
+    private AnswerCacheService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new AnswerCacheService();
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabledAgents", Set.of(AGENT));
+        ReflectionTestUtils.setField(service, "ttlHours", 1L);
+        ReflectionTestUtils.setField(service, "maxEntries", 100L);
+        ReflectionTestUtils.setField(service, "maxHammingDistance", 5);
+        ReflectionTestUtils.setField(service, "minQuestionChars", 6);
+        service.init();
+    }
+
+    @Test
+    void normalizeDropsPunctuationWidthAndPoliteness() {
+        assertEquals("劳动合同到期不续签需要赔偿吗", AnswerCacheService.normalize("您好，请问：劳动合同到期 不续签，需要赔偿吗？"));
+        assertEquals("abc123", AnswerCacheService.normalize("ＡＢＣ１２３"));
+        assertEquals("", AnswerCacheService.normalize(null));
+    }
+
+    @Test
+    void identicalTextHasIdenticalFingerprint() {
+        String normalized = AnswerCacheService.normalize(QUESTION);
+
+        assertEquals(AnswerCacheService.simHash(normalized), AnswerCacheService.simHash(normalized));
+        assertTrue(Long.bitCount(AnswerCacheService.simHash(normalized)
+                ^ AnswerCacheService.simHash(AnswerCacheService.normalize("交通事故对方全责我能获得哪些赔偿"))) > 16);
+    }
+
+    @Test
+    void hitsQuestionThatOnlyDiffersInPunctuationAndPoliteness() {
+        service.put(AGENT, MODEL, QUESTION, ANSWER);
+
+        assertEquals(ANSWER, service.lookup(AGENT, MODEL, "您好！" + QUESTION.replace("，", " ") + "？"));
+    }
+
+    @Test
+    void hitsNearDuplicateQuestion() {
+        service.put(AGENT, MODEL, QUESTION, ANSWER);
+
+        assertEquals(ANSWER, service.lookup(AGENT, MODEL, QUESTION + "呢"));
+    }
+
+    @Test
+    void missesNearDuplicateWithDifferentNumbers() {
+        service.put(AGENT, MODEL, QUESTION, ANSWER);
+
+        assertNull(service.lookup(AGENT, MODEL, QUESTION.replace("三年", "五年")));
+    }
+
+    @Test
+    void missesShortQuestionWithDifferentSubject() {
+        service.put(AGENT, MODEL, "劳动合同到期公司不续签需要支付经济补偿吗", ANSWER);
+
+        assertNull(service.lookup(AGENT, MODEL, "劳动合同到期我不续签需要支付经济补偿吗"));
+        assertNull(service.lookup(AGENT, MODEL, "房屋租赁合同到期房东不退押金怎么办"));
+    }
+
+    @Test
+    void entriesAreScopedByAgentAndModel() {
+        service.put(AGENT, MODEL, QUESTION, ANSWER);
+
+        assertNull(service.lookup(AGENT, ModelType.DEEPSEEK_CHAT, QUESTION));
+        assertNull(service.lookup(AgentType.CASE_ANALYSIS, MODEL, QUESTION));
+    }
+
+    @Test
+    void doesNotCacheTooShortQuestionsOrBlankAnswers() {
+        service.put(AGENT, MODEL, "怎么办", ANSWER);
+        service.put(AGENT, MODEL, QUESTION, " ");
+
+        assertNull(service.lookup(AGENT, MODEL, "怎么办"));
+        assertNull(service.lookup(AGENT, MODEL, QUESTION));
+    }
+
+    @Test
+    void purgeRemovesMatchingEntries() {
+        service.put(AGENT, MODEL, QUESTION, ANSWER);
+        service.put(AGENT, MODEL, "交通事故对方全责我能获得哪些赔偿", "可以主张医疗费、误工费等。");
+
+        assertEquals(1, service.purge(AGENT, QUESTION + "呢"));
+        assertNull(service.lookup(AGENT, MODEL, QUESTION));
+        assertNotNull(service.lookup(AGENT, MODEL, "交通事故对方全责我能获得哪些赔偿"));
+
+        assertEquals(1, service.purge(null, null));
+        assertNull(service.lookup(AGENT, MODEL, "交通事故对方全责我能获得哪些赔偿"));
+    }
+
+    @Test
+    void eligibleOnlyForEnabledAgentsOnFirstTurnWithoutFiles() {
+        assertTrue(service.isEligible(AGENT, true, null));
+        assertTrue(service.isEligible(AGENT, true, List.of()));
+        assertFalse(service.isEligible(AGENT, false, null));
+        assertFalse(service.isEligible(AGENT, true, List.of(1L)));
+        assertFalse(service.isEligible(AgentType.CASE_ANALYSIS, true, null));
+    }
+}
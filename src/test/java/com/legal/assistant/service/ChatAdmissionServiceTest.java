@@ -0,0 +1,156 @@
+package com.legal.assistant.service;
+
+import com.legal.assistant.enums.ModelType;
+import com.legal.assistant.exception.BusinessException;
+import com.legal.assistant.exception.ErrorCode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 准入控制：令牌桶、公平队列与 Ticket/Permit 状态流转
+ */
+class ChatAdmissionServiceTest {
+
+    private static final ModelType MODEL = ModelType.QWEN_PLUS;
+    private static final Duration WAIT = Duration.ofSeconds(3);
+
+    private ChatAdmissionService service;
+
+    @BeforeEach
+    void setUp() {
+        service = create(1, 10);
+    }
+
+    private static ChatAdmissionService create(int concurrency, int bucketCapacity) {
+        ChatAdmissionService service = new ChatAdmissionService();
+        ReflectionTestUtils.setField(service, "environment", new StandardEnvironment());
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "defaultConcurrency", concurrency);
+        ReflectionTestUtils.setField(service, "maxQueuePerModel", 2);
+        ReflectionTestUtils.setField(service, "maxWaitSeconds", 1L);
+        ReflectionTestUtils.setField(service, "queueUpdateIntervalMs", 50L);
+        ReflectionTestUtils.setField(service, "bucketCapacity", bucketCapacity);
+        ReflectionTestUtils.setField(service, "bucketRefillPerMinute", 0.0);
+        ReflectionTestUtils.setField(service, "bucketMaxEntries", 1000L);
+        ReflectionTestUtils.setField(service, "initialRunSeconds", 20L);
+        service.init();
+        return service;
+    }
+
+    private static int position(ChatAdmissionService.Ticket ticket) {
+        ChatAdmissionService.QueueStatus status = ticket.queueUpdates().blockFirst(WAIT);
+        return status != null ? status.position() : 0;
+    }
+
+    @Test
+    void grantsImmediatelyWhileUnderCapacity() {
+        ChatAdmissionService.Ticket ticket = service.acquire(1L, "10.0.0.1", MODEL, 1);
+
+        assertEquals(0, position(ticket));
+        assertNotNull(ticket.granted().block(WAIT));
+    }
+
+    @Test
+    void queuedTicketIsGrantedWhenRunningPermitIsReleased() {
+        ChatAdmissionService.Permit running = service.acquire(1L, "10.0.0.1", MODEL, 1).granted().block(WAIT);
+        ChatAdmissionService.Ticket queued = service.acquire(2L, "10.0.0.1", MODEL, 1);
+
+        assertEquals(new ChatAdmissionService.QueueStatus(1, 20), queued.queueUpdates().blockFirst(WAIT));
+
+        running.release();
+        assertNotNull(queued.granted().block(WAIT));
+    }
+
+    @Test
+    void releasingTwiceFreesOnlyOneSlot() {
+        ChatAdmissionService.Permit running = service.acquire(1L, "10.0.0.1", MODEL, 1).granted().block(WAIT);
+        ChatAdmissionService.Ticket second = service.acquire(2L, "10.0.0.1", MODEL, 1);
+        ChatAdmissionService.Ticket third = service.acquire(3L, "10.0.0.1", MODEL, 1);
+
+        running.release();
+        running.release();
+
+        assertNotNull(second.granted().block(WAIT));
+        assertEquals(1, position(third));
+    }
+
+    @Test
+    void cancellingQueuedTicketLeavesTheQueue() {
+        service.acquire(1L, "10.0.0.1", MODEL, 1).granted().block(WAIT);
+        ChatAdmissionService.Ticket queued = service.acquire(2L, "10.0.0.1", MODEL, 1);
+        ChatAdmissionService.Ticket behind = service.acquire(3L, "10.0.0.1", MODEL, 1);
+
+        assertTrue(queued.cancel());
+        assertFalse(queued.cancel());
+        assertEquals(1, position(behind));
+    }
+
+    @Test
+    void cancellingGrantedButUnstartedTicketReturnsItsPermit() {
+        ChatAdmissionService.Ticket granted = service.acquire(1L, "10.0.0.1", MODEL, 1);
+        ChatAdmissionService.Ticket queued = service.acquire(2L, "10.0.0.1", MODEL, 1);
+
+        assertTrue(granted.cancel());
+        assertNotNull(queued.granted().block(WAIT));
+    }
+
+    @Test
+    void startedTicketCannotBeCancelled() {
+        ChatAdmissionService.Ticket ticket = service.acquire(1L, "10.0.0.1", MODEL, 1);
+        ticket.granted().block(WAIT);
+
+        assertFalse(ticket.cancel());
+    }
+
+    @Test
+    void queuedTicketTimesOutAfterMaxWait() {
+        service.acquire(1L, "10.0.0.1", MODEL, 1).granted().block(WAIT);
+        ChatAdmissionService.Ticket queued = service.acquire(2L, "10.0.0.1", MODEL, 1);
+
+        BusinessException e = assertThrows(BusinessException.class, () -> queued.granted().block(WAIT));
+        assertEquals(ErrorCode.QUEUE_TIMEOUT.getCode(), e.getCode());
+        assertFalse(queued.cancel());
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        service.acquire(1L, "10.0.0.1", MODEL, 1);
+        service.acquire(2L, "10.0.0.1", MODEL, 1);
+        service.acquire(3L, "10.0.0.1", MODEL, 1);
+
+        BusinessException e = assertThrows(BusinessException.class, () -> service.acquire(4L, "10.0.0.1", MODEL, 1));
+        assertEquals(ErrorCode.QUEUE_FULL.getCode(), e.getCode());
+    }
+
+    @Test
+    void anonymousClientsGetOneBucketPerAddress() {
+        ChatAdmissionService limited = create(100, 2);
+        limited.acquire(-1L, "10.0.0.1", MODEL, 1);
+        limited.acquire(null, "10.0.0.1", MODEL, 1);
+
+        BusinessException e = assertThrows(BusinessException.class, () -> limited.acquire(-1L, "10.0.0.1", MODEL, 1));
+        assertEquals(ErrorCode.RATE_LIMITED.getCode(), e.getCode());
+        assertNotNull(limited.acquire(-1L, "10.0.0.2", MODEL, 1));
+        assertNotNull(limited.acquire(7L, "10.0.0.1", MODEL, 1));
+    }
+
+    @Test
+    void fairQueueServesLightUserBeforeHeavyUsersBacklog() {
+        ChatAdmissionService.Permit running = service.acquire(1L, "10.0.0.1", MODEL, 1).granted().block(WAIT);
+        ChatAdmissionService.Ticket heavy = service.acquire(2L, "10.0.0.1", MODEL, 5);
+        ChatAdmissionService.Ticket light = service.acquire(3L, "10.0.0.1", MODEL, 1);
+
+        running.release();
+
+        assertNotNull(light.granted().block(WAIT));
+        assertEquals(1, position(heavy));
+    }
+}
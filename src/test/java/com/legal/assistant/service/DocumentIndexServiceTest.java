@@ -0,0 +1,134 @@
+package com.legal.assistant.service;
+
+import com.legal.assistant.utils.DocumentExtractor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 文档索引：分页偏移、标题大纲与 BM25 检索
+ */
+class DocumentIndexServiceTest {
+
+    private static final char PAGE_BREAK = DocumentExtractor.PAGE_BREAK;
+
+    private static final String CONTRACT = """
+            # 房屋租赁合同
+
+            ## 第一章 租金
+
+            第一条 承租人应当于每月五日前支付租金。
+
+            第二条 承租人逾期支付租金超过三十日的，出租人可以解除合同。
+
+            ## 第二章 押金
+
+            第三条 押金为两个月租金，合同终止后十日内无息退还。
+
+            第四条 出租人无正当理由不退还押金的，应当按日支付违约金。
+            """;
+
+    private DocumentIndexService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new DocumentIndexService();
+        ReflectionTestUtils.setField(service, "chunkChars", 40);
+    }
+
+    private DocumentIndexService.IndexedDocument index(String markdown, List<Integer> pageOffsets) {
+        return new DocumentIndexService.IndexedDocument(1L, "合同.md", markdown, service.build(markdown, pageOffsets));
+    }
+
+    @Test
+    void splitPagesRemovesBreaksAndRecordsOffsets() {
+        DocumentIndexService.PagedText paged = DocumentIndexService.splitPages("第一页" + PAGE_BREAK + "第二页" + PAGE_BREAK + "三");
+
+        assertEquals("第一页第二页三", paged.text());
+        assertEquals(List.of(0, 3, 6), paged.pageOffsets());
+    }
+
+    @Test
+    void blankPagesKeepTheirPageNumbers() {
+        DocumentIndexService.PagedText paged = DocumentIndexService.splitPages(
+                "" + PAGE_BREAK + "正文" + PAGE_BREAK + PAGE_BREAK + "末页");
+        DocumentIndexService.DocumentIndex index = service.build(paged.text(), paged.pageOffsets());
+
+        assertEquals("正文末页", paged.text());
+        assertEquals(List.of(0, 0, 2, 2), paged.pageOffsets());
+        assertEquals(2, DocumentIndexService.pageOf(index, 0));
+        assertEquals(2, DocumentIndexService.pageOf(index, 1));
+        assertEquals(4, DocumentIndexService.pageOf(index, 2));
+    }
+
+    @Test
+    void splitPagesWithoutBreaksHasNoPageInfo() {
+        DocumentIndexService.PagedText paged = DocumentIndexService.splitPages("没有分页的文本");
+
+        assertEquals("没有分页的文本", paged.text());
+        assertTrue(paged.pageOffsets().isEmpty());
+        assertNull(DocumentIndexService.pageOf(service.build(paged.text(), paged.pageOffsets()), 3));
+    }
+
+    @Test
+    void buildExtractsHeadingOutline() {
+        List<String> titles = service.build(CONTRACT, null).getHeadings().stream()
+                .map(DocumentIndexService.Heading::getTitle)
+                .toList();
+
+        assertEquals("房屋租赁合同", titles.get(0));
+        assertTrue(titles.contains("第一章 租金"));
+        assertTrue(titles.contains("第二章 押金"));
+    }
+
+    @Test
+    void searchRanksChunkContainingQueryTermsFirst() {
+        DocumentIndexService.IndexedDocument document = index(CONTRACT, null);
+
+        List<DocumentIndexService.Passage> passages = service.search(document, "押金退还", 2);
+
+        assertFalse(passages.isEmpty());
+        assertTrue(passages.size() <= 2);
+        assertTrue(passages.get(0).getText().contains("退还"), passages.get(0).getText());
+        for (int i = 1; i < passages.size(); i++) {
+            assertTrue(passages.get(i - 1).getScore() >= passages.get(i).getScore());
+        }
+        assertTrue(document.getMarkdown().startsWith(passages.get(0).getText(), passages.get(0).getOffset()));
+    }
+
+    @Test
+    void searchReturnsPageOfMatchedChunk() {
+        String first = "第一条 承租人应当按时支付租金。\n\n";
+        String second = "第二条 出租人应当退还押金。\n\n";
+        DocumentIndexService.PagedText paged = DocumentIndexService.splitPages(first + PAGE_BREAK + second);
+        DocumentIndexService.IndexedDocument document = index(paged.text(), paged.pageOffsets());
+
+        List<DocumentIndexService.Passage> passages = service.search(document, "押金", 1);
+
+        assertEquals(1, passages.size());
+        assertEquals(2, passages.get(0).getPage());
+    }
+
+    @Test
+    void searchMatchesLatinTermsCaseInsensitively() {
+        DocumentIndexService.IndexedDocument document = index("Force Majeure 条款\n\n不可抗力的定义。\n\n", null);
+
+        List<DocumentIndexService.Passage> passages = service.search(document, "force majeure", 3);
+
+        assertEquals(1, passages.size());
+        assertTrue(passages.get(0).getText().startsWith("Force Majeure"));
+    }
+
+    @Test
+    void searchWithoutMatchingTermsReturnsNothing() {
+        DocumentIndexService.IndexedDocument document = index(CONTRACT, null);
+
+        assertTrue(service.search(document, "知识产权", 3).isEmpty());
+        assertTrue(service.search(document, "  ", 3).isEmpty());
+        assertTrue(service.search(index("", null), "押金", 3).isEmpty());
+    }
+}
@@ -0,0 +1,117 @@
+package com.legal.assistant.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.agentscope.core.message.Msg;
+import io.agentscope.core.message.MsgRole;
+import io.agentscope.core.message.TextBlock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 状态编解码：各格式往返、旧版本纯 JSON 的读取与格式头校验
+ */
+class FramedStateCodecTest {
+
+    private static final String LONG_TEXT = "第一条 合同当事人应当按照约定全面履行自己的义务。".repeat(200);
+
+    private static Msg message(String text) {
+        return Msg.builder()
+                .role(MsgRole.USER)
+                .content(List.of(TextBlock.builder().text(text).build()))
+                .build();
+    }
+
+    private static FramedStateCodec codec(FramedStateCodec.Format format, FramedStateCodec.Compression compression) {
+        return new FramedStateCodec(format, compression, 1024, 3, new SimpleMeterRegistry());
+    }
+
+    private static Msg roundTrip(StateCodec codec, Msg value) throws IOException {
+        return codec.decode(codec.encode(value), Msg.class);
+    }
+
+    @Test
+    void roundTripsEveryFormatAndCompression() throws IOException {
+        for (FramedStateCodec.Format format : FramedStateCodec.Format.values()) {
+            for (FramedStateCodec.Compression compression : FramedStateCodec.Compression.values()) {
+                FramedStateCodec codec = codec(format, compression);
+                for (String text : List.of("短消息", LONG_TEXT)) {
+                    Msg decoded = roundTrip(codec, message(text));
+                    assertEquals(text, decoded.getTextContent(), format + "/" + compression);
+                    assertEquals(MsgRole.USER, decoded.getRole());
+                }
+            }
+        }
+    }
+
+    @Test
+    void plainJsonWithoutCompressionMatchesLegacyOutput() throws IOException {
+        ObjectMapper legacy = new ObjectMapper().registerModule(new JavaTimeModule());
+        Msg value = message("短消息");
+
+        assertArrayEquals(legacy.writeValueAsBytes(value), new FramedStateCodec().encode(value));
+    }
+
+    @Test
+    void readsLegacyJsonWithAnyConfiguration() throws IOException {
+        byte[] legacy = new ObjectMapper().registerModule(new JavaTimeModule()).writeValueAsBytes(message(LONG_TEXT));
+
+        for (FramedStateCodec.Format format : FramedStateCodec.Format.values()) {
+            for (FramedStateCodec.Compression compression : FramedStateCodec.Compression.values()) {
+                assertEquals(LONG_TEXT, codec(format, compression).decode(legacy, Msg.class).getTextContent());
+            }
+        }
+    }
+
+    @Test
+    void compressesOnlyAboveThreshold() throws IOException {
+        FramedStateCodec codec = codec(FramedStateCodec.Format.SMILE, FramedStateCodec.Compression.ZSTD);
+
+        byte[] small = codec.encode(message("短消息"));
+        byte[] large = codec.encode(message(LONG_TEXT));
+
+        assertEquals(0x01, small[0]);
+        assertEquals(FramedStateCodec.Compression.NONE.ordinal(), small[2]);
+        assertEquals(FramedStateCodec.Compression.ZSTD.ordinal(), large[2]);
+        assertTrue(large.length < LONG_TEXT.getBytes().length);
+    }
+
+    @Test
+    void decodesValuesWrittenByAnotherConfiguration() throws IOException {
+        byte[] smileZstd = codec(FramedStateCodec.Format.SMILE, FramedStateCodec.Compression.ZSTD)
+                .encode(message(LONG_TEXT));
+
+        assertEquals(LONG_TEXT, new FramedStateCodec().decode(smileZstd, Msg.class).getTextContent());
+    }
+
+    @Test
+    void rejectsTruncatedOrUnknownHeader() throws IOException {
+        FramedStateCodec codec = new FramedStateCodec();
+        byte[] framed = codec(FramedStateCodec.Format.SMILE, FramedStateCodec.Compression.NONE).encode(message("短消息"));
+
+        assertThrows(IOException.class, () -> codec.decode(Arrays.copyOf(framed, 5), Msg.class));
+
+        byte[] unknownFormat = framed.clone();
+        unknownFormat[1] = 9;
+        assertThrows(IOException.class, () -> codec.decode(unknownFormat, Msg.class));
+
+        byte[] unknownCompression = framed.clone();
+        unknownCompression[2] = 9;
+        assertThrows(IOException.class, () -> codec.decode(unknownCompression, Msg.class));
+    }
+
+    @Test
+    void rejectsCorruptedCompressedBody() throws IOException {
+        FramedStateCodec codec = codec(FramedStateCodec.Format.SMILE, FramedStateCodec.Compression.ZSTD);
+        byte[] corrupted = codec.encode(message(LONG_TEXT));
+        Arrays.fill(corrupted, 10, corrupted.length, (byte) 0x7f);
+
+        assertThrows(IOException.class, () -> codec.decode(corrupted, Msg.class));
+    }
+}